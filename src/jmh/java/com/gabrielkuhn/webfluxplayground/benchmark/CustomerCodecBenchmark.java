@@ -0,0 +1,96 @@
+package com.gabrielkuhn.webfluxplayground.benchmark;
+
+import com.gabrielkuhn.webfluxplayground.codec.CustomerCodecConfiguration;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import org.openjdk.jmh.annotations.*;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageReader;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Encodes and decodes customers with the readers and writers of a {@link ServerCodecConfigurer}, i.e. the same path a
+ * controller response takes, down to the response body buffers. {@code codec=customer} registers the customer codecs
+ * the application uses; {@code codec=jackson} keeps the defaults for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerCodecBenchmark {
+
+    private static final ResolvableType CUSTOMER = ResolvableType.forClass(Customer.class);
+
+    @Param({"1", "100"})
+    private int customers;
+
+    @Param({"jackson", "customer"})
+    private String codec;
+
+    private HttpMessageWriter<Customer> writer;
+    private HttpMessageReader<Customer> reader;
+    private Customer customer;
+    private List<Customer> customerList;
+    private String json;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        ServerCodecConfigurer configurer = ServerCodecConfigurer.create();
+        if ("customer".equals(codec)) {
+            new CustomerCodecConfiguration().configureHttpMessageCodecs(configurer);
+        }
+        writer = (HttpMessageWriter<Customer>) configurer.getWriters().stream()
+                .filter(candidate -> candidate.canWrite(CUSTOMER, MediaType.APPLICATION_JSON))
+                .findFirst()
+                .orElseThrow();
+        reader = (HttpMessageReader<Customer>) configurer.getReaders().stream()
+                .filter(candidate -> candidate.canRead(CUSTOMER, MediaType.APPLICATION_JSON))
+                .findFirst()
+                .orElseThrow();
+
+        customer = Customer.builder().id(42).name("bob").version(3).build();
+        customerList = IntStream.rangeClosed(1, customers)
+                .mapToObj(id -> customer.withId(id))
+                .collect(Collectors.toList());
+        json = encode(Mono.just(customer));
+    }
+
+    @Benchmark
+    public String encodeCustomer() {
+        return encode(Mono.just(customer));
+    }
+
+    @Benchmark
+    public String encodeCustomerFlux() {
+        return encode(Flux.fromIterable(customerList));
+    }
+
+    @Benchmark
+    public Customer decodeCustomer() {
+        MockServerHttpRequest request = MockServerHttpRequest.post("/customers")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(json);
+        return reader.readMono(CUSTOMER, request, Collections.emptyMap()).block();
+    }
+
+    private String encode(Publisher<Customer> body) {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        writer.write(body, CUSTOMER, MediaType.APPLICATION_JSON, response, Collections.emptyMap()).block();
+        return response.getBodyAsString().block();
+    }
+}
@@ -0,0 +1,132 @@
+package com.gabrielkuhn.webfluxplayground.benchmark;
+
+import com.gabrielkuhn.webfluxplayground.codec.CustomerCodecConfiguration;
+import com.gabrielkuhn.webfluxplayground.codec.CustomerProtobuf;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.DecoderHttpMessageReader;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the wire formats {@code /customers} negotiates on a page of customers: encoding it, decoding it, and
+ * (printed once per trial) its size. Each format uses the codec the application would pick for its media type.
+ * <p>
+ * {@code shape=short} is a typical customer: a short ASCII name and small numbers. {@code shape=long} has a long
+ * name with non-ASCII characters and large numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerFormatBenchmark {
+
+    private static final ResolvableType CUSTOMER = ResolvableType.forClass(Customer.class);
+
+    @Param({"json", "smile", "protobuf"})
+    private String format;
+
+    @Param({"short", "long"})
+    private String shape;
+
+    @Param({"100"})
+    private int customers;
+
+    private MediaType mediaType;
+    private Encoder<Customer> encoder;
+    private Decoder<Customer> decoder;
+    private List<Customer> customerList;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        mediaType = mediaType(format);
+        ServerCodecConfigurer configurer = ServerCodecConfigurer.create();
+        new CustomerCodecConfiguration().configureHttpMessageCodecs(configurer);
+        encoder = encoder(configurer, mediaType);
+        decoder = decoder(configurer, mediaType);
+
+        customerList = IntStream.range(0, customers)
+                .mapToObj(i -> "short".equals(shape)
+                        ? new Customer(1_000 + i, "Maria Silva", 3)
+                        : new Customer(1_000_000_000 + i, "José María Fernández-Rodríguez de la Cruz Ñúñez", 70_000))
+                .collect(Collectors.toList());
+        encoded = encode();
+
+        System.out.printf("%n%s/%s: %d customers in %d bytes (%.1f bytes per customer)%n", format, shape, customers,
+                encoded.length, (double) encoded.length / customers);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return DataBufferUtils.join(encoder.encode(Flux.fromIterable(customerList),
+                        DefaultDataBufferFactory.sharedInstance, CUSTOMER, mediaType, Collections.emptyMap()))
+                .map(CustomerFormatBenchmark::bytes)
+                .block();
+    }
+
+    @Benchmark
+    public List<Customer> decode() {
+        return decoder.decode(Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(encoded)), CUSTOMER, mediaType,
+                        Collections.emptyMap())
+                .collectList()
+                .block();
+    }
+
+    private static MediaType mediaType(String format) {
+        switch (format) {
+            case "json":
+                return MediaType.APPLICATION_JSON;
+            case "smile":
+                return MediaType.parseMediaType("application/x-jackson-smile");
+            case "protobuf":
+                return CustomerProtobuf.MEDIA_TYPE;
+            default:
+                throw new IllegalArgumentException(format);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Encoder<Customer> encoder(ServerCodecConfigurer configurer, MediaType mediaType) {
+        return (Encoder<Customer>) configurer.getWriters().stream()
+                .filter(EncoderHttpMessageWriter.class::isInstance)
+                .map(writer -> ((EncoderHttpMessageWriter<?>) writer).getEncoder())
+                .filter(candidate -> candidate.canEncode(CUSTOMER, mediaType))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Decoder<Customer> decoder(ServerCodecConfigurer configurer, MediaType mediaType) {
+        return (Decoder<Customer>) configurer.getReaders().stream()
+                .filter(DecoderHttpMessageReader.class::isInstance)
+                .map(reader -> ((DecoderHttpMessageReader<?>) reader).getDecoder())
+                .filter(candidate -> candidate.canDecode(CUSTOMER, mediaType))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static byte[] bytes(DataBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        DataBufferUtils.release(buffer);
+        return bytes;
+    }
+}
@@ -0,0 +1,81 @@
+package com.gabrielkuhn.webfluxplayground.benchmark;
+
+import com.gabrielkuhn.webfluxplayground.cache.CustomerCache;
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.event.CustomerChangeFeed;
+import com.gabrielkuhn.webfluxplayground.search.CustomerNameIndex;
+import com.gabrielkuhn.webfluxplayground.service.CustomerIdAllocator;
+import com.gabrielkuhn.webfluxplayground.service.CustomerService;
+import com.gabrielkuhn.webfluxplayground.service.CustomerWriteBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the reactive pipeline of {@link CustomerService} on top of {@link InMemoryCustomerRepository}. The lookup
+ * batching window is disabled so a single caller is not measured waiting for peers that never arrive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerServiceBenchmark {
+
+    private static final int CUSTOMERS = 1_000;
+
+    private CustomerService customerService;
+    private int nextId;
+
+    @Setup
+    public void setUp() {
+        CustomerProperties customerProperties = new CustomerProperties();
+        customerProperties.getLookup().setWindow(Duration.ZERO);
+
+        InMemoryCustomerRepository customerRepository = new InMemoryCustomerRepository();
+        CustomerCache customerCache = new CustomerCache(customerProperties);
+        CustomerChangeFeed customerChangeFeed = new CustomerChangeFeed(customerProperties);
+        customerService = new CustomerService(customerRepository, customerProperties,
+                customerCache, new CustomerNameIndex(), customerChangeFeed,
+                new CustomerWriteBuffer(() -> customerRepository, customerCache, customerChangeFeed,
+                        customerProperties),
+                new CustomerIdAllocator(() -> customerRepository, customerProperties));
+
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customerService.save(Customer.builder().name("customer " + i).build()).block();
+        }
+    }
+
+    private int nextId() {
+        nextId = nextId % CUSTOMERS + 1;
+        return nextId;
+    }
+
+    @Benchmark
+    public Customer findById() {
+        return customerService.findById(nextId()).block();
+    }
+
+    @Benchmark
+    public Customer save() {
+        return customerService.save(Customer.builder().name("new customer").build()).block();
+    }
+
+    @Benchmark
+    public Object update() {
+        return customerService.update(Customer.builder().id(nextId()).name("updated customer").build()).block();
+    }
+
+    /**
+     * Deletes and re-inserts, so the data set keeps its size for the whole measurement.
+     */
+    @Benchmark
+    public Customer deleteAndSave() {
+        int id = nextId();
+        customerService.delete(id).block();
+        return customerService.save(Customer.builder().id(id).name("customer " + id).build()).block();
+    }
+}
@@ -0,0 +1,53 @@
+package com.gabrielkuhn.webfluxplayground.benchmark;
+
+import com.gabrielkuhn.webfluxplayground.exception.CustomerNotFoundException;
+import com.gabrielkuhn.webfluxplayground.exception.ExceptionHandler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.autoconfigure.web.WebProperties;
+import org.springframework.boot.web.reactive.error.DefaultErrorAttributes;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the "Customer not found" error through {@link ExceptionHandler}, including creating the exception the way
+ * the service does for every miss. {@code renderResponseStatusException} is the generic path other errors take.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorRenderingBenchmark {
+
+    private ExceptionHandler exceptionHandler;
+
+    @Setup
+    public void setUp() throws Exception {
+        exceptionHandler = new ExceptionHandler(new DefaultErrorAttributes(), new WebProperties(),
+                new GenericApplicationContext(), ServerCodecConfigurer.create());
+        exceptionHandler.afterPropertiesSet();
+    }
+
+    @Benchmark
+    public String renderNotFound() {
+        return render(new CustomerNotFoundException());
+    }
+
+    @Benchmark
+    public String renderResponseStatusException() {
+        return render(new ResponseStatusException(HttpStatus.NOT_FOUND, "Customer not found"));
+    }
+
+    private String render(Throwable error) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers/42"));
+        exceptionHandler.handle(exchange, error).block();
+        return exchange.getResponse().getBodyAsString().block();
+    }
+}
@@ -0,0 +1,195 @@
+package com.gabrielkuhn.webfluxplayground.benchmark;
+
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerTableStats;
+import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Map backed {@link CustomerRepository}, so benchmarks measure the service pipeline rather than a database.
+ */
+class InMemoryCustomerRepository implements CustomerRepository {
+
+    private final ConcurrentNavigableMap<Integer, Customer> customers = new ConcurrentSkipListMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    @Override
+    public Flux<Customer> findPageAfter(int lastId, int limit) {
+        return Flux.fromIterable(customers.tailMap(lastId, false).values()).take(limit);
+    }
+
+    @Override
+    public Mono<CustomerTableStats> findTableStats() {
+        return Mono.fromSupplier(() -> {
+            long maxVersion = 0;
+            long checksum = 0;
+            for (Customer customer : customers.values()) {
+                maxVersion = Math.max(maxVersion, customer.getVersion());
+                checksum += customer.getId() * 1000003L + customer.getVersion();
+            }
+            return new CustomerTableStats(customers.size(), maxVersion, checksum);
+        });
+    }
+
+    @Override
+    public Mono<Integer> updateName(int id, String name) {
+        return Mono.fromSupplier(() -> customers.computeIfPresent(id,
+                        (key, current) -> current.withName(name).withVersion(current.getVersion() + 1)) != null ? 1 : 0);
+    }
+
+    @Override
+    public Mono<Integer> updateNameIfVersion(int id, String name, int version) {
+        return Mono.fromSupplier(() -> {
+            Customer current = customers.get(id);
+            if (current == null || current.getVersion() != version) {
+                return 0;
+            }
+            return customers.replace(id, current, current.withName(name).withVersion(version + 1)) ? 1 : 0;
+        });
+    }
+
+    @Override
+    public Mono<Integer> removeById(int id) {
+        return Mono.fromSupplier(() -> customers.remove(id) != null ? 1 : 0);
+    }
+
+    @Override
+    public Mono<Integer> removeByIdIfVersion(int id, int version) {
+        return Mono.fromSupplier(() -> {
+            Customer current = customers.get(id);
+            return current != null && current.getVersion() == version && customers.remove(id, current) ? 1 : 0;
+        });
+    }
+
+    @Override
+    public Flux<Integer> insertAll(List<Customer> batch) {
+        return Flux.fromIterable(batch).flatMap(this::save).map(Customer::getId);
+    }
+
+    @Override
+    public Mono<Integer> insertAllWithIds(List<Customer> batch) {
+        return Mono.fromSupplier(() -> {
+            batch.forEach(customer -> customers.put(customer.getId(), customer.withVersion(0)));
+            return batch.size();
+        });
+    }
+
+    @Override
+    public Mono<Integer> findIdBlockSize() {
+        return Mono.just(100);
+    }
+
+    @Override
+    public Mono<Integer> reserveIdBlock() {
+        return Mono.fromSupplier(() -> sequence.getAndAdd(100) + 1);
+    }
+
+    @Override
+    public Flux<Integer> updateNames(List<Customer> batch) {
+        return Flux.fromIterable(batch).concatMap(customer -> updateName(customer.getId(), customer.getName()));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends Customer> Mono<S> save(S entity) {
+        return Mono.fromSupplier(() -> {
+            Customer saved = entity.getId() == null
+                    ? entity.withId(sequence.incrementAndGet()).withVersion(0)
+                    : entity.withVersion(entity.getVersion() == null ? 0 : entity.getVersion() + 1);
+            customers.put(saved.getId(), saved);
+            return (S) saved;
+        });
+    }
+
+    @Override
+    public <S extends Customer> Flux<S> saveAll(Iterable<S> entities) {
+        return Flux.fromIterable(entities).concatMap(this::save);
+    }
+
+    @Override
+    public <S extends Customer> Flux<S> saveAll(Publisher<S> entityStream) {
+        return Flux.from(entityStream).concatMap(this::save);
+    }
+
+    @Override
+    public Mono<Customer> findById(Integer id) {
+        return Mono.fromSupplier(() -> customers.get(id));
+    }
+
+    @Override
+    public Mono<Customer> findById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Integer id) {
+        return Mono.fromSupplier(() -> customers.containsKey(id));
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    @Override
+    public Flux<Customer> findAll() {
+        return Flux.fromIterable(customers.values());
+    }
+
+    @Override
+    public Flux<Customer> findAllById(Iterable<Integer> ids) {
+        return Flux.fromIterable(ids).mapNotNull(customers::get);
+    }
+
+    @Override
+    public Flux<Customer> findAllById(Publisher<Integer> idStream) {
+        return Flux.from(idStream).mapNotNull(customers::get);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Mono.fromSupplier(() -> (long) customers.size());
+    }
+
+    @Override
+    public Mono<Void> deleteById(Integer id) {
+        return Mono.fromRunnable(() -> customers.remove(id));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(Customer entity) {
+        return deleteById(entity.getId());
+    }
+
+    @Override
+    public Mono<Void> deleteAllById(Iterable<? extends Integer> ids) {
+        return Mono.fromRunnable(() -> ids.forEach(customers::remove));
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends Customer> entities) {
+        return Mono.fromRunnable(() -> entities.forEach(customer -> customers.remove(customer.getId())));
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends Customer> entityStream) {
+        return Flux.from(entityStream).concatMap(this::delete).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(customers::clear);
+    }
+}
@@ -2,11 +2,17 @@ package com.gabrielkuhn.webfluxplayground;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import reactor.core.scheduler.Schedulers;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class WebfluxPlaygroundApplication {
 
 	public static void main(String[] args) {
+		// Before anything creates a scheduler: only executors started afterwards report to Micrometer's global
+		// registry, which Boot exposes through the actuator.
+		Schedulers.enableMetrics();
 		SpringApplication.run(WebfluxPlaygroundApplication.class, args);
 	}
 
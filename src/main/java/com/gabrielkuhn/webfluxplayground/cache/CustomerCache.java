@@ -0,0 +1,338 @@
+package com.gabrielkuhn.webfluxplayground.cache;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Read-through cache of customers keyed by their primitive id.
+ * <p>
+ * Entries live in lock-striped open addressing tables, are bounded in size (CLOCK eviction) and in time (TTL).
+ * Absent customers are cached for a shorter, separate TTL, and concurrent misses on the same id share one load. The
+ * shared load is cancelled once every caller waiting for it has cancelled.
+ */
+@Component
+public class CustomerCache implements MeterBinder {
+
+    private static final String NAME = "customers";
+    private static final int SEGMENTS = 16;
+    private static final Object NOT_FOUND = new Object();
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    public CustomerCache(CustomerProperties customerProperties) {
+        CustomerProperties.Cache properties = customerProperties.getCache();
+        int segmentCapacity = Math.max(1, properties.getMaximumSize() / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity, evictions);
+        }
+        this.ttlNanos = properties.getTtl().toNanos();
+        this.negativeTtlNanos = properties.getNegativeTtl().toNanos();
+    }
+
+    /**
+     * Returns the cached customer, an empty mono for a cached miss, or the result of {@code loader}, which is
+     * invoked at most once per id no matter how many callers are waiting for it.
+     */
+    public Mono<Customer> get(int id, IntFunction<Mono<Customer>> loader) {
+        Segment segment = segmentFor(id);
+        synchronized (segment) {
+            Object value = segment.get(id, System.nanoTime());
+            if (value instanceof Loading) {
+                misses.increment();
+                return ((Loading) value).mono;
+            }
+            if (value != null) {
+                hits.increment();
+                return value == NOT_FOUND ? Mono.empty() : Mono.just((Customer) value);
+            }
+            misses.increment();
+            Loading loading = new Loading(id, segment, loader);
+            segment.put(id, loading, 0L);
+            return loading.mono;
+        }
+    }
+
+    public void invalidate(int id) {
+        Segment segment = segmentFor(id);
+        synchronized (segment) {
+            segment.remove(id, null);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tags("cache", NAME, "result", "hit")
+                .description("The number of times cache lookup methods have returned a cached value")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tags("cache", NAME, "result", "miss")
+                .description("The number of times cache lookup methods have not returned a cached value")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                .tag("cache", NAME)
+                .description("The number of entries evicted to stay within the maximum size")
+                .register(registry);
+        Gauge.builder("cache.size", this, CustomerCache::size)
+                .tag("cache", NAME)
+                .description("The approximate number of entries in the cache")
+                .register(registry);
+        FunctionTimer.builder("cache.load", this, cache -> cache.loads.sum(), cache -> cache.loadNanos.sum(),
+                        TimeUnit.NANOSECONDS)
+                .tag("cache", NAME)
+                .description("The time spent loading customers on a miss")
+                .register(registry);
+    }
+
+    private Mono<Customer> load(int id, Segment segment, Loading loading, IntFunction<Mono<Customer>> loader) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return loader.apply(id)
+                    .doOnSuccess(customer -> {
+                        long now = System.nanoTime();
+                        loads.increment();
+                        loadNanos.add(now - start);
+                        synchronized (segment) {
+                            segment.replace(id, loading, customer != null ? customer : NOT_FOUND,
+                                    now + (customer != null ? ttlNanos : negativeTtlNanos));
+                        }
+                    })
+                    .doOnError(error -> invalidate(id, segment, loading))
+                    .doOnCancel(() -> invalidate(id, segment, loading));
+        });
+    }
+
+    private void invalidate(int id, Segment segment, Loading loading) {
+        synchronized (segment) {
+            segment.remove(id, loading);
+        }
+    }
+
+    private Segment segmentFor(int id) {
+        return segments[spread(id) >>> 28];
+    }
+
+    private static int spread(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A load shared by the callers that missed on the id while it runs. It starts with the first subscriber and is
+     * reference counted: {@code Mono.cache()} would keep it, and the query behind it, running after every caller
+     * has gone away.
+     */
+    private final class Loading {
+
+        private final int id;
+        private final IntFunction<Mono<Customer>> loader;
+        private final Segment segment;
+        private final Sinks.One<Customer> result = Sinks.one();
+        private final Disposable.Swap upstream = Disposables.swap();
+        private final Mono<Customer> mono = Mono.deferContextual(this::subscribe);
+
+        private int subscribers;
+        private boolean started;
+        private boolean abandoned;
+
+        private Loading(int id, Segment segment, IntFunction<Mono<Customer>> loader) {
+            this.id = id;
+            this.segment = segment;
+            this.loader = loader;
+        }
+
+        /**
+         * The load runs with the context of the first subscriber, so that caller's deadline and timing apply to it.
+         */
+        private Mono<Customer> subscribe(ContextView context) {
+            boolean start;
+            synchronized (this) {
+                if (abandoned) {
+                    // Cancelled by everyone before this caller subscribed; look the id up again.
+                    return get(id, loader);
+                }
+                subscribers++;
+                start = !started;
+                started = true;
+            }
+            if (start) {
+                upstream.update(load(id, segment, this, loader)
+                        .contextWrite(context)
+                        .subscribe(result::tryEmitValue, result::tryEmitError, result::tryEmitEmpty));
+            }
+            return result.asMono().doOnCancel(this::leave);
+        }
+
+        private void leave() {
+            synchronized (this) {
+                if (--subscribers > 0) {
+                    return;
+                }
+                abandoned = true;
+            }
+            upstream.dispose();
+        }
+    }
+
+    /**
+     * Linear probing table kept at most half full. Callers synchronize on the segment itself.
+     */
+    private static final class Segment {
+
+        private final int capacity;
+        private final int mask;
+        private final int[] keys;
+        private final Object[] values;
+        private final long[] expiresAt;
+        private final boolean[] referenced;
+        private final LongAdder evictions;
+
+        private int size;
+        private int hand;
+
+        private Segment(int capacity, LongAdder evictions) {
+            int length = 2;
+            while (length < capacity * 2) {
+                length <<= 1;
+            }
+            this.capacity = capacity;
+            this.mask = length - 1;
+            this.keys = new int[length];
+            this.values = new Object[length];
+            this.expiresAt = new long[length];
+            this.referenced = new boolean[length];
+            this.evictions = evictions;
+        }
+
+        private Object get(int key, long now) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return null;
+            }
+            Object value = values[index];
+            if (!(value instanceof Loading) && expiresAt[index] - now <= 0) {
+                removeAt(index);
+                return null;
+            }
+            referenced[index] = true;
+            return value;
+        }
+
+        private void put(int key, Object value, long expiry) {
+            int index = indexOf(key);
+            if (index < 0) {
+                if (size >= capacity) {
+                    evict();
+                    index = indexOf(key);
+                }
+                index = -1 - index;
+                keys[index] = key;
+                size++;
+            }
+            values[index] = value;
+            expiresAt[index] = expiry;
+            referenced[index] = true;
+        }
+
+        private void replace(int key, Object expected, Object value, long expiry) {
+            int index = indexOf(key);
+            if (index >= 0 && values[index] == expected) {
+                values[index] = value;
+                expiresAt[index] = expiry;
+            }
+        }
+
+        private void remove(int key, Object expected) {
+            int index = indexOf(key);
+            if (index >= 0 && (expected == null || values[index] == expected)) {
+                removeAt(index);
+            }
+        }
+
+        /**
+         * Returns the slot holding {@code key}, or {@code -1 - slot} of the free slot it would be inserted into.
+         */
+        private int indexOf(int key) {
+            int index = spread(key) & mask;
+            while (values[index] != null) {
+                if (keys[index] == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1 - index;
+        }
+
+        private void evict() {
+            while (true) {
+                if (values[hand] != null) {
+                    if (!referenced[hand]) {
+                        removeAt(hand);
+                        evictions.increment();
+                        return;
+                    }
+                    referenced[hand] = false;
+                }
+                hand = (hand + 1) & mask;
+            }
+        }
+
+        private void removeAt(int index) {
+            values[index] = null;
+            size--;
+
+            int free = index;
+            int next = index;
+            while (true) {
+                next = (next + 1) & mask;
+                if (values[next] == null) {
+                    return;
+                }
+                int home = spread(keys[next]) & mask;
+                boolean reachable = free <= next
+                        ? free < home && home <= next
+                        : free < home || home <= next;
+                if (reachable) {
+                    continue;
+                }
+                keys[free] = keys[next];
+                values[free] = values[next];
+                expiresAt[free] = expiresAt[next];
+                referenced[free] = referenced[next];
+                values[next] = null;
+                free = next;
+            }
+        }
+    }
+}
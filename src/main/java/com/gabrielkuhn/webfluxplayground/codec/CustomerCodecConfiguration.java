@@ -0,0 +1,21 @@
+package com.gabrielkuhn.webfluxplayground.codec;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+/**
+ * Registers the customer codecs ahead of Jackson, which keeps handling every other type. Jackson Smile
+ * ({@code application/x-jackson-smile}) is registered by the default codecs since it is on the classpath.
+ */
+@Configuration(proxyBeanMethods = false)
+public class CustomerCodecConfiguration implements WebFluxConfigurer {
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.customCodecs().registerWithDefaultConfig(new CustomerJsonEncoder());
+        configurer.customCodecs().registerWithDefaultConfig(new CustomerJsonDecoder());
+        configurer.customCodecs().registerWithDefaultConfig(new CustomerProtobufEncoder());
+        configurer.customCodecs().registerWithDefaultConfig(new CustomerProtobufDecoder());
+    }
+}
@@ -0,0 +1,222 @@
+package com.gabrielkuhn.webfluxplayground.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads {@link Customer} JSON with Jackson's non-blocking parser, binding fields by name instead of through databind.
+ * <p>
+ * Customers are emitted as soon as their closing brace arrives, whether the body is a single object, a JSON array or
+ * NDJSON. Like Jackson's defaults, unknown properties are ignored and numeric strings are accepted for integers.
+ * Validation stays with {@code @Valid} on the controller argument.
+ */
+public class CustomerJsonDecoder extends AbstractDataBufferDecoder<Customer> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public CustomerJsonDecoder() {
+        super(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON);
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, @Nullable MimeType mimeType) {
+        return elementType.resolve() == Customer.class && super.canDecode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<Customer> decode(Publisher<DataBuffer> input, ResolvableType elementType,
+                                 @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+        return decode(input, true);
+    }
+
+    @Override
+    public Mono<Customer> decodeToMono(Publisher<DataBuffer> input, ResolvableType elementType,
+                                       @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+        return decode(input, false).next();
+    }
+
+    private Flux<Customer> decode(Publisher<DataBuffer> input, boolean unwrapArray) {
+        return Flux.defer(() -> {
+            CustomerTokenizer tokenizer = new CustomerTokenizer(unwrapArray, getMaxInMemorySize());
+            return Flux.from(input)
+                    .concatMapIterable(tokenizer::feed)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(tokenizer.endOfInput())));
+        });
+    }
+
+    /**
+     * Tracks the token depth across buffers; a customer is built from the fields of each object at element depth,
+     * and anything nested below it is skipped.
+     */
+    private static final class CustomerTokenizer {
+
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+        private final boolean unwrapArray;
+        private final int maxInMemorySize;
+
+        private boolean inArray;
+        private int depth;
+        private int byteCount;
+
+        @Nullable
+        private String field;
+        @Nullable
+        private Integer id;
+        @Nullable
+        private String name;
+        @Nullable
+        private Integer version;
+
+        private CustomerTokenizer(boolean unwrapArray, int maxInMemorySize) {
+            try {
+                this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+            this.unwrapArray = unwrapArray;
+            this.maxInMemorySize = maxInMemorySize;
+        }
+
+        List<Customer> feed(DataBuffer buffer) {
+            int length = buffer.readableByteCount();
+            byte[] bytes = new byte[length];
+            buffer.read(bytes);
+            DataBufferUtils.release(buffer);
+
+            byteCount += length;
+            if (maxInMemorySize >= 0 && byteCount > maxInMemorySize) {
+                throw new DataBufferLimitException("Exceeded limit on max bytes per customer: " + maxInMemorySize);
+            }
+            try {
+                feeder.feedInput(bytes, 0, length);
+                return tokenize();
+            } catch (IOException ex) {
+                throw new DecodingException("JSON decoding error: " + ex.getMessage(), ex);
+            }
+        }
+
+        List<Customer> endOfInput() {
+            feeder.endOfInput();
+            try {
+                List<Customer> customers = tokenize();
+                if (depth != 0) {
+                    throw new DecodingException("JSON decoding error: unexpected end of input");
+                }
+                return customers;
+            } catch (IOException ex) {
+                throw new DecodingException("JSON decoding error: " + ex.getMessage(), ex);
+            }
+        }
+
+        private List<Customer> tokenize() throws IOException {
+            List<Customer> customers = null;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                Customer customer = next(token);
+                if (customer != null) {
+                    if (customers == null) {
+                        customers = new ArrayList<>(4);
+                    }
+                    customers.add(customer);
+                    byteCount = 0;
+                }
+            }
+            return customers == null ? List.of() : customers;
+        }
+
+        @Nullable
+        private Customer next(JsonToken token) throws IOException {
+            int elementDepth = inArray ? 1 : 0;
+
+            if (depth == 0 && token == JsonToken.START_ARRAY && unwrapArray) {
+                inArray = true;
+                depth = 1;
+            } else if (depth == 1 && inArray && token == JsonToken.END_ARRAY) {
+                inArray = false;
+                depth = 0;
+            } else if (depth == elementDepth) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new DecodingException("JSON decoding error: expected a customer object but found " + token);
+                }
+                id = null;
+                name = null;
+                version = null;
+                depth++;
+            } else if (depth == elementDepth + 1) {
+                if (token == JsonToken.END_OBJECT) {
+                    depth--;
+                    return new Customer(id, name, version);
+                }
+                if (token == JsonToken.FIELD_NAME) {
+                    field = parser.getCurrentName();
+                } else if (token.isStructStart()) {
+                    if (isCustomerField(field)) {
+                        throw new DecodingException("JSON decoding error: unexpected " + token + " for '" + field + "'");
+                    }
+                    depth++;
+                } else {
+                    bind(token);
+                }
+            } else if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+            return null;
+        }
+
+        private void bind(JsonToken token) throws IOException {
+            if ("id".equals(field)) {
+                id = integerValue(token);
+            } else if ("name".equals(field)) {
+                name = token == JsonToken.VALUE_NULL ? null : parser.getText();
+            } else if ("version".equals(field)) {
+                version = integerValue(token);
+            }
+        }
+
+        @Nullable
+        private Integer integerValue(JsonToken token) throws IOException {
+            switch (token) {
+                case VALUE_NULL:
+                    return null;
+                case VALUE_NUMBER_INT:
+                    return parser.getIntValue();
+                case VALUE_STRING:
+                    try {
+                        return Integer.valueOf(parser.getText().trim());
+                    } catch (NumberFormatException ex) {
+                        throw new DecodingException("JSON decoding error: '" + field + "' is not an integer", ex);
+                    }
+                default:
+                    throw new DecodingException("JSON decoding error: unexpected " + token + " for '" + field + "'");
+            }
+        }
+
+        private static boolean isCustomerField(@Nullable String field) {
+            return "id".equals(field) || "name".equals(field) || "version".equals(field);
+        }
+    }
+}
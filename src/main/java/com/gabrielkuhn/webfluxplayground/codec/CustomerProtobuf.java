@@ -0,0 +1,247 @@
+package com.gabrielkuhn.webfluxplayground.codec;
+
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Protobuf wire format of the messages in {@code proto/customer.proto}, written and read by hand so no generated
+ * classes or protobuf runtime are needed. Null fields are left out, and missing fields are read back as null.
+ */
+public final class CustomerProtobuf {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-protobuf";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int FIXED32 = 5;
+
+    private static final int ID = 1 << 3 | VARINT;
+    private static final int NAME = 2 << 3 | LENGTH_DELIMITED;
+    private static final int VERSION = 3 << 3 | VARINT;
+    private static final int CURSOR = 4 << 3 | LENGTH_DELIMITED;
+
+    private static final int ERROR_STATUS = 1 << 3 | VARINT;
+    private static final int ERROR_ERROR = 2 << 3 | LENGTH_DELIMITED;
+    private static final int ERROR_MESSAGE = 3 << 3 | LENGTH_DELIMITED;
+
+    private CustomerProtobuf() {
+    }
+
+    /**
+     * Writes a Customer message, preceded by its length when {@code delimited}.
+     */
+    static DataBuffer write(Customer customer, DataBuffer buffer, boolean delimited) {
+        return write(customer, null, buffer, delimited);
+    }
+
+    /**
+     * Writes a Customer message with the stream cursor that resumes after it, when there is one.
+     */
+    static DataBuffer write(Customer customer, @Nullable String cursor, DataBuffer buffer, boolean delimited) {
+        byte[] name = customer.getName() == null ? null : customer.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] cursorBytes = cursor == null ? null : cursor.getBytes(StandardCharsets.US_ASCII);
+        int size = integerFieldSize(customer.getId()) + bytesFieldSize(name) + integerFieldSize(customer.getVersion())
+                + bytesFieldSize(cursorBytes);
+        if (delimited) {
+            writeVarint(buffer, size);
+        }
+        writeIntegerField(buffer, ID, customer.getId());
+        writeBytesField(buffer, NAME, name);
+        writeIntegerField(buffer, VERSION, customer.getVersion());
+        writeBytesField(buffer, CURSOR, cursorBytes);
+        return buffer;
+    }
+
+    static int estimateSize(Customer customer) {
+        String name = customer.getName();
+        return 32 + (name == null ? 0 : name.length() * 3);
+    }
+
+    /**
+     * Reads the Customer message in {@code bytes[offset, offset + length)}; unknown fields are skipped.
+     */
+    static Customer read(byte[] bytes, int offset, int length) {
+        Reader reader = new Reader(bytes, offset, offset + length);
+        Customer.CustomerBuilder customer = Customer.builder();
+        while (reader.hasRemaining()) {
+            int tag = (int) reader.varint();
+            switch (tag) {
+                case ID:
+                    customer.id((int) reader.varint());
+                    break;
+                case NAME:
+                    customer.name(reader.string());
+                    break;
+                case VERSION:
+                    customer.version((int) reader.varint());
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+        return customer.build();
+    }
+
+    /**
+     * An Error message with the given status, reason phrase and message.
+     */
+    public static byte[] error(int status, String error, @Nullable String message) {
+        byte[] errorBytes = error.getBytes(StandardCharsets.UTF_8);
+        byte[] messageBytes = message == null ? null : message.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[integerFieldSize(status) + bytesFieldSize(errorBytes) + bytesFieldSize(messageBytes)];
+        Writer writer = new Writer(bytes);
+        writer.varint(ERROR_STATUS);
+        writer.varint(status);
+        writer.bytes(ERROR_ERROR, errorBytes);
+        writer.bytes(ERROR_MESSAGE, messageBytes);
+        return bytes;
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7fL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int integerFieldSize(@Nullable Integer value) {
+        // int32 is sign-extended, so negative values always take ten bytes.
+        return value == null ? 0 : 1 + varintSize(value);
+    }
+
+    private static int bytesFieldSize(@Nullable byte[] value) {
+        return value == null ? 0 : 1 + varintSize(value.length) + value.length;
+    }
+
+    private static void writeIntegerField(DataBuffer buffer, int tag, @Nullable Integer value) {
+        if (value != null) {
+            buffer.write((byte) tag);
+            writeVarint(buffer, value);
+        }
+    }
+
+    private static void writeBytesField(DataBuffer buffer, int tag, @Nullable byte[] value) {
+        if (value != null) {
+            buffer.write((byte) tag);
+            writeVarint(buffer, value.length);
+            buffer.write(value);
+        }
+    }
+
+    private static void writeVarint(DataBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.write((byte) (value & 0x7f | 0x80));
+            value >>>= 7;
+        }
+        buffer.write((byte) value);
+    }
+
+    private static final class Writer {
+
+        private final byte[] bytes;
+        private int position;
+
+        private Writer(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private void varint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                bytes[position++] = (byte) (value & 0x7f | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        private void bytes(int tag, @Nullable byte[] value) {
+            if (value != null) {
+                varint(tag);
+                varint(value.length);
+                System.arraycopy(value, 0, bytes, position, value.length);
+                position += value.length;
+            }
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+
+        private Reader(byte[] bytes, int offset, int limit) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        private boolean hasRemaining() {
+            return position < limit;
+        }
+
+        private long varint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    throw new DecodingException("Truncated protobuf varint");
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new DecodingException("Malformed protobuf varint");
+        }
+
+        private String string() {
+            int length = length();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private int length() {
+            long length = varint();
+            if (length < 0 || length > limit - position) {
+                throw new DecodingException("Truncated protobuf field");
+            }
+            return (int) length;
+        }
+
+        private void skip(int tag) {
+            switch (tag & 0x7) {
+                case VARINT:
+                    varint();
+                    break;
+                case FIXED64:
+                    advance(8);
+                    break;
+                case LENGTH_DELIMITED:
+                    advance(length());
+                    break;
+                case FIXED32:
+                    advance(4);
+                    break;
+                default:
+                    throw new DecodingException("Unsupported protobuf wire type " + (tag & 0x7));
+            }
+        }
+
+        private void advance(int length) {
+            if (length > limit - position) {
+                throw new DecodingException("Truncated protobuf field");
+            }
+            position += length;
+        }
+    }
+}
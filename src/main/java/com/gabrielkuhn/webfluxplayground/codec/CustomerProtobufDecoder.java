@@ -0,0 +1,147 @@
+package com.gabrielkuhn.webfluxplayground.codec;
+
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads {@code application/x-protobuf} customers: a single Customer message for a {@code Mono}, length-delimited
+ * messages for a {@code Flux}, emitted as soon as each message is complete.
+ */
+public class CustomerProtobufDecoder extends AbstractDataBufferDecoder<Customer> {
+
+    public CustomerProtobufDecoder() {
+        super(CustomerProtobuf.MEDIA_TYPE);
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, @Nullable MimeType mimeType) {
+        return elementType.resolve() == Customer.class && super.canDecode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<Customer> decode(Publisher<DataBuffer> input, ResolvableType elementType,
+                                 @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+        return Flux.defer(() -> {
+            MessageSplitter splitter = new MessageSplitter(getMaxInMemorySize());
+            return Flux.from(input)
+                    .concatMapIterable(splitter::feed)
+                    .concatWith(Mono.fromRunnable(splitter::endOfInput));
+        });
+    }
+
+    @Override
+    public Mono<Customer> decodeToMono(Publisher<DataBuffer> input, ResolvableType elementType,
+                                       @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+        return DataBufferUtils.join(input, getMaxInMemorySize())
+                .map(buffer -> {
+                    try {
+                        byte[] bytes = new byte[buffer.readableByteCount()];
+                        buffer.read(bytes);
+                        return CustomerProtobuf.read(bytes, 0, bytes.length);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                });
+    }
+
+    /**
+     * Buffers bytes until a length prefix and the whole message behind it have arrived.
+     */
+    private static final class MessageSplitter {
+
+        private final int maxMessageSize;
+        private byte[] pending = new byte[256];
+        private int length;
+
+        private MessageSplitter(int maxMessageSize) {
+            this.maxMessageSize = maxMessageSize;
+        }
+
+        private List<Customer> feed(DataBuffer buffer) {
+            try {
+                append(buffer);
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+
+            List<Customer> customers = new ArrayList<>();
+            int position = 0;
+            while (true) {
+                long prefix = readPrefix(position);
+                if (prefix < 0) {
+                    break;
+                }
+                int size = (int) prefix;
+                int start = position + prefixSize(position);
+                if (start + size > length) {
+                    break;
+                }
+                customers.add(CustomerProtobuf.read(pending, start, size));
+                position = start + size;
+            }
+            System.arraycopy(pending, position, pending, 0, length - position);
+            length -= position;
+            return customers;
+        }
+
+        private void endOfInput() {
+            if (length > 0) {
+                throw new DecodingException("Truncated protobuf message stream");
+            }
+        }
+
+        private void append(DataBuffer buffer) {
+            int readable = buffer.readableByteCount();
+            if (length + readable > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, length + readable));
+            }
+            buffer.read(pending, length, readable);
+            length += readable;
+        }
+
+        /**
+         * The message size behind the varint prefix at {@code position}, or -1 while the prefix is incomplete.
+         */
+        private long readPrefix(int position) {
+            int size = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (position >= length) {
+                    return -1;
+                }
+                byte b = pending[position++];
+                size |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    if (size < 0 || maxMessageSize >= 0 && size > maxMessageSize) {
+                        throw new DataBufferLimitException("Protobuf message of " + size
+                                + " bytes exceeds the limit of " + maxMessageSize);
+                    }
+                    return size;
+                }
+            }
+            throw new DecodingException("Malformed protobuf message length");
+        }
+
+        private int prefixSize(int position) {
+            int size = 1;
+            while (pending[position++] < 0) {
+                size++;
+            }
+            return size;
+        }
+    }
+}
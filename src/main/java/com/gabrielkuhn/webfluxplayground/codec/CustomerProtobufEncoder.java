@@ -0,0 +1,69 @@
+package com.gabrielkuhn.webfluxplayground.codec;
+
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CursoredCustomer;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Writes customers as {@code application/x-protobuf}: a {@code Mono} as one Customer message, a {@code Flux} as
+ * length-delimited messages, one buffer per customer. A {@link CursoredCustomer} also sets the cursor field.
+ */
+public class CustomerProtobufEncoder extends AbstractEncoder<Object> {
+
+    public CustomerProtobufEncoder() {
+        super(CustomerProtobuf.MEDIA_TYPE);
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, @Nullable MimeType mimeType) {
+        Class<?> type = elementType.toClass();
+        return (Customer.class.isAssignableFrom(type) || CursoredCustomer.class.isAssignableFrom(type))
+                && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, @Nullable MimeType mimeType,
+                                   @Nullable Map<String, Object> hints) {
+        if (inputStream instanceof Mono) {
+            return Mono.from(inputStream)
+                    .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                    .flux();
+        }
+        return Flux.from(inputStream)
+                .map(value -> write(value, bufferFactory, true))
+                .doOnDiscard(PooledDataBuffer.class, DataBufferUtils::release);
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                  @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+        return write(value, bufferFactory, false);
+    }
+
+    private static DataBuffer write(Object value, DataBufferFactory bufferFactory, boolean delimited) {
+        CursoredCustomer cursored = value instanceof CursoredCustomer ? (CursoredCustomer) value : null;
+        Customer customer = cursored != null ? cursored.getCustomer() : (Customer) value;
+        String cursor = cursored != null ? cursored.getCursor() : null;
+        DataBuffer buffer = bufferFactory.allocateBuffer(CustomerProtobuf.estimateSize(customer)
+                + (cursor == null ? 0 : cursor.length() + 2));
+        try {
+            return CustomerProtobuf.write(customer, cursor, buffer, delimited);
+        } catch (RuntimeException ex) {
+            DataBufferUtils.release(buffer);
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.gabrielkuhn.webfluxplayground.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps the connection pool configured from {@code spring.r2dbc.pool} in an {@link InstrumentedConnectionFactory}.
+ */
+@Component
+public class ConnectionPoolInstrumentation implements BeanPostProcessor {
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public ConnectionPoolInstrumentation(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof ConnectionPool) {
+            return new InstrumentedConnectionFactory((ConnectionPool) bean, meterRegistry::getObject, beanName);
+        }
+        return bean;
+    }
+}
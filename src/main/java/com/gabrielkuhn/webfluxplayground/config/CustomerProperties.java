@@ -0,0 +1,284 @@
+package com.gabrielkuhn.webfluxplayground.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "customers")
+public class CustomerProperties {
+
+    private Stream stream = new Stream();
+    private Batch batch = new Batch();
+    private Cache cache = new Cache();
+    private Lookup lookup = new Lookup();
+    private Search search = new Search();
+    private Changes changes = new Changes();
+    private Limiter limiter = new Limiter();
+    private Jdbc jdbc = new Jdbc();
+    private WriteBehind writeBehind = new WriteBehind();
+    private Replicas replicas = new Replicas();
+    private Warmup warmup = new Warmup();
+    private EventLoop eventLoop = new EventLoop();
+    private Blocking blocking = new Blocking();
+    private Timing timing = new Timing();
+    private Ids ids = new Ids();
+    private Deadline deadline = new Deadline();
+
+    @Data
+    public static class Stream {
+        /**
+         * Rows fetched per keyset page; at most two pages are held in memory per streaming request.
+         */
+        private int pageSize = 500;
+    }
+
+    @Data
+    public static class Batch {
+        /**
+         * Rows bound into a single batched INSERT by the bulk ingest endpoint.
+         */
+        private int size = 500;
+    }
+
+    @Data
+    public static class Cache {
+        /**
+         * Upper bound of cached ids, spread evenly over the cache segments.
+         */
+        private int maximumSize = 10_000;
+        private Duration ttl = Duration.ofMinutes(5);
+        /**
+         * How long an id that was not found keeps answering "Customer not found" without a query.
+         */
+        private Duration negativeTtl = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Lookup {
+        /**
+         * How long a findById waits for concurrent lookups to share its IN query; zero queries every id on its own.
+         */
+        private Duration window = Duration.ofMillis(2);
+        private int maxBatchSize = 100;
+        /**
+         * Most ids a single multi-get may ask for; longer lists are rejected with 400.
+         */
+        private int maxIds = 500;
+    }
+
+    @Data
+    public static class Search {
+        private int defaultLimit = 10;
+        private int maxLimit = 100;
+    }
+
+    @Data
+    public static class Changes {
+        /**
+         * Most recent changes kept for subscribers resuming with Last-Event-ID.
+         */
+        private int historySize = 1024;
+        /**
+         * Changes buffered per subscriber that is not keeping up.
+         */
+        private int bufferSize = 256;
+        private Overflow overflow = Overflow.DROP_OLDEST;
+
+        public enum Overflow {
+            DROP_OLDEST,
+            DISCONNECT
+        }
+    }
+
+    @Data
+    public static class Limiter {
+        private boolean enabled = true;
+        /**
+         * Sent as Retry-After with the 503 returned to rejected requests.
+         */
+        private Duration retryAfter = Duration.ofSeconds(1);
+        /**
+         * Weight given to each new limit estimate, between 0 (never adapt) and 1 (no smoothing).
+         */
+        private double smoothing = 0.2;
+        private Limit read = new Limit(40, 8, 400);
+        private Limit write = new Limit(20, 4, 100);
+
+        @Data
+        @NoArgsConstructor
+        @AllArgsConstructor
+        public static class Limit {
+            private int initialLimit;
+            private int minLimit;
+            private int maxLimit;
+        }
+    }
+
+    /**
+     * Only used with the {@code jdbc} profile.
+     */
+    @Data
+    public static class Jdbc {
+        private String url = "jdbc:postgresql://localhost:5432/postgres?reWriteBatchedInserts=true";
+        private String username;
+        private String password;
+        private int maximumPoolSize = 20;
+        private Duration connectionTimeout = Duration.ofSeconds(2);
+        /**
+         * Threads running JDBC calls when the JDK has no virtual threads.
+         */
+        private int platformThreads = 64;
+        /**
+         * Calls queued for those threads before further ones are rejected with 503.
+         */
+        private int queueCapacity = 1000;
+        /**
+         * Rows read per round trip while a query result is streamed.
+         */
+        private int fetchSize = 256;
+    }
+
+    @Data
+    public static class WriteBehind {
+        /**
+         * Acknowledge unconditional updates once buffered and write them in batches.
+         */
+        private boolean enabled = false;
+        private Duration window = Duration.ofMillis(50);
+        /**
+         * Customers with a buffered update; further customers wait for a flush to make room.
+         */
+        private int maxPending = 10_000;
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Replicas {
+        /**
+         * R2DBC URLs of the read replicas, used with the replicas profile. Credentials and pool settings are the
+         * ones of spring.r2dbc.
+         */
+        private List<String> urls = new ArrayList<>();
+        private Selection selection = Selection.ROUND_ROBIN;
+        /**
+         * How long reads of a client that just changed customers keep going to the primary.
+         */
+        private Duration stickiness = Duration.ofSeconds(2);
+
+        public enum Selection {
+            ROUND_ROBIN,
+            /**
+             * The replica with the fewest acquired and pending connections.
+             */
+            LEAST_PENDING
+        }
+    }
+
+    @Data
+    public static class Warmup {
+        /**
+         * Run a synthetic read-only workload before the readiness probe reports UP.
+         */
+        private boolean enabled = false;
+        private int concurrency = 8;
+        /**
+         * Requests per round; the warm-up ends once the p99 of consecutive rounds stops moving.
+         */
+        private int roundSize = 200;
+        private int minRounds = 3;
+        private int stableRounds = 2;
+        /**
+         * Relative p99 change between two rounds that still counts as stable.
+         */
+        private double tolerance = 0.1;
+        private Duration maxDuration = Duration.ofSeconds(60);
+        /**
+         * Lookups cycle through ids 1..ids; missing ones exercise the not-found path.
+         */
+        private int ids = 1000;
+    }
+
+    @Data
+    public static class EventLoop {
+        /**
+         * Probe every server event loop with a scheduled task and record how late it runs.
+         */
+        private boolean enabled = true;
+        private Duration probeInterval = Duration.ofMillis(100);
+    }
+
+    @Data
+    public static class Blocking {
+        /**
+         * Report blocking calls on event loops and other non-blocking threads with BlockHound. Needs the JVM flag
+         * -XX:+AllowRedefinitionToAddDeleteMethods.
+         */
+        private boolean enabled = false;
+        private Action action = Action.LOG;
+        /**
+         * Blocking calls with a frame of these packages on the stack are tolerated.
+         */
+        private List<String> allowedPackages = new ArrayList<>(List.of("ch.qos.logback."));
+
+        public enum Action {
+            LOG,
+            /**
+             * Also throw BlockHound's BlockingOperationError into the blocking call.
+             */
+            FAIL
+        }
+    }
+
+    @Data
+    public static class Timing {
+        /**
+         * Time the phases of /customers requests in the Reactor context.
+         */
+        private boolean enabled = true;
+        /**
+         * Share of responses that get a Server-Timing header; requests with X-Server-Timing always get one.
+         */
+        private double sampleRate = 0.01;
+        /**
+         * Requests taking longer are logged with their phase breakdown; zero logs none.
+         */
+        private Duration slowThreshold = Duration.ofMillis(500);
+    }
+
+    @Data
+    public static class Ids {
+        /**
+         * Assign customer ids from blocks reserved from the id sequence instead of the column default.
+         */
+        private boolean enabled = false;
+    }
+
+    @Data
+    public static class Deadline {
+        /**
+         * Give /customers requests a deadline, taken from X-Request-Timeout or the default of their route.
+         */
+        private boolean enabled = true;
+        /**
+         * Deadline of requests without X-Request-Timeout whose route has no default of its own; zero means none.
+         * Streaming requests do not fall back to it.
+         */
+        private Duration defaultTimeout = Duration.ofSeconds(10);
+        /**
+         * Upper bound for X-Request-Timeout.
+         */
+        private Duration maxTimeout = Duration.ofSeconds(60);
+        /**
+         * Default deadlines by path pattern, e.g. "[/customers/search]": 2s; zero means none.
+         */
+        private Map<String, Duration> routes = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,249 @@
+package com.gabrielkuhn.webfluxplayground.config;
+
+import com.gabrielkuhn.webfluxplayground.deadline.RequestDeadline;
+import com.gabrielkuhn.webfluxplayground.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionMetadata;
+import io.r2dbc.spi.IsolationLevel;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.TransactionDefinition;
+import io.r2dbc.spi.ValidationDepth;
+import io.r2dbc.spi.Wrapped;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Holds the queries run on a connection to the deadline of the request it was acquired for (see
+ * {@link StatementTimeouts}). Queries are refused once the deadline has passed. A query whose request expires or is
+ * abandoned by the client while it runs is cancelled on the server as well, and the connection only goes back to
+ * the pool once the server has the cancellation, so it can't hit the next query on the connection.
+ * <p>
+ * Without a deadline, the connection only clears a statement timeout left behind by an earlier request.
+ */
+@Slf4j
+class DeadlineConnection implements Connection, Wrapped<Connection> {
+
+    private final Connection delegate;
+    @Nullable
+    private final RequestDeadline deadline;
+    private final Counter cancelled;
+    private final Mono<Void> statementTimeout;
+
+    private volatile Mono<Void> serverCancel;
+
+    DeadlineConnection(Connection delegate, @Nullable RequestDeadline deadline, StatementTimeouts statementTimeouts,
+                       Counter cancelled) {
+        this.delegate = delegate;
+        this.deadline = deadline;
+        this.cancelled = cancelled;
+        // A SET inside a transaction is undone by a rollback, so transactions keep whatever the connection has.
+        this.statementTimeout = Mono.defer(() -> delegate.isAutoCommit()
+                        ? statementTimeouts.apply(delegate, deadline)
+                        : Mono.<Void>empty())
+                .cache();
+    }
+
+    @Override
+    public Statement createStatement(String sql) {
+        return new DeadlineStatement(delegate.createStatement(sql));
+    }
+
+    @Override
+    public Publisher<Void> close() {
+        return Mono.defer(() -> {
+            Mono<Void> cancel = serverCancel;
+            return cancel == null ? Mono.from(delegate.close()) : cancel.then(Mono.from(delegate.close()));
+        });
+    }
+
+    private Flux<Result> execute(Statement statement) {
+        return Flux.<Result>defer(() -> {
+                    if (deadline != null && deadline.isExpired()) {
+                        return Flux.error(new DeadlineExceededException());
+                    }
+                    return statementTimeout.thenMany(Flux.from(statement.execute()));
+                })
+                .doOnCancel(this::cancelOnServer);
+    }
+
+    /**
+     * Operators like {@code next()} cancel finished queries all the time; only queries of a request that was given
+     * up on are cancelled on the server.
+     */
+    private void cancelOnServer() {
+        if (deadline == null || (!deadline.isExpired() && !deadline.isCancelled()) || serverCancel != null) {
+            return;
+        }
+        PostgresqlConnection postgres = unwrap(delegate, PostgresqlConnection.class);
+        if (postgres == null) {
+            return;
+        }
+        Mono<Void> cancel = postgres.cancelRequest()
+                .onErrorResume(error -> {
+                    log.debug("Could not cancel a query on the server", error);
+                    return Mono.empty();
+                })
+                .cache();
+        serverCancel = cancel;
+        cancelled.increment();
+        cancel.subscribe();
+    }
+
+    @Nullable
+    private static <T> T unwrap(Connection connection, Class<T> type) {
+        if (type.isInstance(connection)) {
+            return type.cast(connection);
+        }
+        return connection instanceof Wrapped ? ((Wrapped<?>) connection).unwrap(type) : null;
+    }
+
+    @Override
+    public Connection unwrap() {
+        return delegate;
+    }
+
+    @Override
+    public Publisher<Void> beginTransaction() {
+        return delegate.beginTransaction();
+    }
+
+    @Override
+    public Publisher<Void> beginTransaction(TransactionDefinition definition) {
+        return delegate.beginTransaction(definition);
+    }
+
+    @Override
+    public Publisher<Void> commitTransaction() {
+        return delegate.commitTransaction();
+    }
+
+    @Override
+    public Batch createBatch() {
+        return delegate.createBatch();
+    }
+
+    @Override
+    public Publisher<Void> createSavepoint(String name) {
+        return delegate.createSavepoint(name);
+    }
+
+    @Override
+    public boolean isAutoCommit() {
+        return delegate.isAutoCommit();
+    }
+
+    @Override
+    public ConnectionMetadata getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public IsolationLevel getTransactionIsolationLevel() {
+        return delegate.getTransactionIsolationLevel();
+    }
+
+    @Override
+    public Publisher<Void> releaseSavepoint(String name) {
+        return delegate.releaseSavepoint(name);
+    }
+
+    @Override
+    public Publisher<Void> rollbackTransaction() {
+        return delegate.rollbackTransaction();
+    }
+
+    @Override
+    public Publisher<Void> rollbackTransactionToSavepoint(String name) {
+        return delegate.rollbackTransactionToSavepoint(name);
+    }
+
+    @Override
+    public Publisher<Void> setAutoCommit(boolean autoCommit) {
+        return delegate.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public Publisher<Void> setLockWaitTimeout(Duration timeout) {
+        return delegate.setLockWaitTimeout(timeout);
+    }
+
+    @Override
+    public Publisher<Void> setStatementTimeout(Duration timeout) {
+        return delegate.setStatementTimeout(timeout);
+    }
+
+    @Override
+    public Publisher<Void> setTransactionIsolationLevel(IsolationLevel isolationLevel) {
+        return delegate.setTransactionIsolationLevel(isolationLevel);
+    }
+
+    @Override
+    public Publisher<Boolean> validate(ValidationDepth depth) {
+        return delegate.validate(depth);
+    }
+
+    private final class DeadlineStatement implements Statement {
+
+        private final Statement statement;
+
+        private DeadlineStatement(Statement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Statement add() {
+            statement.add();
+            return this;
+        }
+
+        @Override
+        public Statement bind(int index, Object value) {
+            statement.bind(index, value);
+            return this;
+        }
+
+        @Override
+        public Statement bind(String name, Object value) {
+            statement.bind(name, value);
+            return this;
+        }
+
+        @Override
+        public Statement bindNull(int index, Class<?> type) {
+            statement.bindNull(index, type);
+            return this;
+        }
+
+        @Override
+        public Statement bindNull(String name, Class<?> type) {
+            statement.bindNull(name, type);
+            return this;
+        }
+
+        @Override
+        public Statement returnGeneratedValues(String... columns) {
+            statement.returnGeneratedValues(columns);
+            return this;
+        }
+
+        @Override
+        public Statement fetchSize(int rows) {
+            statement.fetchSize(rows);
+            return this;
+        }
+
+        @Override
+        public Publisher<? extends Result> execute() {
+            return DeadlineConnection.this.execute(statement);
+        }
+    }
+}
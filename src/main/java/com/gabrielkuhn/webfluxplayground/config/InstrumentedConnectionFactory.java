@@ -0,0 +1,153 @@
+package com.gabrielkuhn.webfluxplayground.config;
+
+import com.gabrielkuhn.webfluxplayground.deadline.RequestDeadline;
+import com.gabrielkuhn.webfluxplayground.exception.DeadlineExceededException;
+import com.gabrielkuhn.webfluxplayground.exception.ServiceUnavailableException;
+import com.gabrielkuhn.webfluxplayground.timing.RequestTiming;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.spi.Closeable;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import io.r2dbc.spi.Wrapped;
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.pool.PoolAcquirePendingLimitException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Times every connection acquisition from the pool and turns pool exhaustion into a fast 503 instead of an opaque
+ * data access failure. The pool itself stays reachable through {@link Wrapped#unwrap()} for its gauges.
+ * <p>
+ * Acquisitions made for a timed request also add to its {@link RequestTiming}, and so does the time their
+ * connection is held. Requests whose {@link RequestDeadline} has passed get no connection at all, and the queries of
+ * those that have one are held to it by a {@link DeadlineConnection}.
+ */
+public class InstrumentedConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Closeable,
+        Disposable {
+
+    static final Duration RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final ConnectionFactory delegate;
+    private final Supplier<MeterRegistry> meterRegistry;
+    private final String name;
+    private final StatementTimeouts statementTimeouts = new StatementTimeouts();
+
+    private volatile Meters meters;
+
+    /**
+     * The registry is only resolved on the first acquisition, so wrapping the pool never forces the metrics
+     * infrastructure to initialize early.
+     */
+    public InstrumentedConnectionFactory(ConnectionFactory delegate, Supplier<MeterRegistry> meterRegistry,
+                                         String name) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+        this.name = name;
+    }
+
+    @Override
+    public Publisher<? extends Connection> create() {
+        return Mono.deferContextual(context -> {
+            Meters current = meters();
+            RequestDeadline deadline = RequestDeadline.get(context);
+            if (deadline != null && deadline.isExpired()) {
+                return Mono.<Connection>error(new DeadlineExceededException());
+            }
+            RequestTiming timing = RequestTiming.get(context);
+            long start = System.nanoTime();
+            Mono<Connection> connection = Mono.<Connection>from(delegate.create())
+                    .doOnSuccess(acquired -> {
+                        long nanos = System.nanoTime() - start;
+                        current.acquire.record(nanos, TimeUnit.NANOSECONDS);
+                        if (timing != null) {
+                            timing.add(RequestTiming.Phase.ACQUIRE, nanos);
+                        }
+                    });
+            connection = connection.map(acquired -> deadline != null || statementTimeouts.isApplied(acquired)
+                    ? new DeadlineConnection(acquired, deadline, statementTimeouts, current.cancelled)
+                    : acquired);
+            if (timing != null) {
+                connection = connection.map(acquired -> new TimedConnection(acquired, timing));
+            }
+            return connection
+                    .onErrorMap(InstrumentedConnectionFactory::isExhausted, error -> {
+                        current.exhausted.increment();
+                        return new ServiceUnavailableException("Database connection pool exhausted", RETRY_AFTER);
+                    });
+        });
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return delegate;
+    }
+
+    @Override
+    public Publisher<Void> close() {
+        return delegate instanceof Closeable ? ((Closeable) delegate).close() : Mono.empty();
+    }
+
+    @Override
+    public void dispose() {
+        if (delegate instanceof Disposable) {
+            ((Disposable) delegate).dispose();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return delegate instanceof Disposable && ((Disposable) delegate).isDisposed();
+    }
+
+    private Meters meters() {
+        Meters current = meters;
+        if (current == null) {
+            current = new Meters(meterRegistry.get(), name);
+            meters = current;
+        }
+        return current;
+    }
+
+    private static boolean isExhausted(Throwable error) {
+        return error instanceof R2dbcTimeoutException
+                || error instanceof TimeoutException
+                || error instanceof PoolAcquirePendingLimitException;
+    }
+
+    private static final class Meters {
+
+        private final Timer acquire;
+        private final Counter exhausted;
+        private final Counter cancelled;
+
+        private Meters(MeterRegistry registry, String name) {
+            this.acquire = Timer.builder("r2dbc.pool.acquire")
+                    .tag("name", name)
+                    .description("Time spent waiting for a pooled connection")
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.exhausted = Counter.builder("r2dbc.pool.exhausted")
+                    .tag("name", name)
+                    .description("Acquisitions rejected because the pool stayed exhausted")
+                    .register(registry);
+            this.cancelled = Counter.builder("r2dbc.queries.cancelled")
+                    .tag("name", name)
+                    .description("Queries cancelled on the server because their request expired or was abandoned")
+                    .register(registry);
+        }
+    }
+}
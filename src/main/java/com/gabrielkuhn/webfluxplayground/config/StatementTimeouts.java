@@ -0,0 +1,72 @@
+package com.gabrielkuhn.webfluxplayground.config;
+
+import com.gabrielkuhn.webfluxplayground.deadline.RequestDeadline;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Wrapped;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps the server-side statement timeout of each pooled connection in line with the deadline of whoever holds it,
+ * as a backstop for queries the server would otherwise finish after the request was given up on.
+ * <p>
+ * Changing it costs a round trip, so the timeout is rounded up to whole seconds and only changed when that differs
+ * from what the connection already has: requests with the same route default reuse it for free. Connections used
+ * without a deadline get theirs cleared again.
+ */
+@Slf4j
+final class StatementTimeouts {
+
+    /**
+     * Timeouts set on physical connections; connections the pool evicted drop out on their own.
+     */
+    private final Map<Connection, Duration> applied = Collections.synchronizedMap(new WeakHashMap<>());
+
+    boolean isApplied(Connection connection) {
+        return applied.containsKey(physical(connection));
+    }
+
+    Mono<Void> apply(Connection connection, @Nullable RequestDeadline deadline) {
+        Connection physical = physical(connection);
+        Duration timeout = deadline == null ? Duration.ZERO : roundUp(deadline.remaining());
+        if (timeout.equals(applied.getOrDefault(physical, Duration.ZERO))) {
+            return Mono.empty();
+        }
+        return Mono.from(connection.setStatementTimeout(timeout))
+                .doOnSuccess(done -> {
+                    if (timeout.isZero()) {
+                        applied.remove(physical);
+                    } else {
+                        applied.put(physical, timeout);
+                    }
+                })
+                .onErrorResume(error -> {
+                    // The deadline is still enforced on our side; only the server keeps running longer.
+                    log.debug("Could not set the statement timeout to {}", timeout, error);
+                    return Mono.empty();
+                });
+    }
+
+    private static Duration roundUp(Duration remaining) {
+        long seconds = remaining.getSeconds() + (remaining.getNano() > 0 ? 1 : 0);
+        return Duration.ofSeconds(Math.max(seconds, 1));
+    }
+
+    private static Connection physical(Connection connection) {
+        Connection current = connection;
+        while (current instanceof Wrapped) {
+            Object unwrapped = ((Wrapped<?>) current).unwrap();
+            if (!(unwrapped instanceof Connection)) {
+                break;
+            }
+            current = (Connection) unwrapped;
+        }
+        return current;
+    }
+}
@@ -1,14 +1,32 @@
 package com.gabrielkuhn.webfluxplayground.controller;
 
+import com.gabrielkuhn.webfluxplayground.codec.CustomerProtobuf;
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
 import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerBatchResult;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerChange;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerCursor;
+import com.gabrielkuhn.webfluxplayground.domain.CursoredCustomer;
+import com.gabrielkuhn.webfluxplayground.event.CustomerChangeFeed;
+import com.gabrielkuhn.webfluxplayground.exception.CustomerNotFoundException;
+import com.gabrielkuhn.webfluxplayground.exception.CustomerVersionMismatchException;
+import com.gabrielkuhn.webfluxplayground.exception.TooManyIdsException;
+import com.gabrielkuhn.webfluxplayground.limiter.LongLived;
 import com.gabrielkuhn.webfluxplayground.service.CustomerService;
+import com.gabrielkuhn.webfluxplayground.timing.RequestTiming;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
+import java.util.List;
+import java.util.Locale;
 
 @RestController
 @RequestMapping("/customers")
@@ -16,32 +34,132 @@ import javax.validation.Valid;
 public class CustomerController {
 
     private final CustomerService customerService;
+    private final CustomerProperties customerProperties;
+    private final CustomerChangeFeed customerChangeFeed;
 
+    /**
+     * Tagged with a weak ETag from table aggregates, so the listing is streamed rather than held to hash it; a matching
+     * If-None-Match is answered with 304 without reading it. The tag is the same for every format, hence the Vary.
+     */
     @GetMapping
-    public Flux<Customer> findAll() {
-        return customerService.findAll();
+    public Mono<ResponseEntity<Flux<Customer>>> findAll() {
+        return RequestTiming.service(customerService.findAllStats())
+                .map(stats -> ResponseEntity.ok()
+                        .eTag(CustomerETag.of(stats))
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .body(RequestTiming.service(customerService.findAll())));
     }
 
+    @GetMapping(params = "ids")
+    public Flux<Customer> findAllById(@RequestParam List<Integer> ids) {
+        int maxIds = customerProperties.getLookup().getMaxIds();
+        if (ids.size() > maxIds) {
+            return Flux.error(new TooManyIdsException(maxIds));
+        }
+        return RequestTiming.service(customerService.findAllById(ids));
+    }
+
+    @GetMapping("/search")
+    public Flux<Customer> search(@RequestParam String prefix, @RequestParam(required = false) Integer limit) {
+        CustomerProperties.Search search = customerProperties.getSearch();
+        int boundedLimit = limit == null ? search.getDefaultLimit() : limit;
+        return RequestTiming.service(
+                customerService.search(prefix, Math.max(1, Math.min(boundedLimit, search.getMaxLimit()))));
+    }
+
+    /**
+     * Streams every customer as NDJSON, or as length-delimited protobuf messages. Each one carries the cursor to
+     * resume after it, so a client that lost the connection passes the last cursor it read.
+     */
+    @LongLived
+    @GetMapping(produces = {MediaType.APPLICATION_NDJSON_VALUE, CustomerProtobuf.MEDIA_TYPE_VALUE})
+    public Flux<CursoredCustomer> stream(@RequestParam(required = false) String cursor) {
+        return RequestTiming.service(customerService.findAllAfter(CustomerCursor.decode(cursor)))
+                .map(CursoredCustomer::of);
+    }
+
+    @LongLived
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Customer>> streamEvents(@RequestParam(required = false) String cursor,
+                                                        @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return RequestTiming.service(
+                        customerService.findAllAfter(CustomerCursor.decode(lastEventId != null ? lastEventId : cursor)))
+                .map(customer -> ServerSentEvent.builder(customer)
+                        .id(CustomerCursor.encode(customer.getId()))
+                        .build());
+    }
+
+    /**
+     * Follows created, updated and deleted customers as they are committed. A reconnecting client resumes after its
+     * Last-Event-ID as long as the changes after it are still held in the feed history; otherwise it first gets a
+     * {@code reset} event and has to read the customers again.
+     */
+    @LongLived(limited = false)
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<CustomerChange>> changeEvents(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return customerChangeFeed.changes(lastEventId)
+                .map(change -> ServerSentEvent.builder(change)
+                        .id(String.valueOf(change.getSequence()))
+                        .event(change.getType().name().toLowerCase(Locale.ROOT))
+                        .build());
+    }
+
+    @LongLived(limited = false)
+    @GetMapping(value = "/changes", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<CustomerChange> changes(@RequestParam(required = false) Long after) {
+        return customerChangeFeed.changes(after);
+    }
+
+    /**
+     * A matching If-None-Match is answered with 304 before anything is encoded, and cached customers are validated
+     * without a database round trip.
+     */
     @GetMapping("/{id}")
-    public Mono<Customer> findById(@PathVariable Integer id) {
-        return customerService.findById(id);
+    public Mono<ResponseEntity<Customer>> findById(@PathVariable Integer id) {
+        return RequestTiming.service(customerService.findById(id))
+                .map(customer -> ResponseEntity.ok()
+                        .eTag(CustomerETag.of(customer))
+                        .body(customer));
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<Customer> save(@Valid @RequestBody Customer customer) {
-        return customerService.save(customer);
+        return RequestTiming.service(customerService.save(customer));
+    }
+
+    @LongLived
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public Flux<CustomerBatchResult> saveAll(@Valid @RequestBody Flux<Customer> customers) {
+        return RequestTiming.service(customerService.saveAll(customers));
     }
 
     @PutMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public Mono<Void> update(@PathVariable Integer id, @Valid @RequestBody Customer customer) {
-        return customerService.update(customer.withId(id));
+    public Mono<Void> update(@PathVariable Integer id,
+                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                             @Valid @RequestBody Customer customer) {
+        // Only If-Match makes an update conditional; a version in the body is not a precondition.
+        return RequestTiming.service(ifMatch(ifMatch, Mono.defer(() -> customerService.update(customer.withId(id)
+                .withVersion(CustomerETag.parseVersion(ifMatch))))));
     }
 
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public Mono<Void> delete(@PathVariable Integer id) {
-        return customerService.delete(id);
+    public Mono<Void> delete(@PathVariable Integer id,
+                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return RequestTiming.service(ifMatch(ifMatch,
+                Mono.defer(() -> customerService.delete(id, CustomerETag.parseVersion(ifMatch)))));
+    }
+
+    /**
+     * {@code If-Match: *} only matches a customer that exists, so a missing one fails the precondition instead.
+     */
+    private static Mono<Void> ifMatch(String ifMatch, Mono<Void> write) {
+        return CustomerETag.isAny(ifMatch)
+                ? write.onErrorMap(CustomerNotFoundException.class, error -> new CustomerVersionMismatchException())
+                : write;
     }
 }
@@ -0,0 +1,82 @@
+package com.gabrielkuhn.webfluxplayground.controller;
+
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerTableStats;
+import com.gabrielkuhn.webfluxplayground.exception.AmbiguousIfMatchException;
+import com.gabrielkuhn.webfluxplayground.exception.CustomerVersionMismatchException;
+
+/**
+ * Entity tags derived from row ids and versions, so computing one never touches the JSON representation.
+ */
+public final class CustomerETag {
+
+    private static final String ANY = "*";
+
+    private CustomerETag() {
+    }
+
+    public static String of(Customer customer) {
+        return "\"" + versionOf(customer) + "\"";
+    }
+
+    /**
+     * Weakly tags a whole listing from table aggregates, without reading it. Weak, because the listing is read
+     * separately and the same tag is sent for every representation of it.
+     */
+    public static String of(CustomerTableStats stats) {
+        return "W/\"" + Long.toHexString(stats.getChecksum()) + "-" + stats.getRowCount() + "-" + stats.getMaxVersion()
+                + "\"";
+    }
+
+    /**
+     * Returns the version an {@code If-Match} header requires, or {@code null} when any current version is accepted.
+     * Weak or malformed tags can never match a strong tag, so they are skipped, and the precondition fails when no
+     * entry is left. A write checks a single version, so a list naming different versions is rejected.
+     */
+    public static Integer parseVersion(String ifMatch) {
+        if (ifMatch == null || isAny(ifMatch)) {
+            return null;
+        }
+        Integer version = null;
+        for (String entry : ifMatch.split(",")) {
+            Integer candidate = strongVersion(entry.trim());
+            if (candidate == null) {
+                continue;
+            }
+            if (version != null && !version.equals(candidate)) {
+                throw new AmbiguousIfMatchException();
+            }
+            version = candidate;
+        }
+        if (version == null) {
+            throw preconditionFailed();
+        }
+        return version;
+    }
+
+    /**
+     * {@code If-Match: *} accepts any version, but only of a customer that exists.
+     */
+    public static boolean isAny(String ifMatch) {
+        return ifMatch != null && ifMatch.trim().equals(ANY);
+    }
+
+    private static Integer strongVersion(String tag) {
+        if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            return null;
+        }
+        try {
+            return Integer.valueOf(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int versionOf(Customer customer) {
+        return customer.getVersion() != null ? customer.getVersion() : 0;
+    }
+
+    private static CustomerVersionMismatchException preconditionFailed() {
+        return new CustomerVersionMismatchException();
+    }
+}
@@ -0,0 +1,160 @@
+package com.gabrielkuhn.webfluxplayground.deadline;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gives every {@code /customers} request a deadline (see {@link RequestDeadline}): the milliseconds in
+ * {@code X-Request-Timeout}, capped at {@code max-timeout}, or else the default of its route. Requests arriving with
+ * no time left are answered with 504 straight away; requests still running when the deadline passes are cancelled,
+ * which cancels their queries and releases their connections, and answered with 504 if nothing was sent yet.
+ * <p>
+ * Runs right after {@link com.gabrielkuhn.webfluxplayground.timing.ServerTimingFilter}, so rejected requests never
+ * take a concurrency slot.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class DeadlineFilter implements WebFilter, MeterBinder {
+
+    static final String REQUEST_HEADER = "X-Request-Timeout";
+
+    private static final String PATH = "/customers";
+
+    private final boolean enabled;
+    private final Duration defaultTimeout;
+    private final Duration maxTimeout;
+    private final List<Route> routes = new ArrayList<>();
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    public DeadlineFilter(CustomerProperties customerProperties) {
+        CustomerProperties.Deadline properties = customerProperties.getDeadline();
+        this.enabled = properties.isEnabled();
+        this.defaultTimeout = properties.getDefaultTimeout();
+        this.maxTimeout = properties.getMaxTimeout();
+        for (Map.Entry<String, Duration> route : properties.getRoutes().entrySet()) {
+            routes.add(new Route(PathPatternParser.defaultInstance.parse(route.getKey()), route.getValue()));
+        }
+        routes.sort((left, right) -> PathPattern.SPECIFICITY_COMPARATOR.compare(left.pattern, right.pattern));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled || !request.getPath().value().startsWith(PATH)) {
+            return chain.filter(exchange);
+        }
+
+        Duration timeout = requestedTimeout(request);
+        if (timeout == null) {
+            timeout = defaultTimeout(request);
+            if (timeout == null || timeout.isZero() || timeout.isNegative()) {
+                return chain.filter(exchange);
+            }
+        } else if (timeout.isZero() || timeout.isNegative()) {
+            rejected.increment();
+            return Mono.error(new DeadlineExceededException());
+        }
+
+        RequestDeadline deadline = RequestDeadline.after(timeout);
+        return chain.filter(exchange)
+                .timeout(timeout, Mono.error(DeadlineExceededException::new))
+                .doOnError(DeadlineExceededException.class, error -> expired.increment())
+                // After the timeout, so only cancellations by the client count. Runs before the cancellation reaches
+                // the queries, which look at the deadline to decide whether to cancel them on the server too.
+                .doOnCancel(() -> {
+                    deadline.cancel();
+                    cancelled.increment();
+                })
+                .contextWrite(context -> RequestDeadline.put(context, deadline));
+    }
+
+    /**
+     * The client's own timeout; unparseable values are ignored.
+     */
+    @Nullable
+    private Duration requestedTimeout(ServerHttpRequest request) {
+        String header = request.getHeaders().getFirst(REQUEST_HEADER);
+        if (header == null) {
+            return null;
+        }
+        try {
+            Duration timeout = Duration.ofMillis(Long.parseLong(header.trim()));
+            return timeout.compareTo(maxTimeout) > 0 ? maxTimeout : timeout;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private Duration defaultTimeout(ServerHttpRequest request) {
+        for (Route route : routes) {
+            if (route.pattern.matches(request.getPath().pathWithinApplication())) {
+                return route.timeout;
+            }
+        }
+        return isStreaming(request) ? null : defaultTimeout;
+    }
+
+    private static boolean isStreaming(ServerHttpRequest request) {
+        for (MediaType mediaType : request.getHeaders().getAccept()) {
+            if (MediaType.TEXT_EVENT_STREAM.equalsTypeAndSubtype(mediaType)
+                    || MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(mediaType)) {
+                return true;
+            }
+        }
+        return MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(request.getHeaders().getContentType());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindTo(registry, "rejected", rejected);
+        bindTo(registry, "expired", expired);
+        bindTo(registry, "cancelled", cancelled);
+    }
+
+    /**
+     * Outcomes: {@code rejected} had no time left on arrival, {@code expired} ran out of time while being served and
+     * {@code cancelled} was abandoned by the client.
+     */
+    private static void bindTo(MeterRegistry registry, String outcome, LongAdder count) {
+        FunctionCounter.builder("customers.deadline.requests", count, LongAdder::sum)
+                .description("Requests that ran out of time or were abandoned by the client")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static final class Route {
+
+        private final PathPattern pattern;
+        private final Duration timeout;
+
+        private Route(PathPattern pattern, Duration timeout) {
+            this.pattern = pattern;
+            this.timeout = timeout;
+        }
+    }
+}
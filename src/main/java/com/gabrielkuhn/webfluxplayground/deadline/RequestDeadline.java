@@ -0,0 +1,66 @@
+package com.gabrielkuhn.webfluxplayground.deadline;
+
+import org.springframework.lang.Nullable;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+
+/**
+ * The point in time by which a request must be answered, carried in its Reactor context. Database access checks it
+ * before running a query and bounds the query by what is left of it.
+ */
+public final class RequestDeadline {
+
+    private static final Object KEY = RequestDeadline.class;
+
+    private final long expiresAtNanos;
+
+    private volatile boolean cancelled;
+
+    public RequestDeadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static RequestDeadline after(Duration timeout) {
+        return new RequestDeadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public static Context put(Context context, RequestDeadline deadline) {
+        return context.put(KEY, deadline);
+    }
+
+    @Nullable
+    public static RequestDeadline get(ContextView context) {
+        return context.getOrDefault(KEY, null);
+    }
+
+    public long getExpiresAtNanos() {
+        return expiresAtNanos;
+    }
+
+    /**
+     * Time left until the deadline; zero or negative once it has passed.
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(expiresAtNanos - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Whether the client went away before the request was answered.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Gives up on the request; queries still running for it are cancelled on the server.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+}
@@ -0,0 +1,23 @@
+package com.gabrielkuhn.webfluxplayground.domain;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A streamed customer together with the cursor that resumes the stream right after it. It is written as the
+ * customer with an extra {@code cursor} property (NDJSON) or field (protobuf), so readers of plain customers can
+ * ignore it.
+ */
+@Data
+@AllArgsConstructor
+public class CursoredCustomer {
+
+    @JsonUnwrapped
+    private Customer customer;
+    private String cursor;
+
+    public static CursoredCustomer of(Customer customer) {
+        return new CursoredCustomer(customer, CustomerCursor.encode(customer.getId()));
+    }
+}
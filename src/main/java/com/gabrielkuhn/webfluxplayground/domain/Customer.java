@@ -2,6 +2,7 @@ package com.gabrielkuhn.webfluxplayground.domain;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.relational.core.mapping.Table;
 
 import javax.validation.constraints.NotEmpty;
@@ -17,4 +18,6 @@ public class Customer {
     private Integer id;
     @NotEmpty
     private String name;
+    @Version
+    private Integer version;
 }
@@ -0,0 +1,17 @@
+package com.gabrielkuhn.webfluxplayground.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@Builder
+public class CustomerBatchResult {
+
+    private int batch;
+    private int inserted;
+    private List<Integer> ids;
+}
@@ -0,0 +1,30 @@
+package com.gabrielkuhn.webfluxplayground.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+@Builder
+public class CustomerChange {
+
+    private long sequence;
+    private Type type;
+    private int id;
+    /**
+     * The customer as written; absent for deletions.
+     */
+    private Customer customer;
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        /**
+         * Changes the subscriber asked to resume from are no longer held, so it has to read the current state again.
+         * Carries no customer; its sequence is where the following changes continue from.
+         */
+        RESET
+    }
+}
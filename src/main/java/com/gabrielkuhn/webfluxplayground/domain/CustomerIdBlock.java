@@ -0,0 +1,15 @@
+package com.gabrielkuhn.webfluxplayground.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Customer ids {@code first} to {@code first + size - 1}, reserved with a single call to the id sequence.
+ */
+@Data
+@AllArgsConstructor
+public class CustomerIdBlock {
+
+    private int first;
+    private int size;
+}
@@ -0,0 +1,21 @@
+package com.gabrielkuhn.webfluxplayground.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.With;
+
+/**
+ * Aggregates over the whole customer table, cheap enough to tag a full listing with: any insert, update or delete
+ * changes the row count or the checksum over every (id, version) pair.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@With
+public class CustomerTableStats {
+
+    private long rowCount;
+    private long maxVersion;
+    private long checksum;
+}
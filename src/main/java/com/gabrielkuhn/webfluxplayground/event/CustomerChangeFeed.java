@@ -0,0 +1,141 @@
+package com.gabrielkuhn.webfluxplayground.event;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerChange;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes committed customer mutations to any number of subscribers.
+ * <p>
+ * Live changes go through a multicast sink that keeps nothing, so following the feed costs the same however long the
+ * history is. The last {@code customers.changes.history-size} changes are also kept in a ring buffer, which is only
+ * read by subscribers resuming from a {@code Last-Event-ID}. Each subscriber drains the feed into its own bounded
+ * buffer, so a slow consumer either loses its oldest changes or is disconnected, depending on
+ * {@code customers.changes.overflow}. It never holds back the publisher or the other subscribers.
+ */
+@Component
+public class CustomerChangeFeed implements MeterBinder {
+
+    private final CustomerProperties.Changes properties;
+    private final Sinks.Many<CustomerChange> live = Sinks.many().multicast().directBestEffort();
+    private final CustomerChange[] history;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+
+    private long sequence;
+
+    public CustomerChangeFeed(CustomerProperties customerProperties) {
+        this.properties = customerProperties.getChanges();
+        this.history = new CustomerChange[Math.max(properties.getHistorySize(), 1)];
+    }
+
+    /**
+     * Called once a mutation has been written; emissions are serialized so sequence numbers match delivery order.
+     */
+    public synchronized void publish(CustomerChange.Type type, int id, Customer customer) {
+        CustomerChange change = new CustomerChange(++sequence, type, id, customer);
+        history[(int) (sequence % history.length)] = change;
+        live.tryEmitNext(change);
+        published.increment();
+    }
+
+    /**
+     * Streams changes after {@code lastEventId}, replaying the ones still held in history first. Without an id, only
+     * changes published from now on are emitted. When changes after the id have already left the history, or the id
+     * was never issued by this process, the stream starts with a {@link CustomerChange.Type#RESET} instead of
+     * silently skipping them.
+     */
+    public Flux<CustomerChange> changes(Long lastEventId) {
+        return Flux.defer(() -> {
+            Flux<CustomerChange> changes;
+            if (lastEventId == null) {
+                changes = live.asFlux();
+            } else {
+                long current = currentSequence();
+                changes = lastEventId > current
+                        ? follow(current).startWith(reset(current))
+                        : replay(lastEventId, current + 1).concatWith(follow(current));
+            }
+
+            if (properties.getOverflow() == CustomerProperties.Changes.Overflow.DROP_OLDEST) {
+                return changes.onBackpressureBuffer(properties.getBufferSize(), change -> dropped.increment(),
+                        BufferOverflowStrategy.DROP_OLDEST);
+            }
+            return changes.onBackpressureBuffer(properties.getBufferSize(), change -> disconnected.increment(),
+                            BufferOverflowStrategy.ERROR)
+                    .onErrorResume(Exceptions::isOverflow, error -> Flux.empty());
+        });
+    }
+
+    /**
+     * Live changes after {@code after}. Changes published before the live subscription was made are taken from the
+     * history, so none is lost between a replay and the live stream.
+     */
+    private Flux<CustomerChange> follow(long after) {
+        return live.asFlux()
+                .switchOnFirst((first, rest) -> first.hasValue() && first.get().getSequence() > after + 1
+                        ? rest.startWith(replay(after, first.get().getSequence()))
+                        : rest);
+    }
+
+    /**
+     * Changes from the history with a sequence between {@code after} and {@code before}, both exclusive, preceded by a
+     * reset when the oldest of them are no longer held.
+     */
+    private Flux<CustomerChange> replay(long after, long before) {
+        List<CustomerChange> changes = new ArrayList<>();
+        long oldest;
+        synchronized (this) {
+            oldest = Math.max(sequence - history.length + 1, 1);
+            for (long next = Math.max(after + 1, oldest); next < before && next <= sequence; next++) {
+                changes.add(history[(int) (next % history.length)]);
+            }
+        }
+        Flux<CustomerChange> replay = Flux.fromIterable(changes);
+        return after + 1 < oldest ? replay.startWith(reset(oldest - 1)) : replay;
+    }
+
+    private CustomerChange reset(long sequence) {
+        resets.increment();
+        return new CustomerChange(sequence, CustomerChange.Type.RESET, 0, null);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("customers.changes.subscribers", live, Sinks.Many::currentSubscriberCount)
+                .description("Clients currently following the customer change feed")
+                .register(registry);
+        FunctionCounter.builder("customers.changes.published", published, LongAdder::sum)
+                .description("Customer changes published to the feed")
+                .register(registry);
+        FunctionCounter.builder("customers.changes.dropped", dropped, LongAdder::sum)
+                .description("Changes dropped from the buffer of a slow subscriber")
+                .register(registry);
+        FunctionCounter.builder("customers.changes.disconnected", disconnected, LongAdder::sum)
+                .description("Slow subscribers disconnected because their buffer overflowed")
+                .register(registry);
+        FunctionCounter.builder("customers.changes.resets", resets, LongAdder::sum)
+                .description("Resuming subscribers told to start over because their changes had left the history")
+                .register(registry);
+    }
+
+    private synchronized long currentSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,13 @@
+package com.gabrielkuhn.webfluxplayground.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * An {@code If-Match} list named more than one customer version; a conditional write can only check for one.
+ */
+public class AmbiguousIfMatchException extends StacklessResponseStatusException {
+
+    public AmbiguousIfMatchException() {
+        super(HttpStatus.BAD_REQUEST, "If-Match can only name one customer version");
+    }
+}
@@ -0,0 +1,10 @@
+package com.gabrielkuhn.webfluxplayground.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class CustomerNotFoundException extends StacklessResponseStatusException {
+
+    public CustomerNotFoundException() {
+        super(HttpStatus.NOT_FOUND, "Customer not found");
+    }
+}
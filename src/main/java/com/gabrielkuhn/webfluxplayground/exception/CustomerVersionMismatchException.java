@@ -0,0 +1,10 @@
+package com.gabrielkuhn.webfluxplayground.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class CustomerVersionMismatchException extends StacklessResponseStatusException {
+
+    public CustomerVersionMismatchException() {
+        super(HttpStatus.PRECONDITION_FAILED, "Customer version does not match");
+    }
+}
@@ -0,0 +1,13 @@
+package com.gabrielkuhn.webfluxplayground.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * The deadline of a request ran out, or had already run out when it arrived.
+ */
+public class DeadlineExceededException extends StacklessResponseStatusException {
+
+    public DeadlineExceededException() {
+        super(HttpStatus.GATEWAY_TIMEOUT, "Request deadline exceeded");
+    }
+}
@@ -0,0 +1,72 @@
+package com.gabrielkuhn.webfluxplayground.exception;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.gabrielkuhn.webfluxplayground.codec.CustomerProtobuf;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formats an error body can be rendered in. Clients that accept a binary format get their errors in it, too;
+ * everyone else gets JSON.
+ */
+enum ErrorFormat {
+
+    JSON(MediaType.APPLICATION_JSON, new ObjectMapper()),
+    SMILE(MediaType.parseMediaType("application/x-jackson-smile"), new ObjectMapper(new SmileFactory())),
+    PROTOBUF(CustomerProtobuf.MEDIA_TYPE, null);
+
+    private final MediaType mediaType;
+    private final ObjectMapper objectMapper;
+
+    ErrorFormat(MediaType mediaType, ObjectMapper objectMapper) {
+        this.mediaType = mediaType;
+        this.objectMapper = objectMapper;
+    }
+
+    MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * The format of the most preferred accepted media type that is a binary format, or JSON.
+     */
+    static ErrorFormat negotiate(List<MediaType> accept) {
+        if (accept.isEmpty()) {
+            return JSON;
+        }
+        List<MediaType> preferred = new ArrayList<>(accept);
+        MediaType.sortBySpecificityAndQuality(preferred);
+        for (MediaType mediaType : preferred) {
+            if (mediaType.isWildcardType() || mediaType.isWildcardSubtype()) {
+                return JSON;
+            }
+            for (ErrorFormat format : values()) {
+                if (format.mediaType.isCompatibleWith(mediaType)) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    byte[] render(int status, String error, String message) {
+        if (this == PROTOBUF) {
+            return CustomerProtobuf.error(status, error, message);
+        }
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("status", status);
+        attributes.put("error", error);
+        attributes.put("message", message);
+        try {
+            return objectMapper.writeValueAsBytes(attributes);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -6,26 +6,34 @@ import org.springframework.boot.web.error.ErrorAttributeOptions;
 import org.springframework.boot.web.reactive.error.ErrorAttributes;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
 import org.springframework.http.codec.ServerCodecConfigurer;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserter;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @Order(-2)
 @Component
 public class ExceptionHandler extends AbstractErrorWebExceptionHandler {
 
+    private final ErrorAttributes errorAttributes;
+    private final Map<String, ErrorBody> errorBodies = new ConcurrentHashMap<>();
 
     @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
     public ExceptionHandler(ErrorAttributes errorAttributes, WebProperties webproperties,
                             ApplicationContext applicationContext, ServerCodecConfigurer configurer) {
         super(errorAttributes, webproperties.getResources(), applicationContext);
+        this.errorAttributes = errorAttributes;
         this.setMessageWriters(configurer.getWriters());
     }
 
@@ -36,15 +44,116 @@ public class ExceptionHandler extends AbstractErrorWebExceptionHandler {
     }
 
     private Mono<ServerResponse> renderErrorResponse(ServerRequest request) {
+        Throwable error = errorAttributes.getError(request);
+        ErrorFormat format = ErrorFormat.negotiate(request.headers().accept());
+        if (error instanceof StacklessResponseStatusException) {
+            return renderCachedErrorResponse((StacklessResponseStatusException) error, format);
+        }
 
         Map<String, Object> errorPropertiesMap = getErrorAttributes(request,
                 ErrorAttributeOptions.of(ErrorAttributeOptions.Include.MESSAGE));
 
+        ResponseStatusException wrappedStatus = findWrappedStatus(error);
+        if (wrappedStatus != null) {
+            errorPropertiesMap.put("status", wrappedStatus.getRawStatusCode());
+            errorPropertiesMap.put("error", wrappedStatus.getStatus().getReasonPhrase());
+            errorPropertiesMap.put("message", wrappedStatus.getReason());
+        }
+
         int httpStatus = (int) Optional.ofNullable(errorPropertiesMap.get("status"))
                 .orElse(HttpStatus.INTERNAL_SERVER_ERROR.value());
 
-        return ServerResponse.status(httpStatus)
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(errorPropertiesMap));
+        ServerResponse.BodyBuilder response = ServerResponse.status(httpStatus)
+                .contentType(format.getMediaType());
+
+        Throwable status = wrappedStatus != null ? wrappedStatus : error;
+        if (status instanceof ServiceUnavailableException) {
+            response.header(HttpHeaders.RETRY_AFTER, retryAfter((ServiceUnavailableException) status));
+        }
+
+        if (format == ErrorFormat.PROTOBUF) {
+            // The protobuf Error message only has room for the status, error and message attributes.
+            byte[] protobuf = format.render(httpStatus, String.valueOf(errorPropertiesMap.get("error")),
+                    (String) errorPropertiesMap.get("message"));
+            return response.body(write(protobuf));
+        }
+        return response.body(BodyInserters.fromValue(errorPropertiesMap));
+    }
+
+    /**
+     * Expected errors carry a fixed status and reason, so their body is rendered once per format and the same bytes
+     * are wrapped for every later response. The body keeps the {@code status}, {@code error} and {@code message}
+     * attributes.
+     */
+    private Mono<ServerResponse> renderCachedErrorResponse(StacklessResponseStatusException error,
+                                                           ErrorFormat format) {
+        int httpStatus = error.getRawStatusCode();
+        ErrorBody body = errorBodies.get(error.getReason());
+        if (body == null) {
+            body = ErrorBody.of(error);
+            errorBodies.putIfAbsent(error.getReason(), body);
+        }
+        if (body.status != httpStatus) {
+            body = ErrorBody.of(error);
+        }
+
+        ServerResponse.BodyBuilder response = ServerResponse.status(httpStatus)
+                .contentType(format.getMediaType());
+        if (error instanceof ServiceUnavailableException) {
+            response.header(HttpHeaders.RETRY_AFTER, retryAfter((ServiceUnavailableException) error));
+        }
+
+        return response.body(write(body.render(format)));
+    }
+
+    private static BodyInserter<byte[], ReactiveHttpOutputMessage> write(byte[] bytes) {
+        return (message, context) -> message.writeWith(Mono.fromSupplier(() -> message.bufferFactory().wrap(bytes)));
+    }
+
+    private static String retryAfter(ServiceUnavailableException error) {
+        return String.valueOf(error.getRetryAfter().toSeconds());
+    }
+
+    private static final class ErrorBody {
+
+        private final int status;
+        private final String error;
+        private final String message;
+        private final AtomicReferenceArray<byte[]> rendered = new AtomicReferenceArray<>(ErrorFormat.values().length);
+
+        private ErrorBody(int status, String error, String message) {
+            this.status = status;
+            this.error = error;
+            this.message = message;
+        }
+
+        static ErrorBody of(ResponseStatusException error) {
+            return new ErrorBody(error.getRawStatusCode(), error.getStatus().getReasonPhrase(), error.getReason());
+        }
+
+        byte[] render(ErrorFormat format) {
+            byte[] bytes = rendered.get(format.ordinal());
+            if (bytes == null) {
+                bytes = format.render(status, error, message);
+                rendered.set(format.ordinal(), bytes);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Spring wraps failures raised while obtaining a connection (e.g. an exhausted pool) in a data access
+     * exception, so the status carried by the original cause would otherwise be reported as a 500.
+     */
+    private static ResponseStatusException findWrappedStatus(Throwable error) {
+        if (error instanceof ResponseStatusException) {
+            return null;
+        }
+        for (Throwable cause = error.getCause(); cause != null && cause != error; cause = cause.getCause()) {
+            if (cause instanceof ResponseStatusException) {
+                return (ResponseStatusException) cause;
+            }
+        }
+        return null;
     }
 }
@@ -0,0 +1,10 @@
+package com.gabrielkuhn.webfluxplayground.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class InvalidCursorException extends StacklessResponseStatusException {
+
+    public InvalidCursorException() {
+        super(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+}
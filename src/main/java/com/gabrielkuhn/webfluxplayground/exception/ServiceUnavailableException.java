@@ -0,0 +1,22 @@
+package com.gabrielkuhn.webfluxplayground.exception;
+
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+/**
+ * Signals a temporary overload; {@link ExceptionHandler} renders it as 503 with a {@code Retry-After} header.
+ */
+public class ServiceUnavailableException extends StacklessResponseStatusException {
+
+    private final Duration retryAfter;
+
+    public ServiceUnavailableException(String reason, Duration retryAfter) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
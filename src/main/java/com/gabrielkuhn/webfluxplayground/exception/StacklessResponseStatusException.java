@@ -0,0 +1,21 @@
+package com.gabrielkuhn.webfluxplayground.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * An expected, client-facing failure with a fixed status and reason. These are raised on hot paths (lookups of
+ * missing customers, shed load) and never indicate a bug, so no stack trace is captured, and
+ * {@link ExceptionHandler} answers them with a cached body.
+ */
+public abstract class StacklessResponseStatusException extends ResponseStatusException {
+
+    protected StacklessResponseStatusException(HttpStatus status, String reason) {
+        super(status, reason);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,13 @@
+package com.gabrielkuhn.webfluxplayground.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * A multi-get asked for more customers than {@code customers.lookup.max-ids} allows in one request.
+ */
+public class TooManyIdsException extends StacklessResponseStatusException {
+
+    public TooManyIdsException(int maxIds) {
+        super(HttpStatus.BAD_REQUEST, "At most " + maxIds + " ids can be requested at once");
+    }
+}
@@ -0,0 +1,95 @@
+package com.gabrielkuhn.webfluxplayground.jdbc;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking JDBC backend, enabled with the {@code jdbc} profile in place of the R2DBC repositories.
+ * <p>
+ * Calls run on virtual threads when the JDK provides them, so a call blocked on the database costs no platform
+ * thread. On older JDKs they fall back to a bounded pool of platform threads.
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@Profile("jdbc")
+public class JdbcBackendConfiguration {
+
+    /**
+     * A fixed-size pool: connections are opened once, and callers wait at most {@code connection-timeout} for one.
+     * The pool starts on first use, after Boot has bound its metrics.
+     */
+    @Bean(destroyMethod = "close")
+    public HikariDataSource customerDataSource(CustomerProperties customerProperties) {
+        CustomerProperties.Jdbc properties = customerProperties.getJdbc();
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("customers");
+        dataSource.setJdbcUrl(properties.getUrl());
+        dataSource.setUsername(properties.getUsername());
+        dataSource.setPassword(properties.getPassword());
+        dataSource.setMaximumPoolSize(properties.getMaximumPoolSize());
+        dataSource.setMinimumIdle(properties.getMaximumPoolSize());
+        dataSource.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+        return dataSource;
+    }
+
+    /**
+     * Times the JDBC repository like Spring Data times the R2DBC one, so both report
+     * {@code spring.data.repository.invocations}. The listeners are looked up per call, as post-processors are created
+     * before the meter registry.
+     */
+    @Bean
+    static BeanPostProcessor jdbcRepositoryMetrics(ObjectProvider<RepositoryMethodInvocationListener> listeners) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof JdbcCustomerRepository)) {
+                    return bean;
+                }
+                ProxyFactory proxyFactory = new ProxyFactory(bean);
+                proxyFactory.addInterface(CustomerRepository.class);
+                proxyFactory.addAdvice(new RepositoryInvocationTimer(CustomerRepository.class, listeners));
+                return proxyFactory.getProxy();
+            }
+        };
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler(CustomerProperties customerProperties) {
+        return Schedulers.fromExecutorService(newExecutor(customerProperties.getJdbc()), "jdbc");
+    }
+
+    static ExecutorService newExecutor(CustomerProperties.Jdbc properties) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.info("Running JDBC calls on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException | UnsupportedOperationException ex) {
+            log.info("Virtual threads are not available, running JDBC calls on {} platform threads",
+                    properties.getPlatformThreads());
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("jdbc-");
+            threadFactory.setDaemon(true);
+            return new ThreadPoolExecutor(properties.getPlatformThreads(), properties.getPlatformThreads(),
+                    0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()), threadFactory);
+        }
+    }
+}
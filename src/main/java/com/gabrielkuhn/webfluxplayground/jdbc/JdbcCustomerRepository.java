@@ -0,0 +1,517 @@
+package com.gabrielkuhn.webfluxplayground.jdbc;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.deadline.RequestDeadline;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerTableStats;
+import com.gabrielkuhn.webfluxplayground.exception.DeadlineExceededException;
+import com.gabrielkuhn.webfluxplayground.exception.ServiceUnavailableException;
+import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@link CustomerRepository} on plain JDBC. Every call borrows a connection on the JDBC scheduler and the result is
+ * handed back as a {@code Mono} or {@code Flux}, so {@code CustomerService} runs unchanged on either backend.
+ * <p>
+ * Query results are streamed as the subscriber asks for them, {@code customers.jdbc.fetch-size} rows per round trip,
+ * so a connection is held until the last row is read or the subscriber cancels.
+ */
+@Slf4j
+@Repository
+@Profile("jdbc")
+public class JdbcCustomerRepository implements CustomerRepository {
+
+    private static final String SELECT = "SELECT id, name, version FROM customer";
+    private static final String INSERT = "INSERT INTO customer (name, version) VALUES (?, 0)";
+    private static final String INSERT_WITH_ID = "INSERT INTO customer (id, name, version) VALUES (?, ?, 0)";
+    private static final String UPDATE_NAME = "UPDATE customer SET name = ?, version = version + 1 WHERE id = ?";
+    private static final String UPDATE_NAMES = "UPDATE customer SET name = ?, version = version + ? WHERE id = ?";
+    private static final String FIND_ID_BLOCK_SIZE = "SELECT increment_by FROM pg_sequences "
+            + "WHERE schemaname = current_schema() AND sequencename = 'customer_id_seq'";
+    private static final String RESERVE_ID_BLOCK = "SELECT nextval('customer_id_seq')";
+
+    private static final Duration RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final DataSource dataSource;
+    private final Scheduler jdbcScheduler;
+    private final int fetchSize;
+
+    public JdbcCustomerRepository(DataSource dataSource, Scheduler jdbcScheduler,
+                                  CustomerProperties customerProperties) {
+        this.dataSource = dataSource;
+        this.jdbcScheduler = jdbcScheduler;
+        this.fetchSize = customerProperties.getJdbc().getFetchSize();
+    }
+
+    @Override
+    public Flux<Customer> findPageAfter(int lastId, int limit) {
+        return query(SELECT + " WHERE id > ? ORDER BY id LIMIT ?", statement -> {
+            statement.setInt(1, lastId);
+            statement.setInt(2, limit);
+        });
+    }
+
+    @Override
+    public Mono<CustomerTableStats> findTableStats() {
+        return execute(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(TABLE_STATS);
+                 ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return new CustomerTableStats(resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3));
+            }
+        });
+    }
+
+    @Override
+    public Mono<Integer> updateName(int id, String name) {
+        return update(UPDATE_NAME, statement -> {
+            statement.setString(1, name);
+            statement.setInt(2, id);
+        });
+    }
+
+    @Override
+    public Mono<Integer> updateNameIfVersion(int id, String name, int version) {
+        return update(UPDATE_NAME + " AND version = ?", statement -> {
+            statement.setString(1, name);
+            statement.setInt(2, id);
+            statement.setInt(3, version);
+        });
+    }
+
+    @Override
+    public Mono<Integer> removeById(int id) {
+        return update("DELETE FROM customer WHERE id = ?", statement -> statement.setInt(1, id));
+    }
+
+    @Override
+    public Mono<Integer> removeByIdIfVersion(int id, int version) {
+        return update("DELETE FROM customer WHERE id = ? AND version = ?", statement -> {
+            statement.setInt(1, id);
+            statement.setInt(2, version);
+        });
+    }
+
+    @Override
+    public Flux<Integer> insertAll(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return Flux.empty();
+        }
+        return execute(connection -> {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+                for (Customer customer : customers) {
+                    statement.setString(1, customer.getName());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                List<Integer> ids = new ArrayList<>(customers.size());
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getInt(1));
+                    }
+                }
+                connection.commit();
+                return ids;
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }).flatMapIterable(Function.identity());
+    }
+
+    @Override
+    public Mono<Integer> insertAllWithIds(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return Mono.just(0);
+        }
+        return execute(connection -> {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_WITH_ID)) {
+                for (Customer customer : customers) {
+                    statement.setInt(1, customer.getId());
+                    statement.setString(2, customer.getName());
+                    statement.addBatch();
+                }
+                int inserted = 0;
+                for (int rows : statement.executeBatch()) {
+                    inserted += rows == Statement.SUCCESS_NO_INFO ? 1 : rows;
+                }
+                connection.commit();
+                return inserted;
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        });
+    }
+
+    @Override
+    public Mono<Integer> findIdBlockSize() {
+        return count(FIND_ID_BLOCK_SIZE, statement -> {
+        }).map(Long::intValue);
+    }
+
+    @Override
+    public Mono<Integer> reserveIdBlock() {
+        return count(RESERVE_ID_BLOCK, statement -> {
+        }).map(Long::intValue);
+    }
+
+    @Override
+    public Flux<Integer> updateNames(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return Flux.empty();
+        }
+        return execute(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_NAMES)) {
+                for (Customer customer : customers) {
+                    statement.setString(1, customer.getName());
+                    statement.setInt(2, customer.getVersion());
+                    statement.setInt(3, customer.getId());
+                    statement.addBatch();
+                }
+                int[] rows = statement.executeBatch();
+                List<Integer> updated = new ArrayList<>(rows.length);
+                for (int row : rows) {
+                    updated.add(row == Statement.SUCCESS_NO_INFO ? 1 : row);
+                }
+                return updated;
+            }
+        }).flatMapIterable(Function.identity());
+    }
+
+    /**
+     * Like Spring Data with {@code @Version}: a customer without a version is inserted, otherwise the update only
+     * applies to that version.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends Customer> Mono<S> save(S entity) {
+        if (entity.getVersion() == null) {
+            return execute(connection -> insert(connection, entity))
+                    .map(id -> (S) entity.withId(id).withVersion(0));
+        }
+        return update(UPDATE_NAME + " AND version = ?", statement -> {
+            statement.setString(1, entity.getName());
+            statement.setInt(2, entity.getId());
+            statement.setInt(3, entity.getVersion());
+        }).handle((rows, sink) -> {
+            if (rows == 0) {
+                sink.error(new OptimisticLockingFailureException(
+                        "Customer " + entity.getId() + " with version " + entity.getVersion() + " was not updated"));
+            } else {
+                sink.next((S) entity.withVersion(entity.getVersion() + 1));
+            }
+        });
+    }
+
+    private static int insert(Connection connection, Customer customer) throws SQLException {
+        boolean withId = customer.getId() != null;
+        try (PreparedStatement statement = connection.prepareStatement(withId ? INSERT_WITH_ID : INSERT,
+                Statement.RETURN_GENERATED_KEYS)) {
+            if (withId) {
+                statement.setInt(1, customer.getId());
+                statement.setString(2, customer.getName());
+            } else {
+                statement.setString(1, customer.getName());
+            }
+            statement.executeUpdate();
+            if (withId) {
+                return customer.getId();
+            }
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    @Override
+    public <S extends Customer> Flux<S> saveAll(Iterable<S> entities) {
+        return Flux.fromIterable(entities).concatMap(this::save);
+    }
+
+    @Override
+    public <S extends Customer> Flux<S> saveAll(Publisher<S> entityStream) {
+        return Flux.from(entityStream).concatMap(this::save);
+    }
+
+    @Override
+    public Mono<Customer> findById(Integer id) {
+        return query(SELECT + " WHERE id = ?", statement -> statement.setInt(1, id)).next();
+    }
+
+    @Override
+    public Mono<Customer> findById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Integer id) {
+        return count("SELECT COUNT(*) FROM customer WHERE id = ?", statement -> statement.setInt(1, id))
+                .map(count -> count > 0);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    @Override
+    public Flux<Customer> findAll() {
+        return query(SELECT + " ORDER BY id", true, statement -> {
+        });
+    }
+
+    @Override
+    public Flux<Customer> findAllById(Iterable<Integer> ids) {
+        List<Integer> idList = toList(ids);
+        if (idList.isEmpty()) {
+            return Flux.empty();
+        }
+        return query(SELECT + " WHERE id IN (" + placeholders(idList.size()) + ")",
+                statement -> bindAll(statement, idList));
+    }
+
+    @Override
+    public Flux<Customer> findAllById(Publisher<Integer> idStream) {
+        return Flux.from(idStream).collectList().flatMapMany(this::findAllById);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return count("SELECT COUNT(*) FROM customer", statement -> {
+        });
+    }
+
+    @Override
+    public Mono<Void> deleteById(Integer id) {
+        return removeById(id).then();
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(Customer entity) {
+        return deleteById(entity.getId());
+    }
+
+    @Override
+    public Mono<Void> deleteAllById(Iterable<? extends Integer> ids) {
+        List<Integer> idList = toList(ids);
+        if (idList.isEmpty()) {
+            return Mono.empty();
+        }
+        return update("DELETE FROM customer WHERE id IN (" + placeholders(idList.size()) + ")",
+                statement -> bindAll(statement, idList)).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends Customer> entities) {
+        return deleteAllById(StreamSupport.stream(entities.spliterator(), false)
+                .map(Customer::getId)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends Customer> entityStream) {
+        return Flux.from(entityStream).collectList().flatMap(this::deleteAll);
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return update("DELETE FROM customer", statement -> {
+        }).then();
+    }
+
+    private Flux<Customer> query(String sql, Binder binder) {
+        return query(sql, false, binder);
+    }
+
+    /**
+     * Reads one row per request, on the JDBC scheduler. Postgres only fetches rows in batches from a cursor, inside a
+     * transaction, so unbounded queries ask for one; lookups of a few rows skip the extra round trips. A deadline
+     * that passes while rows are read fails the stream.
+     */
+    private Flux<Customer> query(String sql, boolean cursor, Binder binder) {
+        return Flux.deferContextual(context -> {
+                    RequestDeadline deadline = RequestDeadline.get(context);
+                    return Flux.<Customer, Rows>generate(() -> open(sql, cursor, binder, deadline), (rows, sink) -> {
+                        try {
+                            if (deadline != null && deadline.isExpired()) {
+                                sink.error(new DeadlineExceededException());
+                            } else if (rows.resultSet.next()) {
+                                ResultSet resultSet = rows.resultSet;
+                                sink.next(new Customer(resultSet.getInt(1), resultSet.getString(2),
+                                        resultSet.getInt(3)));
+                            } else {
+                                sink.complete();
+                            }
+                        } catch (SQLException e) {
+                            sink.error(e);
+                        }
+                        return rows;
+                    }, this::release);
+                })
+                .subscribeOn(jdbcScheduler)
+                .onErrorMap(JdbcCustomerRepository::isPoolExhausted, JdbcCustomerRepository::poolExhausted);
+    }
+
+    private Rows open(String sql, boolean cursor, Binder binder, RequestDeadline deadline) throws SQLException {
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException();
+        }
+        Connection connection = dataSource.getConnection();
+        try {
+            if (cursor) {
+                connection.setAutoCommit(false);
+                connection.setReadOnly(true);
+            }
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(fetchSize);
+            binder.bind(statement);
+            return new Rows(connection, statement.executeQuery());
+        } catch (SQLException | RuntimeException e) {
+            close(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * A cancellation arrives on the subscriber's thread, which must not block on closing the connection.
+     */
+    private void release(Rows rows) {
+        try {
+            jdbcScheduler.schedule(() -> close(rows.connection));
+        } catch (RejectedExecutionException e) {
+            close(rows.connection);
+        }
+    }
+
+    /**
+     * Closing the connection closes its statement and result set. A cursor's read-only transaction is ended with a
+     * rollback, which is all it needs.
+     */
+    private static void close(Connection connection) {
+        try (connection) {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            log.debug("Could not release a JDBC connection cleanly", e);
+        }
+    }
+
+    private Mono<Integer> update(String sql, Binder binder) {
+        return execute(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                binder.bind(statement);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    private Mono<Long> count(String sql, Binder binder) {
+        return execute(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                binder.bind(statement);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getLong(1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs {@code callback} on the JDBC scheduler with a pooled connection. Waiting too long for a connection, or for
+     * a thread on JDKs without virtual threads, is reported as 503 just like an exhausted R2DBC pool. Requests whose
+     * deadline has passed by the time the callback gets a thread don't run it.
+     */
+    private <T> Mono<T> execute(ConnectionCallback<T> callback) {
+        return Mono.deferContextual(context -> {
+                    RequestDeadline deadline = RequestDeadline.get(context);
+                    return Mono.fromCallable(() -> {
+                        if (deadline != null && deadline.isExpired()) {
+                            throw new DeadlineExceededException();
+                        }
+                        try (Connection connection = dataSource.getConnection()) {
+                            return callback.doInConnection(connection);
+                        }
+                    });
+                })
+                .subscribeOn(jdbcScheduler)
+                .onErrorMap(JdbcCustomerRepository::isPoolExhausted, JdbcCustomerRepository::poolExhausted);
+    }
+
+    private static boolean isPoolExhausted(Throwable error) {
+        return error instanceof SQLTransientConnectionException || error instanceof RejectedExecutionException;
+    }
+
+    private static Throwable poolExhausted(Throwable error) {
+        return new ServiceUnavailableException("Database connection pool exhausted", RETRY_AFTER);
+    }
+
+    private static String placeholders(int count) {
+        return "?" + ", ?".repeat(count - 1);
+    }
+
+    private static void bindAll(PreparedStatement statement, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            statement.setInt(i + 1, ids.get(i));
+        }
+    }
+
+    private static List<Integer> toList(Iterable<? extends Integer> ids) {
+        List<Integer> list = new ArrayList<>();
+        ids.forEach(list::add);
+        return list;
+    }
+
+    private static final class Rows {
+
+        private final Connection connection;
+        private final ResultSet resultSet;
+
+        private Rows(Connection connection, ResultSet resultSet) {
+            this.connection = connection;
+            this.resultSet = resultSet;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionCallback<T> {
+        T doInConnection(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+}
@@ -0,0 +1,99 @@
+package com.gabrielkuhn.webfluxplayground.jdbc;
+
+import lombok.RequiredArgsConstructor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener.RepositoryMethodInvocation;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener.RepositoryMethodInvocationResult;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener.RepositoryMethodInvocationResult.State;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reports calls to a hand-written repository to the listeners Spring Data notifies for its own repositories, so the
+ * JDBC backend shows up in {@code spring.data.repository.invocations} with the same tags as the R2DBC one. A
+ * {@code Mono} or {@code Flux} is timed from subscription until it terminates or is cancelled.
+ */
+@RequiredArgsConstructor
+class RepositoryInvocationTimer implements MethodInterceptor {
+
+    private final Class<?> repositoryInterface;
+    private final ObjectProvider<RepositoryMethodInvocationListener> listeners;
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable ex) {
+            record(method, State.ERROR, ex, start);
+            throw ex;
+        }
+        if (result instanceof Mono) {
+            return Mono.defer(() -> timed(method, (Mono<?>) result));
+        }
+        if (result instanceof Flux) {
+            return Flux.defer(() -> timed(method, (Flux<?>) result));
+        }
+        record(method, State.SUCCESS, null, start);
+        return result;
+    }
+
+    private <T> Mono<T> timed(Method method, Mono<T> result) {
+        long start = System.nanoTime();
+        Throwable[] error = new Throwable[1];
+        return result.doOnError(ex -> error[0] = ex)
+                .doFinally(signal -> record(method, state(signal), error[0], start));
+    }
+
+    private <T> Flux<T> timed(Method method, Flux<T> result) {
+        long start = System.nanoTime();
+        Throwable[] error = new Throwable[1];
+        return result.doOnError(ex -> error[0] = ex)
+                .doFinally(signal -> record(method, state(signal), error[0], start));
+    }
+
+    private static State state(SignalType signal) {
+        switch (signal) {
+            case ON_ERROR:
+                return State.ERROR;
+            case CANCEL:
+                return State.CANCELED;
+            default:
+                return State.SUCCESS;
+        }
+    }
+
+    private void record(Method method, State state, Throwable error, long start) {
+        RepositoryMethodInvocation invocation = new RepositoryMethodInvocation(repositoryInterface, method,
+                new Result(state, error), System.nanoTime() - start);
+        listeners.orderedStream().forEach(listener -> listener.afterInvocation(invocation));
+    }
+
+    @RequiredArgsConstructor
+    private static final class Result implements RepositoryMethodInvocationResult {
+
+        private final State state;
+        private final Throwable error;
+
+        @Override
+        public State getState() {
+            return state;
+        }
+
+        @Override
+        public Throwable getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.gabrielkuhn.webfluxplayground.limiter;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrency limit that follows the latency of the requests it admits.
+ * <p>
+ * Each sample compares a long-term average latency with the latency just observed: while they agree the limit grows
+ * by roughly its square root, and as latency rises above the average the limit shrinks in proportion. A request that
+ * failed because of overload cuts the limit multiplicatively, as in AIMD.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final int LONG_WINDOW = 600;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int limit;
+
+    private double estimatedLimit;
+    private double longRttNanos;
+
+    public AdaptiveConcurrencyLimit(CustomerProperties.Limiter.Limit properties, double smoothing) {
+        this.minLimit = properties.getMinLimit();
+        this.maxLimit = properties.getMaxLimit();
+        this.smoothing = smoothing;
+        this.estimatedLimit = properties.getInitialLimit();
+        this.limit = properties.getInitialLimit();
+    }
+
+    /**
+     * Takes a slot if fewer than {@link #getLimit()} requests are in flight; every successful call must be matched
+     * by {@link #release}.
+     */
+    public boolean tryAcquire() {
+        for (int current = inFlight.get(); current < limit; current = inFlight.get()) {
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Frees the slot and, unless {@code rttNanos} is negative (the client went away), feeds the latency sample into
+     * the limit.
+     */
+    public void release(long rttNanos, boolean overloaded) {
+        int inFlightAtRelease = inFlight.getAndDecrement();
+        if (overloaded) {
+            backOff();
+        } else if (rttNanos >= 0) {
+            sample(rttNanos, inFlightAtRelease);
+        }
+    }
+
+    private synchronized void backOff() {
+        estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF_RATIO);
+        limit = (int) estimatedLimit;
+    }
+
+    private synchronized void sample(long rttNanos, int inFlightAtRelease) {
+        double rtt = Math.max(1, rttNanos);
+        longRttNanos = longRttNanos == 0 ? rtt : longRttNanos + (rtt - longRttNanos) / LONG_WINDOW;
+        // Recovering from a latency spike: let the average catch up instead of holding the limit down.
+        if (longRttNanos / rtt > 2) {
+            longRttNanos *= 0.95;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, longRttNanos / rtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        // Only grow while the limit is actually being used, otherwise a quiet period would inflate it.
+        if (newLimit > estimatedLimit && inFlightAtRelease * 2 < estimatedLimit) {
+            return;
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit,
+                estimatedLimit * (1 - smoothing) + newLimit * smoothing));
+        limit = (int) estimatedLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
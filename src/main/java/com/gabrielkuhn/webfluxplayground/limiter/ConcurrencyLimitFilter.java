@@ -0,0 +1,151 @@
+package com.gabrielkuhn.webfluxplayground.limiter;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+
+/**
+ * Sheds load on {@code /customers} before it reaches the database: requests beyond the adaptive concurrency limit
+ * are rejected straight away with 503 and {@code Retry-After}, rendered by the application's exception handler.
+ * <p>
+ * Reads and writes are limited separately, so a burst of slow writes cannot starve reads. Whether a request is
+ * long-lived is decided by the handler it is mapped to (see {@link LongLived}), never by the headers alone: long-lived
+ * requests are not sampled, and only those that keep no database work in flight skip the limit. The slot is taken by
+ * {@link ConcurrencyLimitHandlerAdapter} once the dispatcher has matched the handler, so the mapping is only looked
+ * up once; requests that match no handler take none.
+ */
+@Component
+public class ConcurrencyLimitFilter implements WebFilter, MeterBinder {
+
+    private static final String PATH = "/customers";
+    private static final String PERMIT_ATTRIBUTE = ConcurrencyLimitFilter.class.getName() + ".permit";
+
+    private final boolean enabled;
+    private final Duration retryAfter;
+    private final AdaptiveConcurrencyLimit readLimit;
+    private final AdaptiveConcurrencyLimit writeLimit;
+
+    public ConcurrencyLimitFilter(CustomerProperties customerProperties) {
+        CustomerProperties.Limiter properties = customerProperties.getLimiter();
+        this.enabled = properties.isEnabled();
+        this.retryAfter = properties.getRetryAfter();
+        this.readLimit = new AdaptiveConcurrencyLimit(properties.getRead(), properties.getSmoothing());
+        this.writeLimit = new AdaptiveConcurrencyLimit(properties.getWrite(), properties.getSmoothing());
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled || !isCustomers(request.getPath().pathWithinApplication().value())) {
+            return chain.filter(exchange);
+        }
+        Permit permit = new Permit(isRead(request) ? readLimit : writeLimit);
+        exchange.getAttributes().put(PERMIT_ATTRIBUTE, permit);
+        boolean[] overloaded = new boolean[1];
+        return chain.filter(exchange)
+                .doOnError(error -> overloaded[0] = isOverload(error))
+                .doFinally(signal -> permit.release(signal, overloaded[0]));
+    }
+
+    /**
+     * Takes a slot for the request, unless its handler is exempt; fails with 503 when the limit is reached.
+     */
+    Mono<Void> acquire(ServerWebExchange exchange, HandlerMethod handler) {
+        Permit permit = exchange.getAttribute(PERMIT_ATTRIBUTE);
+        if (permit == null) {
+            return Mono.empty();
+        }
+        LongLived longLived = handler.getMethodAnnotation(LongLived.class);
+        if (longLived != null && !longLived.limited()) {
+            return Mono.empty();
+        }
+        return permit.acquire(longLived == null)
+                ? Mono.empty()
+                : Mono.error(new ServiceUnavailableException("Too many concurrent requests", retryAfter));
+    }
+
+    private static boolean isCustomers(String path) {
+        return path.equals(PATH) || path.startsWith(PATH + "/");
+    }
+
+    private static boolean isRead(ServerHttpRequest request) {
+        return request.getMethod() == HttpMethod.GET || request.getMethod() == HttpMethod.HEAD;
+    }
+
+    /**
+     * Pool exhaustion reaches the filter wrapped by the data access layer, e.g. in a
+     * {@code DataAccessResourceFailureException}.
+     */
+    private static boolean isOverload(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof ServiceUnavailableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindTo(registry, "read", readLimit);
+        bindTo(registry, "write", writeLimit);
+    }
+
+    private static void bindTo(MeterRegistry registry, String kind, AdaptiveConcurrencyLimit limit) {
+        Gauge.builder("customers.limiter.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                .description("Current adaptive concurrency limit")
+                .tag("kind", kind)
+                .register(registry);
+        Gauge.builder("customers.limiter.inflight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                .description("Requests currently holding a concurrency slot")
+                .tag("kind", kind)
+                .register(registry);
+        FunctionCounter.builder("customers.limiter.rejected", limit, AdaptiveConcurrencyLimit::getRejected)
+                .description("Requests rejected because the concurrency limit was reached")
+                .tag("kind", kind)
+                .register(registry);
+    }
+
+    private static final class Permit {
+
+        private final AdaptiveConcurrencyLimit limit;
+
+        private volatile boolean acquired;
+        private boolean sampled;
+        private long start;
+
+        private Permit(AdaptiveConcurrencyLimit limit) {
+            this.limit = limit;
+        }
+
+        private boolean acquire(boolean sampled) {
+            if (!limit.tryAcquire()) {
+                return false;
+            }
+            this.sampled = sampled;
+            this.start = System.nanoTime();
+            this.acquired = true;
+            return true;
+        }
+
+        private void release(SignalType signal, boolean overloaded) {
+            if (acquired) {
+                limit.release(!sampled || signal == SignalType.CANCEL ? -1 : System.nanoTime() - start, overloaded);
+            }
+        }
+    }
+}
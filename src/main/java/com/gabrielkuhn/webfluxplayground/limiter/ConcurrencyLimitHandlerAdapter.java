@@ -0,0 +1,40 @@
+package com.gabrielkuhn.webfluxplayground.limiter;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerAdapter;
+import org.springframework.web.reactive.HandlerResult;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Takes the {@link ConcurrencyLimitFilter} slot of a request once the dispatcher has matched its handler, then hands
+ * the request to the {@link RequestMappingHandlerAdapter}. The handler the dispatcher found is the one the exemption
+ * is read from, so no request mapping is looked up twice.
+ */
+@Component
+@RequiredArgsConstructor
+public class ConcurrencyLimitHandlerAdapter implements HandlerAdapter, Ordered {
+
+    private final ConcurrencyLimitFilter concurrencyLimitFilter;
+    private final RequestMappingHandlerAdapter requestMappingHandlerAdapter;
+
+    @Override
+    public boolean supports(Object handler) {
+        return handler instanceof HandlerMethod;
+    }
+
+    @Override
+    public Mono<HandlerResult> handle(ServerWebExchange exchange, Object handler) {
+        return concurrencyLimitFilter.acquire(exchange, (HandlerMethod) handler)
+                .then(Mono.defer(() -> requestMappingHandlerAdapter.handle(exchange, handler)));
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
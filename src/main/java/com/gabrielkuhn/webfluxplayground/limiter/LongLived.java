@@ -0,0 +1,23 @@
+package com.gabrielkuhn.webfluxplayground.limiter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a handler whose response stays open for as long as the client keeps reading or writing. Its duration says
+ * nothing about load, so {@link ConcurrencyLimitFilter} does not feed it into the limit.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface LongLived {
+
+    /**
+     * Whether the request holds a concurrency slot while it runs. Only handlers that keep no database work in
+     * flight, like the change feeds, should go without one.
+     */
+    boolean limited() default true;
+}
@@ -0,0 +1,29 @@
+package com.gabrielkuhn.webfluxplayground.monitoring;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import reactor.blockhound.BlockingOperationError;
+
+@Data
+@AllArgsConstructor
+public class BlockingCall {
+
+    /**
+     * The blocking JDK method, e.g. {@code java.lang.Thread.sleep}.
+     */
+    private String method;
+    private String thread;
+    /**
+     * The route being handled, e.g. {@code GET /customers/{id}}; absent outside a tracked request or before a
+     * handler was matched.
+     */
+    private String route;
+    /**
+     * The raw request path; also present while no route has been matched yet.
+     */
+    private String path;
+    /**
+     * Carries the stack of the offending call.
+     */
+    private BlockingOperationError error;
+}
@@ -0,0 +1,109 @@
+package com.gabrielkuhn.webfluxplayground.monitoring;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import lombok.extern.slf4j.Slf4j;
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.BlockingMethod;
+import reactor.blockhound.BlockingOperationError;
+import reactor.core.Disposable;
+
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Reports blocking calls on non-blocking threads (Netty event loops, Reactor's parallel scheduler) with the offending
+ * stack and, while {@link RouteTracking} is on, the route being handled.
+ * <p>
+ * BlockHound instruments the JDK once per JVM and cannot be removed again, so the first {@link #install} wins and
+ * later calls only add their listeners.
+ */
+@Slf4j
+public final class BlockingCallDetector {
+
+    private static final AtomicBoolean INSTALLED = new AtomicBoolean();
+    private static final ThreadLocal<Boolean> REPORTING = new ThreadLocal<>();
+    private static final List<Consumer<BlockingCall>> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private static volatile CustomerProperties.Blocking.Action action;
+    private static volatile Set<String> allowedPackages;
+
+    private BlockingCallDetector() {
+    }
+
+    /**
+     * Returns false when the detector was already installed, keeping its action and allowed packages.
+     */
+    public static boolean install(CustomerProperties.Blocking.Action action, List<String> allowedPackages) {
+        if (!INSTALLED.compareAndSet(false, true)) {
+            return false;
+        }
+        BlockingCallDetector.action = action;
+        BlockingCallDetector.allowedPackages = Set.copyOf(allowedPackages);
+        try {
+            // Bundles, such as the validation messages, are read from the jar once and cached afterwards; the
+            // validator's bean metadata is likewise computed once per class under a briefly contended segment lock.
+            BlockHound.install(builder -> builder
+                    .allowBlockingCallsInside(ResourceBundle.class.getName(), "getBundle")
+                    .allowBlockingCallsInside(
+                            "org.hibernate.validator.internal.metadata.BeanMetaDataManagerImpl", "getBeanMetaData")
+                    .blockingMethodCallback(BlockingCallDetector::onBlockingCall));
+        } catch (RuntimeException ex) {
+            // Typically the missing -XX:+AllowRedefinitionToAddDeleteMethods; nothing was instrumented.
+            INSTALLED.set(false);
+            throw ex;
+        }
+        return true;
+    }
+
+    public static boolean isInstalled() {
+        return INSTALLED.get();
+    }
+
+    public static Disposable addListener(Consumer<BlockingCall> listener) {
+        LISTENERS.add(listener);
+        return () -> LISTENERS.remove(listener);
+    }
+
+    private static void onBlockingCall(BlockingMethod method) {
+        // Reporting logs, and logging may block in turn.
+        if (REPORTING.get() != null) {
+            return;
+        }
+        BlockingOperationError error = new BlockingOperationError(method);
+        if (isAllowed(error.getStackTrace())) {
+            return;
+        }
+
+        BlockingCall call = new BlockingCall(method.getClassName() + "." + method.getName(),
+                Thread.currentThread().getName(), RouteTracking.currentRoute(), RouteTracking.currentPath(), error);
+        REPORTING.set(Boolean.TRUE);
+        try {
+            log.warn("Blocking call {} on thread {} while handling {} ({})", call.getMethod(), call.getThread(),
+                    call.getRoute(), call.getPath(), error);
+            for (Consumer<BlockingCall> listener : LISTENERS) {
+                listener.accept(call);
+            }
+        } finally {
+            REPORTING.remove();
+        }
+
+        if (action == CustomerProperties.Blocking.Action.FAIL) {
+            throw error;
+        }
+    }
+
+    private static boolean isAllowed(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            for (String allowed : allowedPackages) {
+                if (frame.getClassName().startsWith(allowed)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
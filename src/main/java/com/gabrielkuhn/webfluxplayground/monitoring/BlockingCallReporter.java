@@ -0,0 +1,60 @@
+package com.gabrielkuhn.webfluxplayground.monitoring;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Turns on blocking-call detection for the application, enabled by {@code customers.blocking.enabled} (the canary
+ * profile does). Requests are tracked so every report names its route, and each report is counted in
+ * {@code reactor.blocking.calls}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "customers.blocking", name = "enabled", havingValue = "true")
+public class BlockingCallReporter implements WebFilter, DisposableBean {
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final Disposable listener;
+
+    public BlockingCallReporter(CustomerProperties customerProperties, ObjectProvider<MeterRegistry> meterRegistry) {
+        CustomerProperties.Blocking properties = customerProperties.getBlocking();
+        this.meterRegistry = meterRegistry;
+        BlockingCallDetector.install(properties.getAction(), properties.getAllowedPackages());
+        RouteTracking.install();
+        this.listener = BlockingCallDetector.addListener(this::count);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return chain.filter(exchange)
+                .contextWrite(context -> RouteTracking.withExchange(context, exchange));
+    }
+
+    private void count(BlockingCall call) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry == null) {
+            return;
+        }
+        Counter.builder("reactor.blocking.calls")
+                .tag("method", call.getMethod())
+                .tag("route", call.getRoute() != null ? call.getRoute() : "none")
+                .description("Blocking calls detected on non-blocking threads")
+                .register(registry)
+                .increment();
+    }
+
+    @Override
+    public void destroy() {
+        listener.dispose();
+        RouteTracking.uninstall();
+    }
+}
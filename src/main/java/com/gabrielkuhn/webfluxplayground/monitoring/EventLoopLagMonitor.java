@@ -0,0 +1,126 @@
+package com.gabrielkuhn.webfluxplayground.monitoring;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.client.reactive.ReactorResourceFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures event-loop lag: every server event loop runs a probe task scheduled {@code probe-interval} ahead, and
+ * how much later than that it actually runs is recorded in {@code netty.eventloop.lag}, tagged by loop. A loop that
+ * is busy with slow callbacks or blocked shows up here long before request latencies explain why.
+ * <p>
+ * Scheduled tasks on the NIO transport only fire with millisecond precision, so lag below a millisecond is noise.
+ * Lag is measured on the registry's clock, so tests can drive it with a {@code MockClock}.
+ */
+@Component
+public class EventLoopLagMonitor implements SmartLifecycle {
+
+    private final CustomerProperties.EventLoop properties;
+    private final ObjectProvider<ReactorResourceFactory> resourceFactory;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final List<Probe> probes = new ArrayList<>();
+
+    private volatile boolean running;
+
+    public EventLoopLagMonitor(CustomerProperties customerProperties,
+                               ObjectProvider<ReactorResourceFactory> resourceFactory,
+                               ObjectProvider<MeterRegistry> meterRegistry) {
+        this.properties = customerProperties.getEventLoop();
+        this.resourceFactory = resourceFactory;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void start() {
+        ReactorResourceFactory resources = resourceFactory.getIfAvailable();
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (!properties.isEnabled() || resources == null || registry == null) {
+            return;
+        }
+        running = true;
+        // The same group the server runs on: Reactor Netty caches its loops and prefers the native transport.
+        EventLoopGroup group = resources.getLoopResources().onServer(true);
+        long intervalNanos = properties.getProbeInterval().toNanos();
+        int index = 0;
+        for (EventExecutor executor : group) {
+            Probe probe = new Probe(executor, intervalNanos, registry.config().clock(), lagTimer(registry, index++));
+            probes.add(probe);
+            probe.schedule();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        probes.forEach(Probe::cancel);
+        probes.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private static Timer lagTimer(MeterRegistry registry, int loop) {
+        return Timer.builder("netty.eventloop.lag")
+                .tag("loop", String.valueOf(loop))
+                .description("How much later than scheduled a probe task ran on the event loop")
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+    }
+
+    private final class Probe implements Runnable {
+
+        private final EventExecutor executor;
+        private final long intervalNanos;
+        private final Clock clock;
+        private final Timer lag;
+
+        private long expectedAt;
+        private volatile ScheduledFuture<?> future;
+
+        private Probe(EventExecutor executor, long intervalNanos, Clock clock, Timer lag) {
+            this.executor = executor;
+            this.intervalNanos = intervalNanos;
+            this.clock = clock;
+            this.lag = lag;
+        }
+
+        /**
+         * Rescheduled from the previous run rather than at a fixed rate, so a stalled loop yields one long sample
+         * instead of a burst of catch-up runs.
+         */
+        private void schedule() {
+            expectedAt = clock.monotonicTime() + intervalNanos;
+            future = executor.schedule(this, intervalNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            lag.record(Math.max(clock.monotonicTime() - expectedAt, 0), TimeUnit.NANOSECONDS);
+            if (running && !executor.isShuttingDown()) {
+                schedule();
+            }
+        }
+
+        private void cancel() {
+            ScheduledFuture<?> current = future;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.gabrielkuhn.webfluxplayground.monitoring;
+
+import org.reactivestreams.Subscription;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.CoreSubscriber;
+import reactor.core.Scannable;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+/**
+ * Makes the exchange a reactive signal belongs to visible to the thread delivering it, so a blocking call can be
+ * attributed to a route. Every operator is wrapped while tracking is on, which is why it is only meant for tests and
+ * canaries.
+ */
+final class RouteTracking {
+
+    private static final String HOOK_KEY = RouteTracking.class.getName();
+    private static final String EXCHANGE = RouteTracking.class.getName() + ".EXCHANGE";
+    private static final ThreadLocal<ServerWebExchange> CURRENT = new ThreadLocal<>();
+
+    private RouteTracking() {
+    }
+
+    static void install() {
+        Hooks.onEachOperator(HOOK_KEY, Operators.<Object, Object>lift((scannable, subscriber) -> track(subscriber)));
+    }
+
+    static void uninstall() {
+        Hooks.resetOnEachOperator(HOOK_KEY);
+    }
+
+    static Context withExchange(Context context, ServerWebExchange exchange) {
+        return context.put(EXCHANGE, exchange);
+    }
+
+    /**
+     * The method and route template of the exchange the current thread is working for, e.g.
+     * {@code GET /customers/{id}}; absent outside a tracked request or before a handler was matched.
+     */
+    @Nullable
+    static String currentRoute() {
+        ServerWebExchange exchange = CURRENT.get();
+        Object pattern = exchange == null ? null
+                : exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern == null ? null : exchange.getRequest().getMethodValue() + " " + pattern;
+    }
+
+    @Nullable
+    static String currentPath() {
+        ServerWebExchange exchange = CURRENT.get();
+        return exchange == null ? null : exchange.getRequest().getPath().value();
+    }
+
+    private static <T> CoreSubscriber<T> track(CoreSubscriber<T> subscriber) {
+        ServerWebExchange exchange = subscriber.currentContext().getOrDefault(EXCHANGE, null);
+        return exchange == null ? subscriber : new TrackingSubscriber<>(subscriber, exchange);
+    }
+
+    private static final class TrackingSubscriber<T> implements CoreSubscriber<T>, Subscription, Scannable {
+
+        private final CoreSubscriber<T> actual;
+        private final ServerWebExchange exchange;
+
+        private Subscription subscription;
+
+        private TrackingSubscriber(CoreSubscriber<T> actual, ServerWebExchange exchange) {
+            this.actual = actual;
+            this.exchange = exchange;
+        }
+
+        @Override
+        public Context currentContext() {
+            return actual.currentContext();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            ServerWebExchange previous = enter();
+            try {
+                actual.onSubscribe(this);
+            } finally {
+                CURRENT.set(previous);
+            }
+        }
+
+        @Override
+        public void onNext(T value) {
+            ServerWebExchange previous = enter();
+            try {
+                actual.onNext(value);
+            } finally {
+                CURRENT.set(previous);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            ServerWebExchange previous = enter();
+            try {
+                actual.onError(error);
+            } finally {
+                CURRENT.set(previous);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            ServerWebExchange previous = enter();
+            try {
+                actual.onComplete();
+            } finally {
+                CURRENT.set(previous);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            ServerWebExchange previous = enter();
+            try {
+                subscription.request(n);
+            } finally {
+                CURRENT.set(previous);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            ServerWebExchange previous = enter();
+            try {
+                subscription.cancel();
+            } finally {
+                CURRENT.set(previous);
+            }
+        }
+
+        @Override
+        @Nullable
+        public Object scanUnsafe(Attr key) {
+            if (key == Attr.PARENT) {
+                return subscription;
+            }
+            if (key == Attr.ACTUAL) {
+                return actual;
+            }
+            if (key == Attr.RUN_STYLE) {
+                return Attr.RunStyle.SYNC;
+            }
+            return null;
+        }
+
+        private ServerWebExchange enter() {
+            ServerWebExchange previous = CURRENT.get();
+            CURRENT.set(exchange);
+            return previous;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.gabrielkuhn.webfluxplayground.repository;
+
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface CustomerBatchRepository {
+
+    /**
+     * Inserts all customers with a single batched statement and emits the generated ids in insertion order.
+     */
+    Flux<Integer> insertAll(List<Customer> customers);
+
+    /**
+     * Inserts customers that already carry their id with a single batched statement, without reading generated keys
+     * back, and emits the number of rows inserted.
+     */
+    Mono<Integer> insertAllWithIds(List<Customer> customers);
+
+    /**
+     * Emits the increment of the customer id sequence, which is how many ids one call to it reserves.
+     */
+    Mono<Integer> findIdBlockSize();
+
+    /**
+     * Advances the customer id sequence once and emits the first id of the block that call reserved.
+     */
+    Mono<Integer> reserveIdBlock();
+
+    /**
+     * Renames all customers with a single batched statement and emits the number of rows updated per customer. Each
+     * customer's version is how far its stored version moves on: one step for every rename the write stands for.
+     */
+    Flux<Integer> updateNames(List<Customer> customers);
+}
@@ -0,0 +1,99 @@
+package com.gabrielkuhn.webfluxplayground.repository;
+
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+class CustomerBatchRepositoryImpl implements CustomerBatchRepository {
+
+    private static final String INSERT = "INSERT INTO customer (name) VALUES ($1)";
+    private static final String INSERT_WITH_ID = "INSERT INTO customer (id, name) VALUES ($1, $2)";
+    private static final String FIND_ID_BLOCK_SIZE = "SELECT increment_by FROM pg_sequences "
+            + "WHERE schemaname = current_schema() AND sequencename = 'customer_id_seq'";
+    private static final String RESERVE_ID_BLOCK = "SELECT nextval('customer_id_seq')";
+    private static final String UPDATE_NAME = "UPDATE customer SET name = $1, version = version + $2 WHERE id = $3";
+
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Flux<Integer> insertAll(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return Flux.empty();
+        }
+
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(INSERT).returnGeneratedValues("id");
+            for (int i = 0; i < customers.size(); i++) {
+                if (i > 0) {
+                    statement.add();
+                }
+                statement.bind("$1", customers.get(i).getName());
+            }
+            return Flux.from(statement.execute())
+                    .concatMap(result -> result.map((row, metadata) -> row.get(0, Integer.class)));
+        });
+    }
+
+    @Override
+    public Mono<Integer> insertAllWithIds(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return Mono.just(0);
+        }
+
+        return databaseClient.inConnectionMany(connection -> {
+                    Statement statement = connection.createStatement(INSERT_WITH_ID);
+                    for (int i = 0; i < customers.size(); i++) {
+                        if (i > 0) {
+                            statement.add();
+                        }
+                        statement.bind("$1", customers.get(i).getId())
+                                .bind("$2", customers.get(i).getName());
+                    }
+                    return Flux.from(statement.execute())
+                            .concatMap(Result::getRowsUpdated);
+                })
+                .reduce(0, Integer::sum);
+    }
+
+    @Override
+    public Mono<Integer> findIdBlockSize() {
+        return databaseClient.sql(FIND_ID_BLOCK_SIZE)
+                .map((row, metadata) -> row.get(0, Long.class).intValue())
+                .one();
+    }
+
+    @Override
+    public Mono<Integer> reserveIdBlock() {
+        return databaseClient.sql(RESERVE_ID_BLOCK)
+                .map((row, metadata) -> row.get(0, Long.class).intValue())
+                .one();
+    }
+
+    @Override
+    public Flux<Integer> updateNames(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return Flux.empty();
+        }
+
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(UPDATE_NAME);
+            for (int i = 0; i < customers.size(); i++) {
+                if (i > 0) {
+                    statement.add();
+                }
+                statement.bind("$1", customers.get(i).getName())
+                        .bind("$2", customers.get(i).getVersion())
+                        .bind("$3", customers.get(i).getId());
+            }
+            return Flux.from(statement.execute())
+                    .concatMap(Result::getRowsUpdated);
+        });
+    }
+}
@@ -1,8 +1,40 @@
 package com.gabrielkuhn.webfluxplayground.repository;
 
 import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerTableStats;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-public interface CustomerRepository extends ReactiveCrudRepository<Customer, Integer> {
+public interface CustomerRepository extends ReactiveCrudRepository<Customer, Integer>, CustomerBatchRepository {
 
+    String TABLE_STATS = "SELECT COUNT(*) AS row_count, COALESCE(MAX(version), 0) AS max_version, "
+            + "COALESCE(SUM(CAST(id AS BIGINT) * 1000003 + version), 0) AS checksum FROM customer";
+
+    @Query("SELECT * FROM customer WHERE id > :lastId ORDER BY id LIMIT :limit")
+    Flux<Customer> findPageAfter(int lastId, int limit);
+
+    /**
+     * A single aggregate over the table, for tagging the full listing without reading it.
+     */
+    @Query(TABLE_STATS)
+    Mono<CustomerTableStats> findTableStats();
+
+    @Modifying
+    @Query("UPDATE customer SET name = :name, version = version + 1 WHERE id = :id")
+    Mono<Integer> updateName(int id, String name);
+
+    @Modifying
+    @Query("UPDATE customer SET name = :name, version = version + 1 WHERE id = :id AND version = :version")
+    Mono<Integer> updateNameIfVersion(int id, String name, int version);
+
+    @Modifying
+    @Query("DELETE FROM customer WHERE id = :id")
+    Mono<Integer> removeById(int id);
+
+    @Modifying
+    @Query("DELETE FROM customer WHERE id = :id AND version = :version")
+    Mono<Integer> removeByIdIfVersion(int id, int version);
 }
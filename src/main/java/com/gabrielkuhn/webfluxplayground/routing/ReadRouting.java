@@ -0,0 +1,40 @@
+package com.gabrielkuhn.webfluxplayground.routing;
+
+import org.springframework.transaction.reactive.TransactionContext;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Reactor context markers read by {@link ReplicaRoutingConnectionFactory}. A query only goes to a replica when it
+ * was marked as a replica read, the client is not pinned to the primary and no transaction is in progress.
+ * Without the replicas profile the markers have no effect.
+ */
+public final class ReadRouting {
+
+    private static final String REPLICA = ReadRouting.class.getName() + ".replica";
+    private static final String PRIMARY = ReadRouting.class.getName() + ".primary";
+
+    private ReadRouting() {
+    }
+
+    /**
+     * Marks reads that tolerate replication lag.
+     */
+    public static <T> Flux<T> fromReplica(Flux<T> reads) {
+        return reads.contextWrite(context -> context.put(REPLICA, true));
+    }
+
+    /**
+     * Sends every query of the request to the primary, regardless of replica reads marked further down.
+     */
+    public static Context pinToPrimary(Context context) {
+        return context.put(PRIMARY, true);
+    }
+
+    static boolean routesToReplica(ContextView context) {
+        return context.getOrDefault(REPLICA, false)
+                && !context.getOrDefault(PRIMARY, false)
+                && !context.hasKey(TransactionContext.class);
+    }
+}
@@ -0,0 +1,77 @@
+package com.gabrielkuhn.webfluxplayground.routing;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-your-writes across replication lag: after a client changed customers, its reads go to the primary for the
+ * configured stickiness window. Clients are told apart by {@code X-Client-Id}, or by their address without it.
+ */
+@Component
+@Profile("replicas")
+public class ReadYourWritesFilter implements WebFilter {
+
+    static final String CLIENT_ID = "X-Client-Id";
+
+    private static final String PATH = "/customers";
+    private static final int PRUNE_THRESHOLD = 10_000;
+
+    private final long stickinessNanos;
+    private final Map<String, Long> stickyUntil = new ConcurrentHashMap<>();
+
+    public ReadYourWritesFilter(CustomerProperties customerProperties) {
+        this.stickinessNanos = customerProperties.getReplicas().getStickiness().toNanos();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String client = client(request);
+        if (stickinessNanos <= 0 || client == null || !request.getPath().value().startsWith(PATH)) {
+            return chain.filter(exchange);
+        }
+
+        if (!isRead(request)) {
+            // Also sticks when the write failed or was cancelled; it may still have been committed.
+            return chain.filter(exchange)
+                    .doFinally(signal -> stick(client));
+        }
+        Long until = stickyUntil.get(client);
+        if (until != null && until - System.nanoTime() > 0) {
+            return chain.filter(exchange).contextWrite(ReadRouting::pinToPrimary);
+        }
+        return chain.filter(exchange);
+    }
+
+    private void stick(String client) {
+        long now = System.nanoTime();
+        if (stickyUntil.size() >= PRUNE_THRESHOLD) {
+            stickyUntil.values().removeIf(until -> until - now <= 0);
+        }
+        stickyUntil.put(client, now + stickinessNanos);
+    }
+
+    private static String client(ServerHttpRequest request) {
+        String clientId = request.getHeaders().getFirst(CLIENT_ID);
+        if (clientId != null) {
+            return clientId;
+        }
+        InetSocketAddress address = request.getRemoteAddress();
+        return address == null ? null : address.getHostString();
+    }
+
+    private static boolean isRead(ServerHttpRequest request) {
+        return request.getMethod() == HttpMethod.GET || request.getMethod() == HttpMethod.HEAD;
+    }
+}
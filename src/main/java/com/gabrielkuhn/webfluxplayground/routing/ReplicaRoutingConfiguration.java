@@ -0,0 +1,77 @@
+package com.gabrielkuhn.webfluxplayground.routing;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.config.InstrumentedConnectionFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Replaces the auto-configured connection pool with a primary pool from {@code spring.r2dbc} and one pool per URL
+ * in {@code customers.replicas.urls}, routed by {@link ReplicaRoutingConnectionFactory}.
+ */
+@Slf4j
+@Configuration
+@Profile("replicas")
+public class ReplicaRoutingConfiguration {
+
+    @Bean(destroyMethod = "dispose")
+    public InstrumentedConnectionFactory primaryConnectionFactory(R2dbcProperties r2dbcProperties,
+                                                                  ObjectProvider<MeterRegistry> meterRegistry) {
+        ConnectionPool pool = pool(r2dbcProperties.getUrl(), r2dbcProperties, "primary");
+        return new InstrumentedConnectionFactory(pool, meterRegistry::getObject, "primaryConnectionFactory");
+    }
+
+    @Bean
+    @Primary
+    public ReplicaRoutingConnectionFactory connectionFactory(InstrumentedConnectionFactory primaryConnectionFactory,
+                                                             R2dbcProperties r2dbcProperties,
+                                                             CustomerProperties customerProperties,
+                                                             ObjectProvider<MeterRegistry> meterRegistry) {
+        CustomerProperties.Replicas replicas = customerProperties.getReplicas();
+        List<String> urls = replicas.getUrls();
+        if (urls.isEmpty()) {
+            log.warn("The replicas profile is active but customers.replicas.urls is empty, all reads go to the primary");
+        }
+
+        List<ConnectionPool> pools = IntStream.range(0, urls.size())
+                .mapToObj(i -> pool(urls.get(i), r2dbcProperties, "replica-" + i))
+                .collect(Collectors.toList());
+        return new ReplicaRoutingConnectionFactory(primaryConnectionFactory, pools, replicas.getSelection(),
+                meterRegistry::getObject);
+    }
+
+    private static ConnectionPool pool(String url, R2dbcProperties r2dbcProperties, String name) {
+        R2dbcProperties.Pool pool = r2dbcProperties.getPool();
+        ConnectionPoolConfiguration.Builder builder = ConnectionPoolConfiguration.builder(
+                        ConnectionFactoryBuilder.withUrl(url)
+                                .username(r2dbcProperties.getUsername())
+                                .password(r2dbcProperties.getPassword())
+                                .build())
+                .name(name);
+
+        PropertyMapper map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        map.from(pool.getInitialSize()).to(builder::initialSize);
+        map.from(pool.getMaxSize()).to(builder::maxSize);
+        map.from(pool.getMaxIdleTime()).to(builder::maxIdleTime);
+        map.from(pool.getMaxLifeTime()).to(builder::maxLifeTime);
+        map.from(pool.getMaxAcquireTime()).to(builder::maxAcquireTime);
+        map.from(pool.getMaxCreateConnectionTime()).to(builder::maxCreateConnectionTime);
+        map.from(pool.getValidationQuery()).whenHasText().to(builder::validationQuery);
+        map.from(pool.getValidationDepth()).to(builder::validationDepth);
+        return new ConnectionPool(builder.build());
+    }
+}
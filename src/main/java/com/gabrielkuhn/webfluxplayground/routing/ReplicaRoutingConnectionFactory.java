@@ -0,0 +1,117 @@
+package com.gabrielkuhn.webfluxplayground.routing;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.config.InstrumentedConnectionFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.metrics.r2dbc.ConnectionPoolMetrics;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Sends reads marked with {@link ReadRouting#fromReplica} to one of the replicas and everything else, including
+ * any query inside a transaction, to the primary. The target is chosen each time a connection is requested.
+ */
+public class ReplicaRoutingConnectionFactory extends AbstractRoutingConnectionFactory implements MeterBinder,
+        DisposableBean {
+
+    private static final String PRIMARY = "primary";
+
+    private final List<ConnectionPool> replicas;
+    private final List<String> keys = new ArrayList<>();
+    private final CustomerProperties.Replicas.Selection selection;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final LongAdder primaryRoutes = new LongAdder();
+    private final List<LongAdder> replicaRoutes = new ArrayList<>();
+
+    public ReplicaRoutingConnectionFactory(ConnectionFactory primary, List<ConnectionPool> replicas,
+                                           CustomerProperties.Replicas.Selection selection,
+                                           Supplier<MeterRegistry> meterRegistry) {
+        this.replicas = List.copyOf(replicas);
+        this.selection = selection;
+
+        Map<String, ConnectionFactory> targets = new HashMap<>();
+        for (int i = 0; i < this.replicas.size(); i++) {
+            String key = "replica-" + i;
+            keys.add(key);
+            replicaRoutes.add(new LongAdder());
+            targets.put(key, new InstrumentedConnectionFactory(this.replicas.get(i), meterRegistry, key));
+        }
+        setTargetConnectionFactories(targets);
+        setDefaultTargetConnectionFactory(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.<Object>deferContextual(context -> {
+            if (replicas.isEmpty() || !ReadRouting.routesToReplica(context)) {
+                primaryRoutes.increment();
+                return Mono.empty();
+            }
+            int replica = select();
+            replicaRoutes.get(replica).increment();
+            return Mono.just(keys.get(replica));
+        });
+    }
+
+    private int select() {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        if (selection == CustomerProperties.Replicas.Selection.ROUND_ROBIN) {
+            return start;
+        }
+        // Scanning from the round-robin position spreads ties instead of always favouring the first replica.
+        int selected = start;
+        int fewest = Integer.MAX_VALUE;
+        for (int offset = 0; offset < replicas.size(); offset++) {
+            int replica = (start + offset) % replicas.size();
+            int pending = pending(replicas.get(replica));
+            if (pending < fewest) {
+                fewest = pending;
+                selected = replica;
+            }
+        }
+        return selected;
+    }
+
+    private static int pending(ConnectionPool pool) {
+        return pool.getMetrics()
+                .map(metrics -> metrics.acquiredSize() + metrics.pendingAcquireSize())
+                .orElse(0);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindRoutes(registry, PRIMARY, primaryRoutes);
+        for (int i = 0; i < replicas.size(); i++) {
+            bindRoutes(registry, keys.get(i), replicaRoutes.get(i));
+            new ConnectionPoolMetrics(replicas.get(i), keys.get(i), Tags.empty()).bindTo(registry);
+        }
+    }
+
+    private static void bindRoutes(MeterRegistry registry, String target, LongAdder routes) {
+        FunctionCounter.builder("r2dbc.routing.connections", routes, LongAdder::sum)
+                .description("Connections requested through the primary/replica router")
+                .tag("target", target)
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(ConnectionPool::dispose);
+    }
+}
@@ -0,0 +1,150 @@
+package com.gabrielkuhn.webfluxplayground.search;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory prefix index over customer names: a sorted map from the normalized name to the sorted ids carrying it.
+ * <p>
+ * Writers are serialized; readers walk the sorted map lock-free, and posting arrays are never mutated once
+ * published, so a query always sees a consistent set of ids per name.
+ */
+@Component
+public class CustomerNameIndex implements MeterBinder {
+
+    /**
+     * Approximate heap cost of a distinct name: skip list node and index share, String and byte[] headers and the
+     * posting array header. Key characters and postings are added per byte and per id.
+     */
+    static final int BYTES_PER_NAME = 24 + 8 + 24 + 16 + 16;
+    /**
+     * Approximate heap cost of the id to name entry used to find a customer's old name on update and delete.
+     */
+    static final int BYTES_PER_ID = 32 + 16 + 8 + Integer.BYTES;
+
+    private final ConcurrentSkipListMap<String, int[]> postings = new ConcurrentSkipListMap<>();
+    private final Map<Integer, String> namesById = new ConcurrentHashMap<>();
+
+    private volatile long nameChars;
+
+    public synchronized void put(int id, String name) {
+        String key = normalize(name);
+        String previous = namesById.put(id, key);
+        if (key.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            removePosting(previous, id);
+        }
+        addPosting(key, id);
+    }
+
+    /**
+     * Used while the index is built from the table, so a row read before a concurrent write never overrides it.
+     */
+    public synchronized void putIfAbsent(int id, String name) {
+        if (!namesById.containsKey(id)) {
+            put(id, name);
+        }
+    }
+
+    public synchronized void remove(int id) {
+        String previous = namesById.remove(id);
+        if (previous != null) {
+            removePosting(previous, id);
+        }
+    }
+
+    /**
+     * Lazily emits the ids of customers whose name starts with {@code prefix}, ordered by name and then id. Nothing
+     * past the downstream demand is read from the index.
+     */
+    public Flux<Integer> findIdsByPrefix(String prefix) {
+        String from = normalize(prefix);
+        return Flux.fromStream(() -> postings.tailMap(from, true).entrySet().stream()
+                .takeWhile(entry -> entry.getKey().startsWith(from))
+                .flatMapToInt(entry -> IntStream.of(entry.getValue()))
+                .boxed());
+    }
+
+    public boolean matches(String name, String prefix) {
+        return normalize(name).startsWith(normalize(prefix));
+    }
+
+    public int size() {
+        return namesById.size();
+    }
+
+    public long estimatedBytes() {
+        return (long) postings.size() * BYTES_PER_NAME + nameChars + (long) size() * (BYTES_PER_ID + Integer.BYTES);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("customers.search.index.entries", this, CustomerNameIndex::size)
+                .description("Customers held by the name search index")
+                .register(registry);
+        Gauge.builder("customers.search.index.size", this, CustomerNameIndex::estimatedBytes)
+                .baseUnit("bytes")
+                .description("Estimated heap used by the name search index")
+                .register(registry);
+        Gauge.builder("customers.search.index.entry.size", this,
+                        index -> index.size() == 0 ? 0 : index.estimatedBytes() / (double) index.size())
+                .baseUnit("bytes")
+                .description("Estimated heap used per indexed customer")
+                .register(registry);
+    }
+
+    private void addPosting(String key, int id) {
+        int[] ids = postings.get(key);
+        if (ids == null) {
+            postings.put(key, new int[]{id});
+            nameChars += key.length();
+            return;
+        }
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return;
+        }
+        int insertAt = -position - 1;
+        int[] updated = new int[ids.length + 1];
+        System.arraycopy(ids, 0, updated, 0, insertAt);
+        updated[insertAt] = id;
+        System.arraycopy(ids, insertAt, updated, insertAt + 1, ids.length - insertAt);
+        postings.put(key, updated);
+    }
+
+    private void removePosting(String key, int id) {
+        int[] ids = postings.get(key);
+        if (ids == null) {
+            return;
+        }
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
+            return;
+        }
+        if (ids.length == 1) {
+            postings.remove(key);
+            nameChars -= key.length();
+            return;
+        }
+        int[] updated = new int[ids.length - 1];
+        System.arraycopy(ids, 0, updated, 0, position);
+        System.arraycopy(ids, position + 1, updated, position, ids.length - position - 1);
+        postings.put(key, updated);
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
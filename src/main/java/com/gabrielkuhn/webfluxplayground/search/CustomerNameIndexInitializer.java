@@ -0,0 +1,32 @@
+package com.gabrielkuhn.webfluxplayground.search;
+
+import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills the {@link CustomerNameIndex} by streaming the customer table once the application is up.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CustomerNameIndexInitializer {
+
+    private final CustomerRepository customerRepository;
+    private final CustomerNameIndex customerNameIndex;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndex() {
+        long start = System.nanoTime();
+        customerRepository.findAll()
+                .doOnNext(customer -> customerNameIndex.putIfAbsent(customer.getId(), customer.getName()))
+                .count()
+                .subscribe(
+                        indexed -> log.info("Indexed {} customer names in {} ms (~{} bytes)", indexed,
+                                (System.nanoTime() - start) / 1_000_000, customerNameIndex.estimatedBytes()),
+                        error -> log.error("Building the customer name index failed", error));
+    }
+}
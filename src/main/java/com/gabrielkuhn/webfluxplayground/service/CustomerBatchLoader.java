@@ -0,0 +1,153 @@
+package com.gabrielkuhn.webfluxplayground.service;
+
+import com.gabrielkuhn.webfluxplayground.deadline.RequestDeadline;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.timing.RequestTiming;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Collects id lookups that arrive within a short window, or until the batch is full, and serves all of them with a
+ * single {@code WHERE id IN (...)} query. Each caller still gets its own {@link Mono}.
+ * <p>
+ * The query runs for the callers of its batch: it gets the latest of their deadlines, as it has to answer whoever
+ * waits longest, and adds its database time to the timing of each of them. It is cancelled, on the server as well,
+ * once every caller has gone away.
+ */
+public class CustomerBatchLoader {
+
+    private final Function<List<Integer>, Flux<Customer>> query;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private Batch current;
+
+    public CustomerBatchLoader(Function<List<Integer>, Flux<Customer>> query, Duration window, int maxBatchSize) {
+        this.query = query;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public Mono<Customer> load(int id) {
+        if (windowNanos <= 0 || maxBatchSize <= 1) {
+            return query.apply(List.of(id)).next();
+        }
+        return Mono.deferContextual(context -> {
+            Batch batch = enqueue(id, context);
+            return batch.result.asMono()
+                    .flatMap(found -> Mono.justOrEmpty(found.get(id)))
+                    .doOnCancel(batch::leave);
+        });
+    }
+
+    private Batch enqueue(int id, ContextView context) {
+        Batch batch;
+        Batch full = null;
+        synchronized (this) {
+            if (current == null) {
+                Batch next = new Batch();
+                current = next;
+                // Looked up on every batch, so tests can swap in virtual time.
+                Schedulers.parallel().schedule(() -> flush(next), windowNanos, TimeUnit.NANOSECONDS);
+            }
+            batch = current;
+            batch.add(id, RequestDeadline.get(context), RequestTiming.get(context));
+            if (batch.ids.size() >= maxBatchSize) {
+                full = batch;
+                current = null;
+            }
+        }
+        if (full != null) {
+            full.execute();
+        }
+        return batch;
+    }
+
+    private void flush(Batch batch) {
+        synchronized (this) {
+            if (current != batch) {
+                return;
+            }
+            current = null;
+        }
+        batch.execute();
+    }
+
+    private final class Batch {
+
+        private final List<Integer> ids = new ArrayList<>();
+        private final List<RequestTiming> timings = new ArrayList<>();
+        private final Sinks.One<Map<Integer, Customer>> result = Sinks.one();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final Disposable.Swap subscription = Disposables.swap();
+
+        private boolean unbounded;
+        private long expiresAtNanos;
+        private volatile RequestDeadline deadline;
+
+        /**
+         * Called with the loader's lock held.
+         */
+        private void add(int id, RequestDeadline callerDeadline, RequestTiming callerTiming) {
+            if (callerDeadline == null) {
+                unbounded = true;
+            } else if (ids.isEmpty() || callerDeadline.getExpiresAtNanos() - expiresAtNanos > 0) {
+                expiresAtNanos = callerDeadline.getExpiresAtNanos();
+            }
+            if (callerTiming != null) {
+                timings.add(callerTiming);
+            }
+            ids.add(id);
+            waiting.incrementAndGet();
+        }
+
+        /**
+         * The batch is out of the loader by now, so nothing is added to it any more.
+         */
+        private void execute() {
+            if (waiting.get() == 0) {
+                return;
+            }
+            RequestTiming timing = new RequestTiming(System.nanoTime());
+            Context context = RequestTiming.put(Context.empty(), timing);
+            if (!unbounded) {
+                deadline = new RequestDeadline(expiresAtNanos);
+                context = RequestDeadline.put(context, deadline);
+            }
+            subscription.update(query.apply(ids.stream().distinct().collect(Collectors.toList()))
+                    .collectMap(Customer::getId)
+                    .doOnTerminate(() -> timings.forEach(caller -> {
+                        caller.add(RequestTiming.Phase.ACQUIRE, timing.get(RequestTiming.Phase.ACQUIRE));
+                        caller.add(RequestTiming.Phase.DB, timing.get(RequestTiming.Phase.DB));
+                    }))
+                    .contextWrite(context)
+                    .subscribe(result::tryEmitValue, result::tryEmitError));
+        }
+
+        private void leave() {
+            if (waiting.decrementAndGet() > 0) {
+                return;
+            }
+            RequestDeadline running = deadline;
+            if (running != null) {
+                running.cancel();
+            }
+            subscription.dispose();
+        }
+    }
+}
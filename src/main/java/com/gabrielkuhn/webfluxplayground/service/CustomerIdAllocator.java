@@ -0,0 +1,146 @@
+package com.gabrielkuhn.webfluxplayground.service;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerIdBlock;
+import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hi/lo customer ids, enabled with {@code customers.ids.enabled}. The id sequence advances by the increment set in
+ * {@code schema-postgresql.sql}, so one call to it reserves a whole block, and ids are handed out of that block with a
+ * single atomic add. Blocks never overlap across nodes, and rows inserted with the column default only take the first
+ * id of a block nobody else holds.
+ * <p>
+ * The increment is read once and only ever changed by that migration, never at runtime. Ids of a block that is not
+ * used up are lost when the node stops; ids are unique, not gapless.
+ */
+@Component
+public class CustomerIdAllocator implements MeterBinder {
+
+    private static final Block EMPTY = new Block(new CustomerIdBlock(0, 0));
+
+    private final Supplier<CustomerRepository> customerRepository;
+    private final CustomerProperties.Ids properties;
+    private final Mono<Integer> blockSize;
+    private final AtomicReference<Mono<Void>> refillInFlight = new AtomicReference<>();
+
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder refills = new LongAdder();
+
+    private volatile Block current = EMPTY;
+
+    /**
+     * The repository is only resolved on the first allocation, for the same reason as in {@link CustomerWriteBuffer}.
+     */
+    @Autowired
+    public CustomerIdAllocator(ObjectProvider<CustomerRepository> customerRepository,
+                               CustomerProperties customerProperties) {
+        this(customerRepository::getObject, customerProperties);
+    }
+
+    public CustomerIdAllocator(Supplier<CustomerRepository> customerRepository,
+                               CustomerProperties customerProperties) {
+        this.customerRepository = customerRepository;
+        this.properties = customerProperties.getIds();
+        // A failed lookup is retried by the next refill rather than cached.
+        this.blockSize = Mono.defer(() -> customerRepository.get().findIdBlockSize())
+                .cache(size -> Duration.ofMillis(Long.MAX_VALUE), error -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Emits {@code count} unused ids, refilling from the sequence only when the current block runs out.
+     */
+    public Flux<Integer> allocate(int count) {
+        return Flux.defer(() -> {
+            Block block = current;
+            int first = block.next.getAndAdd(count);
+            int available = Math.max(0, Math.min(count, block.end - first));
+            allocated.add(available);
+            Flux<Integer> ids = Flux.range(first, available);
+            if (available == count) {
+                return ids;
+            }
+            return ids.concatWith(refill(block).thenMany(Flux.defer(() -> allocate(count - available))));
+        });
+    }
+
+    /**
+     * Replaces the exhausted block. Concurrent callers share a refill that is already running.
+     */
+    private Mono<Void> refill(Block exhausted) {
+        while (true) {
+            if (current != exhausted) {
+                return Mono.empty();
+            }
+            Mono<Void> inFlight = refillInFlight.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+            AtomicReference<Mono<Void>> self = new AtomicReference<>();
+            Mono<Void> refill = blockSize
+                    .flatMap(size -> customerRepository.get().reserveIdBlock()
+                            .map(first -> new CustomerIdBlock(first, size)))
+                    .doOnNext(block -> {
+                        if (block.getSize() < 1) {
+                            throw new IllegalStateException("Customer id sequence reserved an empty block " + block);
+                        }
+                        current = new Block(block);
+                        refills.increment();
+                    })
+                    .doFinally(signal -> refillInFlight.compareAndSet(self.get(), null))
+                    .then()
+                    .cache();
+            self.set(refill);
+            if (refillInFlight.compareAndSet(null, refill)) {
+                return refill;
+            }
+        }
+    }
+
+    private int remaining() {
+        Block block = current;
+        return Math.max(0, block.end - block.next.get());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("customers.ids.allocated", allocated, LongAdder::sum)
+                .description("Customer ids handed out from reserved blocks")
+                .register(registry);
+        FunctionCounter.builder("customers.ids.refills", refills, LongAdder::sum)
+                .description("Id blocks reserved from the customer id sequence")
+                .register(registry);
+        Gauge.builder("customers.ids.remaining", this, CustomerIdAllocator::remaining)
+                .description("Ids left in the current block")
+                .register(registry);
+    }
+
+    private static final class Block {
+
+        private final int end;
+        private final AtomicInteger next;
+
+        private Block(CustomerIdBlock block) {
+            this.end = block.getFirst() + block.getSize();
+            this.next = new AtomicInteger(block.getFirst());
+        }
+    }
+}
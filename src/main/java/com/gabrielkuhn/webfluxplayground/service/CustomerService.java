@@ -1,41 +1,270 @@
 package com.gabrielkuhn.webfluxplayground.service;
 
+import com.gabrielkuhn.webfluxplayground.cache.CustomerCache;
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
 import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerBatchResult;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerChange;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerTableStats;
+import com.gabrielkuhn.webfluxplayground.event.CustomerChangeFeed;
+import com.gabrielkuhn.webfluxplayground.exception.CustomerNotFoundException;
+import com.gabrielkuhn.webfluxplayground.exception.CustomerVersionMismatchException;
 import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
-import lombok.RequiredArgsConstructor;
-import org.springframework.http.HttpStatus;
+import com.gabrielkuhn.webfluxplayground.routing.ReadRouting;
+import com.gabrielkuhn.webfluxplayground.search.CustomerNameIndex;
 import org.springframework.stereotype.Service;
-import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
 @Service
-@RequiredArgsConstructor
 public class CustomerService {
 
+    /**
+     * Reusable; the stackless exceptions are only created once a lookup actually comes back empty.
+     */
+    private static final Mono<?> NOT_FOUND = Mono.error(CustomerNotFoundException::new);
+    private static final Mono<?> VERSION_MISMATCH = Mono.error(CustomerVersionMismatchException::new);
+
     private final CustomerRepository customerRepository;
+    private final CustomerProperties customerProperties;
+    private final CustomerCache customerCache;
+    private final CustomerNameIndex customerNameIndex;
+    private final CustomerChangeFeed customerChangeFeed;
+    private final CustomerWriteBuffer customerWriteBuffer;
+    private final CustomerIdAllocator customerIdAllocator;
+    private final CustomerBatchLoader customerBatchLoader;
 
+    public CustomerService(CustomerRepository customerRepository, CustomerProperties customerProperties,
+                           CustomerCache customerCache, CustomerNameIndex customerNameIndex,
+                           CustomerChangeFeed customerChangeFeed, CustomerWriteBuffer customerWriteBuffer,
+                           CustomerIdAllocator customerIdAllocator) {
+        this.customerRepository = customerRepository;
+        this.customerProperties = customerProperties;
+        this.customerCache = customerCache;
+        this.customerNameIndex = customerNameIndex;
+        this.customerChangeFeed = customerChangeFeed;
+        this.customerWriteBuffer = customerWriteBuffer;
+        this.customerIdAllocator = customerIdAllocator;
+        this.customerBatchLoader = new CustomerBatchLoader(customerRepository::findAllById,
+                customerProperties.getLookup().getWindow(), customerProperties.getLookup().getMaxBatchSize());
+    }
+
+    /**
+     * Full scans tolerate replication lag and may be served by a read replica.
+     */
     public Flux<Customer> findAll() {
-        return customerRepository.findAll();
+        return withBufferedWrites(ReadRouting.fromReplica(customerRepository.findAll()));
+    }
+
+    /**
+     * Aggregates over the same rows as {@link #findAll()}, read the same way; the checksum also changes with every
+     * rename still in the write-behind buffer.
+     */
+    public Mono<CustomerTableStats> findAllStats() {
+        Mono<CustomerTableStats> stats = ReadRouting.fromReplica(customerRepository.findTableStats().flux()).next();
+        return customerWriteBuffer.isEnabled()
+                ? stats.map(table -> table.withChecksum(table.getChecksum() + customerWriteBuffer.pendingRevision()))
+                : stats;
+    }
+
+    /**
+     * Streams every customer with an id greater than {@code lastId} in ascending id order, one keyset page at a
+     * time. The next page is only queried once the previous one has been drained downstream.
+     */
+    public Flux<Customer> findAllAfter(int lastId) {
+        int pageSize = customerProperties.getStream().getPageSize();
+
+        return withBufferedWrites(ReadRouting.fromReplica(findPageAfter(lastId, pageSize)
+                .expand(page -> page.size() < pageSize
+                        ? Mono.empty()
+                        : findPageAfter(page.get(page.size() - 1).getId(), pageSize))
+                .concatMapIterable(Function.identity(), 1)));
+    }
+
+    private Mono<List<Customer>> findPageAfter(int lastId, int pageSize) {
+        return customerRepository.findPageAfter(lastId, pageSize).collectList();
     }
 
+    /**
+     * Stays on the primary: the result is shared through the cache, where a lagging replica would pin a stale
+     * customer for the whole TTL.
+     */
     public Mono<Customer> findById(Integer id) {
-        return customerRepository.findById(id)
-                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Customer not found")));
+        Mono<Customer> customer = customerCache.get(id, customerBatchLoader::load)
+                .switchIfEmpty(error(NOT_FOUND));
+        return customerWriteBuffer.isEnabled() ? customer.map(customerWriteBuffer::overlay) : customer;
+    }
+
+    public Flux<Customer> findAllById(List<Integer> ids) {
+        return withBufferedWrites(ReadRouting.fromReplica(customerRepository.findAllById(ids)));
+    }
+
+    /**
+     * Read-your-writes for the write-behind buffer: customers with a buffered rename are returned as they will be
+     * once it has been written.
+     */
+    private Flux<Customer> withBufferedWrites(Flux<Customer> customers) {
+        return customerWriteBuffer.isEnabled() ? customers.map(customerWriteBuffer::overlay) : customers;
     }
 
+    /**
+     * Streams customers whose name starts with {@code prefix} from the in-memory name index. Only as many customers
+     * as {@code limit} are loaded, and each is checked against its current name.
+     */
+    public Flux<Customer> search(String prefix, int limit) {
+        return withBufferedWrites(customerNameIndex.findIdsByPrefix(prefix)
+                .flatMapSequential(id -> customerCache.get(id, customerBatchLoader::load), limit))
+                .filter(customer -> customerNameIndex.matches(customer.getName(), prefix))
+                .take(limit);
+    }
+
+    /**
+     * Inserts with an id from the allocator when it is enabled, otherwise with the one the database generates.
+     */
     public Mono<Customer> save(Customer customer) {
-        return customerRepository.save(customer);
+        Mono<Customer> saved = customerIdAllocator.isEnabled()
+                ? customerIdAllocator.allocate(1).next()
+                        .flatMap(id -> customerRepository.save(customer.withId(id).withVersion(null)))
+                : customerRepository.save(customer.withVersion(null));
+        return saved
+                .doOnSuccess(savedCustomer -> {
+                    customerCache.invalidate(savedCustomer.getId());
+                    customerNameIndex.put(savedCustomer.getId(), savedCustomer.getName());
+                    customerChangeFeed.publish(CustomerChange.Type.CREATED, savedCustomer.getId(), savedCustomer);
+                });
+    }
+
+    /**
+     * Inserts the incoming customers in batches of {@code customers.batch.size}. Only one batch is requested from
+     * the source while the previous one is being written, so a slow database throttles the producer. With the id
+     * allocator enabled, a batch is inserted with pre-assigned ids and no generated keys are read back.
+     */
+    public Flux<CustomerBatchResult> saveAll(Flux<Customer> customers) {
+        return customers.buffer(customerProperties.getBatch().getSize())
+                .index()
+                .concatMap(batch -> insertBatch(batch.getT2())
+                        .doOnNext(ids -> indexInserted(batch.getT2(), ids))
+                        .map(ids -> new CustomerBatchResult(batch.getT1().intValue(), ids.size(), ids)), 1);
+    }
+
+    private Mono<List<Integer>> insertBatch(List<Customer> customers) {
+        if (!customerIdAllocator.isEnabled()) {
+            return customerRepository.insertAll(customers).collectList();
+        }
+        return customerIdAllocator.allocate(customers.size())
+                .collectList()
+                .flatMap(ids -> {
+                    List<Customer> withIds = new ArrayList<>(customers.size());
+                    for (int i = 0; i < customers.size(); i++) {
+                        withIds.add(customers.get(i).withId(ids.get(i)));
+                    }
+                    return customerRepository.insertAllWithIds(withIds).thenReturn(ids);
+                });
+    }
+
+    private void indexInserted(List<Customer> customers, List<Integer> ids) {
+        for (int i = 0; i < ids.size(); i++) {
+            customerCache.invalidate(ids.get(i));
+            customerNameIndex.put(ids.get(i), customers.get(i).getName());
+            customerChangeFeed.publish(CustomerChange.Type.CREATED, ids.get(i),
+                    customers.get(i).withId(ids.get(i)).withVersion(0));
+        }
     }
 
+    /**
+     * Updates the customer with a single statement. When the customer carries a version, the update only applies if
+     * the stored row still has that version. Without a version, the update goes through the write-behind buffer when
+     * it is enabled.
+     */
     public Mono<Void> update(Customer customer) {
-        return findById(customer.getId())
-                .flatMap(foundCustomer -> customerRepository.save(customer))
-                .then();
+        int id = customer.getId();
+        if (customerWriteBuffer.isEnabled() && customer.getVersion() == null) {
+            return updateBehind(customer);
+        }
+
+        Mono<Integer> updatedRows = customer.getVersion() == null
+                ? customerRepository.updateName(id, customer.getName())
+                : customerRepository.updateNameIfVersion(id, customer.getName(), customer.getVersion());
+
+        return flushBufferedWrite(id)
+                .then(updatedRows)
+                .doOnNext(rows -> {
+                    customerCache.invalidate(id);
+                    if (rows > 0) {
+                        customerNameIndex.put(id, customer.getName());
+                        customerChangeFeed.publish(CustomerChange.Type.UPDATED, id, updated(customer));
+                    }
+                })
+                .flatMap(rows -> rows > 0 ? Mono.<Void>empty() : notFoundOrStale(id));
     }
 
-    public Mono<Void> delete(Integer id) {
+    /**
+     * Acknowledges the rename once it is buffered; the buffer publishes it to the change feed once it is written. The
+     * lookup keeps 404 for unknown customers and is served from the cache for the frequently updated ones this mode is
+     * meant for.
+     */
+    private Mono<Void> updateBehind(Customer customer) {
+        int id = customer.getId();
         return findById(id)
-                .flatMap(customerRepository::delete);
+                .flatMap(current -> customerWriteBuffer.put(id, customer.getName()))
+                .doOnSuccess(done -> customerNameIndex.put(id, customer.getName()));
+    }
+
+    /**
+     * Writes that bypass the buffer go after any rename still buffered for the same customer, so a version check
+     * sees it and a later flush cannot overwrite them.
+     */
+    private Mono<Void> flushBufferedWrite(int id) {
+        return Mono.defer(() -> customerWriteBuffer.isEnabled() && customerWriteBuffer.hasPending(id)
+                ? customerWriteBuffer.flush()
+                : Mono.empty());
+    }
+
+    /**
+     * The version is only known when the update was conditional; otherwise the change carries just the new name.
+     */
+    private static Customer updated(Customer customer) {
+        return customer.getVersion() == null ? customer : customer.withVersion(customer.getVersion() + 1);
+    }
+
+    public Mono<Void> delete(Integer id) {
+        return delete(id, null);
+    }
+
+    /**
+     * Deletes the customer with a single statement, optionally only if the stored row still has {@code version}.
+     */
+    public Mono<Void> delete(Integer id, Integer version) {
+        Mono<Integer> deletedRows = version == null
+                ? customerRepository.removeById(id)
+                : customerRepository.removeByIdIfVersion(id, version);
+
+        return flushBufferedWrite(id)
+                .then(deletedRows)
+                .doOnNext(rows -> {
+                    customerCache.invalidate(id);
+                    if (rows > 0) {
+                        customerNameIndex.remove(id);
+                        customerChangeFeed.publish(CustomerChange.Type.DELETED, id, null);
+                    }
+                })
+                .flatMap(rows -> rows > 0 ? Mono.<Void>empty() : notFoundOrStale(id));
+    }
+
+    /**
+     * Only reached when a write touched no rows, so the extra query is off the happy path.
+     */
+    private Mono<Void> notFoundOrStale(int id) {
+        return customerRepository.existsById(id)
+                .flatMap(exists -> error(exists ? VERSION_MISMATCH : NOT_FOUND));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Mono<T> error(Mono<?> error) {
+        return (Mono<T>) error;
     }
 }
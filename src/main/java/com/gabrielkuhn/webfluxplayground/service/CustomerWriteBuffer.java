@@ -0,0 +1,274 @@
+package com.gabrielkuhn.webfluxplayground.service;
+
+import com.gabrielkuhn.webfluxplayground.cache.CustomerCache;
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerChange;
+import com.gabrielkuhn.webfluxplayground.event.CustomerChangeFeed;
+import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind buffer for customer renames, enabled with {@code customers.write-behind.enabled}.
+ * <p>
+ * Buffered renames are coalesced per id (the last one wins) and written every {@code window} as one batched
+ * statement. The version still moves on once per rename, so every buffered rename gets its own ETag, and the one a
+ * reader saw while it was buffered is still current once it is written. An entry stays visible to {@link #overlay}
+ * until its write has been committed, so readers always see their own writes. Renames reach the change feed once
+ * they are written, not when they are buffered. Once {@code max-pending} customers are buffered, renaming another
+ * one waits for the next flush. Stopping the application flushes whatever is left.
+ */
+@Slf4j
+@Component
+public class CustomerWriteBuffer implements SmartLifecycle, MeterBinder {
+
+    /**
+     * Stops after the web server, so no request can buffer another write once the final flush has started.
+     */
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 2048;
+
+    private final Supplier<CustomerRepository> customerRepository;
+    private final CustomerCache customerCache;
+    private final CustomerChangeFeed customerChangeFeed;
+    private final CustomerProperties.WriteBehind properties;
+
+    private final Map<Integer, PendingWrite> pending = new ConcurrentHashMap<>();
+    private final AtomicReference<Mono<Void>> flushInFlight = new AtomicReference<>();
+
+    private final LongAdder buffered = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder lagNanos = new LongAdder();
+
+    private volatile Disposable flushes;
+
+    /**
+     * The repository is only resolved on the first flush: meter binders are created while the meter registry is,
+     * and the repository depends on the registry through the instrumented connection pool.
+     */
+    @Autowired
+    public CustomerWriteBuffer(ObjectProvider<CustomerRepository> customerRepository, CustomerCache customerCache,
+                               CustomerChangeFeed customerChangeFeed, CustomerProperties customerProperties) {
+        this(customerRepository::getObject, customerCache, customerChangeFeed, customerProperties);
+    }
+
+    public CustomerWriteBuffer(Supplier<CustomerRepository> customerRepository, CustomerCache customerCache,
+                               CustomerChangeFeed customerChangeFeed, CustomerProperties customerProperties) {
+        this.customerRepository = customerRepository;
+        this.customerCache = customerCache;
+        this.customerChangeFeed = customerChangeFeed;
+        this.properties = customerProperties.getWriteBehind();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Buffers a rename; completes once it is buffered, or after a flush has made room when the buffer is full.
+     */
+    public Mono<Void> put(int id, String name) {
+        return Mono.defer(() -> {
+            if (pending.size() >= properties.getMaxPending() && !pending.containsKey(id)) {
+                return flush().then(put(id, name));
+            }
+            // Coalesced writes keep the time the first one was buffered, so the flush lag covers the oldest write.
+            pending.merge(id, new PendingWrite(name, System.nanoTime(), 1),
+                    (previous, next) -> new PendingWrite(next.name, previous.bufferedAt, previous.renames + 1));
+            buffered.increment();
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Changes with every rename buffered while any is still waiting to be written, and is zero once all are.
+     */
+    public long pendingRevision() {
+        return pending.isEmpty() ? 0 : buffered.sum();
+    }
+
+    public boolean hasPending(int id) {
+        return pending.containsKey(id);
+    }
+
+    /**
+     * Applies the buffered renames, if any. The version is the one the customer will have once they are written.
+     */
+    public Customer overlay(Customer customer) {
+        PendingWrite write = pending.get(customer.getId());
+        if (write == null) {
+            return customer;
+        }
+        Integer version = customer.getVersion();
+        return customer.withName(write.name).withVersion(version == null ? null : version + write.renames);
+    }
+
+    /**
+     * Writes everything buffered so far. Concurrent callers share a flush that is already running.
+     */
+    public Mono<Void> flush() {
+        while (true) {
+            Mono<Void> current = flushInFlight.get();
+            if (current != null) {
+                return current;
+            }
+            AtomicReference<Mono<Void>> self = new AtomicReference<>();
+            Mono<Void> flush = writePending()
+                    .doFinally(signal -> flushInFlight.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(flush);
+            if (flushInFlight.compareAndSet(null, flush)) {
+                return flush;
+            }
+        }
+    }
+
+    private Mono<Void> writePending() {
+        return Mono.defer(() -> {
+            List<Customer> customers = new ArrayList<>(pending.size());
+            List<PendingWrite> writes = new ArrayList<>(pending.size());
+            pending.forEach((id, write) -> {
+                customers.add(Customer.builder().id(id).name(write.name).version(write.renames).build());
+                writes.add(write);
+            });
+            if (customers.isEmpty()) {
+                return Mono.empty();
+            }
+
+            return customerRepository.get().updateNames(customers)
+                    .collectList()
+                    .doOnNext(updatedRows -> {
+                        long now = System.nanoTime();
+                        for (int i = 0; i < customers.size(); i++) {
+                            Customer customer = customers.get(i);
+                            PendingWrite write = writes.get(i);
+                            // Renames buffered while this batch was written stay for the next flush.
+                            pending.computeIfPresent(customer.getId(),
+                                    (key, current) -> current == write ? null : current.after(write));
+                            customerCache.invalidate(customer.getId());
+                            lagNanos.add(now - write.bufferedAt);
+                            // A customer deleted in the meantime has no row left to rename.
+                            if (i < updatedRows.size() && updatedRows.get(i) > 0) {
+                                customerChangeFeed.publish(CustomerChange.Type.UPDATED, customer.getId(),
+                                        customer.withVersion(null));
+                            }
+                        }
+                        written.add(customers.size());
+                    })
+                    .then();
+        });
+    }
+
+    @Override
+    public void start() {
+        if (!isEnabled() || flushes != null) {
+            return;
+        }
+        flushes = Flux.interval(properties.getWindow())
+                .onBackpressureDrop()
+                .concatMap(tick -> flush()
+                        .onErrorResume(error -> {
+                            log.warn("Flushing {} buffered customer updates failed, retrying", pending.size(), error);
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        Disposable running = flushes;
+        if (running == null) {
+            return;
+        }
+        running.dispose();
+        flushes = null;
+
+        long deadline = System.nanoTime() + properties.getShutdownTimeout().toNanos();
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            try {
+                flush().block(properties.getShutdownTimeout());
+            } catch (RuntimeException ex) {
+                log.warn("Flushing buffered customer updates on shutdown failed", ex);
+                break;
+            }
+        }
+        if (!pending.isEmpty()) {
+            log.error("Shutting down with {} buffered customer updates not written", pending.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return flushes != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("customers.write_behind.pending", pending, Map::size)
+                .description("Customers with a buffered update not yet written")
+                .register(registry);
+        FunctionCounter.builder("customers.write_behind.buffered", buffered, LongAdder::sum)
+                .description("Updates accepted into the write-behind buffer")
+                .register(registry);
+        FunctionCounter.builder("customers.write_behind.written", written, LongAdder::sum)
+                .description("Rows written by write-behind flushes")
+                .register(registry);
+        Gauge.builder("customers.write_behind.coalescing.ratio", this, CustomerWriteBuffer::coalescingRatio)
+                .description("Buffered updates per row written")
+                .register(registry);
+        FunctionTimer.builder("customers.write_behind.flush.lag", this,
+                        buffer -> buffer.written.sum(), buffer -> buffer.lagNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Time from the first buffered update of a customer until it was written")
+                .register(registry);
+    }
+
+    private double coalescingRatio() {
+        long rows = written.sum();
+        return rows == 0 ? Double.NaN : (double) buffered.sum() / rows;
+    }
+
+    private static final class PendingWrite {
+
+        private final String name;
+        private final long bufferedAt;
+        private final int renames;
+
+        private PendingWrite(String name, long bufferedAt, int renames) {
+            this.name = name;
+            this.bufferedAt = bufferedAt;
+            this.renames = renames;
+        }
+
+        /**
+         * What is left to write once {@code written}, an earlier state of this entry, has been written.
+         */
+        private PendingWrite after(PendingWrite written) {
+            return new PendingWrite(name, bufferedAt, renames - written.renames);
+        }
+    }
+}
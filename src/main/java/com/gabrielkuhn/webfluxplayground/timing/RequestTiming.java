@@ -0,0 +1,160 @@
+package com.gabrielkuhn.webfluxplayground.timing;
+
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Where the time of one request went, carried in the Reactor context of the request. Phases are plain slots of a
+ * single array allocated with the request, so recording one costs a clock read and an add. The database phases
+ * accumulate over every connection the request used.
+ */
+public final class RequestTiming {
+
+    private static final Object KEY = RequestTiming.class;
+
+    private final long startNanos;
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+
+    private volatile long serviceEndNanos;
+
+    public RequestTiming(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    public static Context put(Context context, RequestTiming timing) {
+        return context.put(KEY, timing);
+    }
+
+    @Nullable
+    public static RequestTiming get(ContextView context) {
+        return context.getOrDefault(KEY, null);
+    }
+
+    /**
+     * Times the service pipeline of a request; everything before its subscription counts as decoding.
+     */
+    public static <T> Mono<T> service(Mono<T> pipeline) {
+        return Mono.deferContextual(context -> {
+            RequestTiming timing = get(context);
+            if (timing == null) {
+                return pipeline;
+            }
+            long start = timing.serviceStarted();
+            // Before the value goes downstream, so its encoding is not counted as service time.
+            return pipeline.doOnSuccess(value -> timing.serviceFinished(start))
+                    .doOnError(error -> timing.serviceFinished(start));
+        });
+    }
+
+    public static <T> Flux<T> service(Flux<T> pipeline) {
+        return Flux.deferContextual(context -> {
+            RequestTiming timing = get(context);
+            if (timing == null) {
+                return pipeline;
+            }
+            long start = timing.serviceStarted();
+            return pipeline.doOnTerminate(() -> timing.serviceFinished(start));
+        });
+    }
+
+    public void add(Phase phase, long nanos) {
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+    }
+
+    public long get(Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    long elapsed(long nowNanos) {
+        return nowNanos - startNanos;
+    }
+
+    /**
+     * Encoding is what happened between the end of the service pipeline and the response being committed. Streamed
+     * responses encode while the pipeline is still running and have no separate encode phase.
+     */
+    void committed(long nowNanos) {
+        long serviceEnd = serviceEndNanos;
+        if (serviceEnd != 0) {
+            add(Phase.ENCODE, nowNanos - serviceEnd);
+        }
+    }
+
+    private long serviceStarted() {
+        long now = System.nanoTime();
+        phaseNanos.compareAndSet(Phase.DECODE.ordinal(), 0, Math.max(now - startNanos, 1));
+        return now;
+    }
+
+    private void serviceFinished(long start) {
+        long now = System.nanoTime();
+        add(Phase.SERVICE, now - start);
+        serviceEndNanos = now;
+    }
+
+    /**
+     * Renders the recorded phases and the time until {@code nowNanos} as {@code Server-Timing} metrics, in
+     * milliseconds.
+     */
+    String format(long nowNanos) {
+        StringBuilder header = new StringBuilder(128);
+        for (Phase phase : Phase.values()) {
+            long nanos = get(phase);
+            if (nanos > 0) {
+                append(header, phase.getMetric(), nanos);
+            }
+        }
+        append(header, "total", elapsed(nowNanos));
+        return header.toString();
+    }
+
+    private static void append(StringBuilder header, String metric, long nanos) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        header.append(metric).append(";dur=").append(micros / 1000).append('.');
+        long fraction = micros % 1000;
+        if (fraction < 100) {
+            header.append('0');
+        }
+        if (fraction < 10) {
+            header.append('0');
+        }
+        header.append(fraction);
+    }
+
+    public enum Phase {
+        /**
+         * From the start of the request until the service pipeline is subscribed: routing, body decoding and
+         * validation.
+         */
+        DECODE("decode"),
+        SERVICE("service"),
+        /**
+         * Waiting for pooled connections.
+         */
+        ACQUIRE("db-acquire"),
+        /**
+         * Connections held: queries and fetching their results.
+         */
+        DB("db"),
+        ENCODE("encode");
+
+        private final String metric;
+
+        Phase(String metric) {
+            this.metric = metric;
+        }
+
+        public String getMetric() {
+            return metric;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.gabrielkuhn.webfluxplayground.timing;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the phases of every {@code /customers} request (see {@link RequestTiming}). A sampled share of responses,
+ * and every response to a request carrying {@code X-Server-Timing}, get the breakdown as a {@code Server-Timing}
+ * header. Requests slower than {@code slow-threshold} are logged with their breakdown.
+ * <p>
+ * The header is written when the response is committed, so its {@code total} ends there; the log covers the whole
+ * exchange.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServerTimingFilter implements WebFilter {
+
+    static final String SERVER_TIMING = "Server-Timing";
+    static final String REQUEST_HEADER = "X-Server-Timing";
+
+    private static final String PATH = "/customers";
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final long slowThresholdNanos;
+
+    public ServerTimingFilter(CustomerProperties customerProperties) {
+        CustomerProperties.Timing properties = customerProperties.getTiming();
+        this.enabled = properties.isEnabled();
+        this.sampleRate = properties.getSampleRate();
+        this.slowThresholdNanos = properties.getSlowThreshold().toNanos();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled || !request.getPath().value().startsWith(PATH)) {
+            return chain.filter(exchange);
+        }
+
+        RequestTiming timing = new RequestTiming(System.nanoTime());
+        boolean emitHeader = request.getHeaders().containsKey(REQUEST_HEADER)
+                || sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+        exchange.getResponse().beforeCommit(() -> {
+            long now = System.nanoTime();
+            timing.committed(now);
+            if (emitHeader) {
+                exchange.getResponse().getHeaders().add(SERVER_TIMING, timing.format(now));
+            }
+            return Mono.empty();
+        });
+        return chain.filter(exchange)
+                .doFinally(signal -> logIfSlow(exchange, timing, signal.toString()))
+                .contextWrite(context -> RequestTiming.put(context, timing));
+    }
+
+    private void logIfSlow(ServerWebExchange exchange, RequestTiming timing, String signal) {
+        long now = System.nanoTime();
+        long elapsed = timing.elapsed(now);
+        if (slowThresholdNanos <= 0 || elapsed < slowThresholdNanos) {
+            return;
+        }
+        ServerHttpRequest request = exchange.getRequest();
+        log.warn("Slow request {} {} took {} ms ({}, status {}): {}", request.getMethodValue(),
+                request.getPath().value(), TimeUnit.NANOSECONDS.toMillis(elapsed), signal,
+                exchange.getResponse().getRawStatusCode(), timing.format(now));
+    }
+}
@@ -0,0 +1,56 @@
+package com.gabrielkuhn.webfluxplayground.warmup;
+
+import java.util.Arrays;
+
+/**
+ * Decides when the warm-up can stop: after at least {@code minRounds}, once the p99 of {@code stableRounds}
+ * consecutive rounds moved by no more than {@code tolerance} relative to the round before.
+ */
+class LatencyStabilizer {
+
+    private final int minRounds;
+    private final int stableRounds;
+    private final double tolerance;
+
+    private int rounds;
+    private int stable;
+    private long previousP99 = -1;
+
+    LatencyStabilizer(int minRounds, int stableRounds, double tolerance) {
+        this.minRounds = minRounds;
+        this.stableRounds = stableRounds;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Records the latencies of one round and returns whether latencies have stabilized.
+     */
+    boolean record(long[] latencyNanos) {
+        long p99 = p99(latencyNanos);
+        rounds++;
+        if (previousP99 > 0 && Math.abs(p99 - previousP99) <= tolerance * previousP99) {
+            stable++;
+        } else {
+            stable = 0;
+        }
+        previousP99 = p99;
+        return rounds >= minRounds && stable >= stableRounds;
+    }
+
+    int getRounds() {
+        return rounds;
+    }
+
+    long getLastP99() {
+        return previousP99;
+    }
+
+    static long p99(long[] latencyNanos) {
+        if (latencyNanos.length == 0) {
+            return 0;
+        }
+        long[] sorted = latencyNanos.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+    }
+}
@@ -0,0 +1,191 @@
+package com.gabrielkuhn.webfluxplayground.warmup;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.DecoderHttpMessageReader;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Pays the cold-start costs (JIT, codec and serializer setup, an empty connection pool, Reactor assembly) before the
+ * first real request does. Boot only reports readiness {@code ACCEPTING_TRAFFIC} once all application runners are
+ * done, so the readiness probe stays down until this runner returns.
+ * <p>
+ * The workload is read-only: lookups of existing and missing customers, batch lookups, prefix search and an invalid
+ * cursor are sent over loopback HTTP, so they also go through the filters and the exception handler. Customers are
+ * also encoded and decoded with every JSON codec in-process. Requests run in rounds, and the warm-up stops as soon
+ * as the p99 of consecutive rounds stabilizes, or after {@code max-duration} at the latest.
+ */
+@Slf4j
+@Component
+public class WarmupRunner implements ApplicationRunner, MeterBinder {
+
+    private static final ResolvableType CUSTOMER = ResolvableType.forClass(Customer.class);
+    private static final List<Customer> SAMPLE = List.of(
+            Customer.builder().id(1).name("Ann \"the warm\" Lee").version(3).build(),
+            Customer.builder().id(2).name("Jürgen").version(0).build());
+
+    private final CustomerProperties.Warmup properties;
+    private final ApplicationContext applicationContext;
+    private final ObjectProvider<WebClient.Builder> webClientBuilder;
+    private final List<Encoder<Customer>> encoders;
+    private final List<Decoder<Customer>> decoders;
+
+    private volatile long durationNanos;
+    private volatile int rounds;
+
+    /**
+     * The client builder is only resolved when the runner runs: meter binders are created while the meter registry
+     * is, and Boot's builder is customized with that registry.
+     */
+    public WarmupRunner(CustomerProperties customerProperties, ApplicationContext applicationContext,
+                        ObjectProvider<WebClient.Builder> webClientBuilder,
+                        ServerCodecConfigurer serverCodecConfigurer) {
+        this.properties = customerProperties.getWarmup();
+        this.applicationContext = applicationContext;
+        this.webClientBuilder = webClientBuilder;
+        this.encoders = jsonEncoders(serverCodecConfigurer);
+        this.decoders = jsonDecoders(serverCodecConfigurer);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isEnabled() || !(applicationContext instanceof WebServerApplicationContext)) {
+            return;
+        }
+        int port = ((WebServerApplicationContext) applicationContext).getWebServer().getPort();
+        WebClient webClient = webClientBuilder.getObject().baseUrl("http://localhost:" + port).build();
+        List<IntFunction<Mono<Void>>> operations = operations(webClient);
+
+        LatencyStabilizer stabilizer = new LatencyStabilizer(properties.getMinRounds(), properties.getStableRounds(),
+                properties.getTolerance());
+        long start = System.nanoTime();
+        long deadline = start + properties.getMaxDuration().toNanos();
+        boolean stable = false;
+        try {
+            while (!stable && System.nanoTime() < deadline) {
+                int offset = stabilizer.getRounds() * properties.getRoundSize();
+                long[] latencies = Flux.range(offset, properties.getRoundSize())
+                        .flatMap(i -> timed(operations.get(i % operations.size()).apply(i)),
+                                properties.getConcurrency())
+                        .collect(Collectors.toList())
+                        .map(round -> round.stream().mapToLong(Long::longValue).toArray())
+                        .block(Duration.ofNanos(Math.max(deadline - System.nanoTime(), 1)));
+                stable = stabilizer.record(latencies);
+            }
+        } catch (RuntimeException ex) {
+            // A broken warm-up must not keep the instance out of rotation; it just starts cold.
+            log.warn("Warm-up aborted after {} rounds", stabilizer.getRounds(), ex);
+        }
+
+        durationNanos = System.nanoTime() - start;
+        rounds = stabilizer.getRounds();
+        log.info("Warm-up {} after {} rounds in {} ms, last round p99 {} ms",
+                stable ? "stabilized" : "stopped", rounds, TimeUnit.NANOSECONDS.toMillis(durationNanos),
+                TimeUnit.NANOSECONDS.toMillis(stabilizer.getLastP99()));
+    }
+
+    private List<IntFunction<Mono<Void>>> operations(WebClient webClient) {
+        int ids = Math.max(properties.getIds(), 1);
+        return List.of(
+                i -> get(webClient.get().uri("/customers/{id}", 1 + i % ids)),
+                i -> get(webClient.get().uri("/customers?ids={a},{b},{c}", 1 + i % ids, 1 + (i + 1) % ids,
+                        1 + (i + 2) % ids)),
+                i -> get(webClient.get().uri("/customers/search?prefix={prefix}", (char) ('a' + i % 26))),
+                i -> get(webClient.get().uri("/customers?cursor={cursor}", "not-a-cursor")
+                        .accept(MediaType.APPLICATION_NDJSON)),
+                i -> codecRoundTrip());
+    }
+
+    /**
+     * Any status is fine; the body is drained so the connection goes back to the client pool.
+     */
+    private static Mono<Void> get(WebClient.RequestHeadersSpec<?> request) {
+        return request.exchangeToMono(ClientResponse::releaseBody);
+    }
+
+    private Mono<Void> codecRoundTrip() {
+        return Flux.fromIterable(encoders)
+                .concatMap(encoder -> DataBufferUtils.join(encoder.encode(Flux.fromIterable(SAMPLE),
+                        DefaultDataBufferFactory.sharedInstance, CUSTOMER, MediaType.APPLICATION_JSON, Map.of())))
+                .map(WarmupRunner::bytes)
+                .concatMap(json -> Flux.fromIterable(decoders)
+                        .concatMap(decoder -> decoder.decode(
+                                Mono.<DataBuffer>just(DefaultDataBufferFactory.sharedInstance.wrap(json)), CUSTOMER,
+                                MediaType.APPLICATION_JSON, Map.of())))
+                .then();
+    }
+
+    private static byte[] bytes(DataBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        DataBufferUtils.release(buffer);
+        return bytes;
+    }
+
+    private static Mono<Long> timed(Mono<Void> operation) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return operation.then(Mono.fromCallable(() -> System.nanoTime() - start));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Encoder<Customer>> jsonEncoders(ServerCodecConfigurer serverCodecConfigurer) {
+        return serverCodecConfigurer.getWriters().stream()
+                .filter(EncoderHttpMessageWriter.class::isInstance)
+                .map(writer -> ((EncoderHttpMessageWriter<?>) writer).getEncoder())
+                .filter(encoder -> encoder.canEncode(CUSTOMER, MediaType.APPLICATION_JSON))
+                .map(encoder -> (Encoder<Customer>) encoder)
+                .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Decoder<Customer>> jsonDecoders(ServerCodecConfigurer serverCodecConfigurer) {
+        return serverCodecConfigurer.getReaders().stream()
+                .filter(DecoderHttpMessageReader.class::isInstance)
+                .map(reader -> ((DecoderHttpMessageReader<?>) reader).getDecoder())
+                .filter(decoder -> decoder.canDecode(CUSTOMER, MediaType.APPLICATION_JSON))
+                .map(decoder -> (Decoder<Customer>) decoder)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        TimeGauge.builder("customers.warmup.duration", this, TimeUnit.NANOSECONDS, runner -> runner.durationNanos)
+                .description("Time spent warming up before reporting ready")
+                .register(registry);
+        Gauge.builder("customers.warmup.rounds", this, runner -> runner.rounds)
+                .description("Warm-up rounds run before reporting ready")
+                .register(registry);
+    }
+}
@@ -0,0 +1,2 @@
+-- Postgres only; apply after schema.sql. One nextval on the sequence reserves a block of ids for customers.ids.
+alter sequence customer_id_seq increment by 100;
@@ -3,5 +3,8 @@ create table if not exists customer
     id serial
         constraint customer_pk
             primary key,
-    name varchar not null
-);
\ No newline at end of file
+    name varchar not null,
+    version integer default 0 not null
+);
+
+alter table customer add column if not exists version integer default 0 not null;
@@ -0,0 +1,24 @@
+package com.gabrielkuhn.webfluxplayground;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * The opt-in features bind meters of beans that use the repository, which must not tie the repository into the
+ * creation of the meter registry.
+ */
+@SpringBootTest(properties = {"customers.write-behind.enabled=true", "customers.ids.enabled=true"})
+class WebfluxPlaygroundApplicationOptInTests {
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	void contextLoads() {
+		Assertions.assertThat(meterRegistry.find("customers.write_behind.pending").gauge()).isNotNull();
+		Assertions.assertThat(meterRegistry.find("customers.ids.allocated").functionCounter()).isNotNull();
+	}
+}
@@ -0,0 +1,135 @@
+package com.gabrielkuhn.webfluxplayground.cache;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.util.CustomerFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+class CustomerCacheTest {
+
+    private final Customer customer = CustomerFactory.get();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final IntFunction<Mono<Customer>> loader = id -> Mono.fromSupplier(() -> {
+        loads.incrementAndGet();
+        return customer.withId(id);
+    });
+
+    private CustomerCache cache(int maximumSize, Duration ttl) {
+        CustomerProperties customerProperties = new CustomerProperties();
+        customerProperties.getCache().setMaximumSize(maximumSize);
+        customerProperties.getCache().setTtl(ttl);
+        return new CustomerCache(customerProperties);
+    }
+
+    @Test
+    @DisplayName("get loads a customer once and serves later lookups from memory")
+    public void get_LoadsOnce_WhenCustomerIsCached() {
+        CustomerCache cache = cache(100, Duration.ofMinutes(1));
+
+        StepVerifier.create(cache.get(1, loader)).expectNext(customer).verifyComplete();
+        StepVerifier.create(cache.get(1, loader)).expectNext(customer).verifyComplete();
+
+        Assertions.assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("get shares one pending load between concurrent misses on the same id")
+    public void get_CoalescesLoads_WhenMissesAreConcurrent() {
+        CustomerCache cache = cache(100, Duration.ofMinutes(1));
+        Sinks.One<Customer> pending = Sinks.one();
+
+        Mono<Customer> first = cache.get(1, id -> {
+            loads.incrementAndGet();
+            return pending.asMono();
+        });
+        Mono<Customer> second = cache.get(1, loader);
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> pending.tryEmitValue(customer))
+                .assertNext(both -> Assertions.assertThat(both.getT2()).isSameAs(both.getT1()))
+                .verifyComplete();
+
+        Assertions.assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("get keeps a shared load running until the last of its callers cancels")
+    public void get_CancelsSharedLoad_WhenLastCallerCancels() {
+        CustomerCache cache = cache(100, Duration.ofMinutes(1));
+        AtomicBoolean cancelled = new AtomicBoolean();
+        IntFunction<Mono<Customer>> pending = id -> Mono.<Customer>never().doOnCancel(() -> cancelled.set(true));
+
+        Disposable first = cache.get(1, pending).subscribe();
+        Disposable second = cache.get(1, pending).subscribe();
+
+        first.dispose();
+        Assertions.assertThat(cancelled).isFalse();
+
+        second.dispose();
+        Assertions.assertThat(cancelled).isTrue();
+        StepVerifier.create(cache.get(1, loader)).expectNext(customer).verifyComplete();
+    }
+
+    @Test
+    @DisplayName("get caches customers that were not found")
+    public void get_CachesMiss_WhenLoaderIsEmpty() {
+        CustomerCache cache = cache(100, Duration.ofMinutes(1));
+
+        StepVerifier.create(cache.get(1, id -> {
+            loads.incrementAndGet();
+            return Mono.empty();
+        })).verifyComplete();
+        StepVerifier.create(cache.get(1, loader)).verifyComplete();
+
+        Assertions.assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("invalidate forces the next lookup to load again")
+    public void invalidate_RemovesEntry_WhenCustomerIsCached() {
+        CustomerCache cache = cache(100, Duration.ofMinutes(1));
+
+        cache.get(1, loader).block();
+        cache.invalidate(1);
+        cache.get(1, loader).block();
+
+        Assertions.assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("get reloads entries once their ttl has passed")
+    public void get_Reloads_WhenEntryIsExpired() {
+        CustomerCache cache = cache(100, Duration.ZERO);
+
+        cache.get(1, loader).block();
+        cache.get(1, loader).block();
+
+        Assertions.assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("the cache never grows past its maximum size")
+    public void size_StaysBounded_WhenManyIdsAreLoaded() {
+        CustomerCache cache = cache(160, Duration.ofMinutes(1));
+
+        for (int id = 0; id < 10_000; id++) {
+            cache.get(id, loader).block();
+        }
+
+        Assertions.assertThat(cache.size()).isLessThanOrEqualTo(160);
+        StepVerifier.create(cache.get(9_999, loader)).expectNext(customer.withId(9_999)).verifyComplete();
+    }
+}
@@ -0,0 +1,155 @@
+package com.gabrielkuhn.webfluxplayground.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CursoredCustomer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+class CustomerJsonCodecTest {
+
+    private static final ResolvableType CUSTOMER = ResolvableType.forClass(Customer.class);
+    private static final ResolvableType LIST = ResolvableType.forClassWithGenerics(List.class, Customer.class);
+
+    private final CustomerJsonEncoder encoder = new CustomerJsonEncoder();
+    private final CustomerJsonDecoder decoder = new CustomerJsonDecoder();
+
+    @Test
+    @DisplayName("encode writes the same JSON as Jackson, including escapes and non-ASCII names")
+    public void encode_MatchesJackson_WhenNameNeedsEscaping() throws Exception {
+        Customer customer = new Customer(-42, "b\"o\\b\n\u0001 é € 😀", 7);
+
+        Assertions.assertThat(encode(Mono.just(customer), MediaType.APPLICATION_JSON))
+                .isEqualTo(new ObjectMapper().writeValueAsString(customer));
+        Assertions.assertThat(encode(Mono.just(new Customer(null, null, null)), MediaType.APPLICATION_JSON))
+                .isEqualTo("{\"id\":null,\"name\":null,\"version\":null}");
+    }
+
+    @Test
+    @DisplayName("encode writes a flux as a JSON array or as one line per customer for NDJSON")
+    public void encode_WritesArrayOrLines_WhenInputIsFlux() {
+        Flux<Customer> customers = Flux.just(new Customer(1, "bob", 0), new Customer(10, "ann", 2));
+
+        Assertions.assertThat(encode(customers, MediaType.APPLICATION_JSON))
+                .isEqualTo("[{\"id\":1,\"name\":\"bob\",\"version\":0},{\"id\":10,\"name\":\"ann\",\"version\":2}]");
+        Assertions.assertThat(encode(customers, MediaType.APPLICATION_NDJSON))
+                .isEqualTo("{\"id\":1,\"name\":\"bob\",\"version\":0}\n{\"id\":10,\"name\":\"ann\",\"version\":2}\n");
+        Assertions.assertThat(encode(Flux.<Customer>empty(), MediaType.APPLICATION_JSON)).isEqualTo("[]");
+    }
+
+    @Test
+    @DisplayName("encode writes a cursored customer as the customer with a trailing cursor, as Jackson would")
+    public void encode_AppendsCursor_WhenCustomerIsCursored() throws Exception {
+        CursoredCustomer cursored = CursoredCustomer.of(new Customer(10, "ann", 2));
+
+        Assertions.assertThat(encode(Flux.just(cursored), MediaType.APPLICATION_NDJSON))
+                .isEqualTo(new ObjectMapper().writeValueAsString(cursored) + "\n")
+                .startsWith("{\"id\":10,\"name\":\"ann\",\"version\":2,\"cursor\":\"" + cursored.getCursor() + "\"}");
+    }
+
+    @Test
+    @DisplayName("encode writes a list or array of customers, as returned in a response entity, as a JSON array")
+    public void encode_WritesArray_WhenValueIsListOrArray() throws Exception {
+        List<Customer> customers = List.of(new Customer(1, "bob", 0), new Customer(10, "ann", 2));
+        String expected = new ObjectMapper().writeValueAsString(customers);
+
+        Assertions.assertThat(encodeValue(customers, LIST)).isEqualTo(expected);
+        Assertions.assertThat(encodeValue(customers.toArray(new Customer[0]),
+                ResolvableType.forClass(Customer[].class))).isEqualTo(expected);
+        Assertions.assertThat(encodeValue(List.of(), LIST)).isEqualTo("[]");
+    }
+
+    @Test
+    @DisplayName("decode emits customers from an array split across buffers and ignores unknown properties")
+    public void decode_ReturnsCustomers_WhenArrayIsSplitAcrossBuffers() {
+        Flux<DataBuffer> input = buffers("[{\"id\":1,\"na", "me\":\"bob\",\"extra\":{\"a\":[1]}},",
+                "{\"name\":\"ann\",\"version\":\"3\"}]");
+
+        StepVerifier.create(decoder.decode(input, CUSTOMER, MediaType.APPLICATION_JSON, Collections.emptyMap()))
+                .expectNext(new Customer(1, "bob", null))
+                .expectNext(new Customer(null, "ann", 3))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("decode reads one customer per line for NDJSON and a single object for a mono")
+    public void decode_ReturnsCustomers_WhenBodyIsNdjsonOrSingleObject() {
+        StepVerifier.create(decoder.decode(buffers("{\"name\":\"bob\"}\n{\"name\":\"ann\"}\n"), CUSTOMER,
+                        MediaType.APPLICATION_NDJSON, Collections.emptyMap()))
+                .expectNext(new Customer(null, "bob", null), new Customer(null, "ann", null))
+                .verifyComplete();
+
+        StepVerifier.create(decoder.decodeToMono(buffers("{\"id\":5,\"name\":\"bob\"}"), CUSTOMER,
+                        MediaType.APPLICATION_JSON, Collections.emptyMap()))
+                .expectNext(new Customer(5, "bob", null))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("decode returns a decoding error when the body is malformed or truncated")
+    public void decode_ReturnsDecodingError_WhenJsonIsInvalid() {
+        StepVerifier.create(decoder.decodeToMono(buffers("{\"id\":\"one\"}"), CUSTOMER,
+                        MediaType.APPLICATION_JSON, Collections.emptyMap()))
+                .verifyError(DecodingException.class);
+
+        StepVerifier.create(decoder.decode(buffers("[{\"id\":1"), CUSTOMER,
+                        MediaType.APPLICATION_JSON, Collections.emptyMap()))
+                .verifyError(DecodingException.class);
+    }
+
+    @Test
+    @DisplayName("canEncode and canDecode only claim customers, leaving other types to Jackson")
+    public void canEncodeAndDecode_OnlyAcceptCustomers() {
+        MimeType json = MediaType.APPLICATION_JSON;
+
+        Assertions.assertThat(encoder.canEncode(CUSTOMER, json)).isTrue();
+        Assertions.assertThat(encoder.canEncode(LIST, json)).isTrue();
+        Assertions.assertThat(encoder.canEncode(ResolvableType.forClass(Customer[].class), json)).isTrue();
+        Assertions.assertThat(encoder.canEncode(ResolvableType.forClassWithGenerics(List.class, String.class), json))
+                .isFalse();
+        Assertions.assertThat(encoder.canEncode(ResolvableType.forClass(List.class), json)).isFalse();
+        Assertions.assertThat(decoder.canDecode(CUSTOMER, json)).isTrue();
+        Assertions.assertThat(encoder.canEncode(ResolvableType.forClass(Object.class), json)).isFalse();
+        Assertions.assertThat(decoder.canDecode(ResolvableType.forClass(String.class), json)).isFalse();
+    }
+
+    private String encode(Publisher<?> customers, MediaType mediaType) {
+        return DataBufferUtils.join(encoder.encode(customers, DefaultDataBufferFactory.sharedInstance, CUSTOMER,
+                        mediaType, Collections.emptyMap()))
+                .map(buffer -> {
+                    String json = buffer.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(buffer);
+                    return json;
+                })
+                .block();
+    }
+
+    private String encodeValue(Object value, ResolvableType valueType) {
+        DataBuffer buffer = encoder.encodeValue(value, DefaultDataBufferFactory.sharedInstance, valueType,
+                MediaType.APPLICATION_JSON, Collections.emptyMap());
+        String json = buffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(buffer);
+        return json;
+    }
+
+    private static Flux<DataBuffer> buffers(String... chunks) {
+        return Flux.fromArray(chunks)
+                .map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+    }
+}
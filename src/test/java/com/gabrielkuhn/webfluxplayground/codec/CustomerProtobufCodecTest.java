@@ -0,0 +1,110 @@
+package com.gabrielkuhn.webfluxplayground.codec;
+
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CursoredCustomer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+class CustomerProtobufCodecTest {
+
+    private static final ResolvableType CUSTOMER = ResolvableType.forClass(Customer.class);
+
+    private final CustomerProtobufEncoder encoder = new CustomerProtobufEncoder();
+    private final CustomerProtobufDecoder decoder = new CustomerProtobufDecoder();
+
+    @Test
+    @DisplayName("encode writes a single customer as a protobuf message and leaves out null fields")
+    public void encode_WritesMessage_WhenInputIsMono() {
+        Assertions.assertThat(encode(Mono.just(new Customer(1, "bob", 0))))
+                .containsExactly(0x08, 0x01, 0x12, 0x03, 'b', 'o', 'b', 0x18, 0x00);
+        Assertions.assertThat(encode(Mono.just(new Customer(null, "bob", null))))
+                .containsExactly(0x12, 0x03, 'b', 'o', 'b');
+    }
+
+    @Test
+    @DisplayName("encode prefixes every customer of a flux with its length")
+    public void encode_WritesDelimitedMessages_WhenInputIsFlux() {
+        Assertions.assertThat(encode(Flux.just(new Customer(1, "bob", 0), new Customer(300, null, null))))
+                .containsExactly(0x09, 0x08, 0x01, 0x12, 0x03, 'b', 'o', 'b', 0x18, 0x00,
+                        0x03, 0x08, 0xac, 0x02);
+    }
+
+    @Test
+    @DisplayName("encode adds the stream cursor as field 4, which readers of plain customers skip")
+    public void encode_WritesCursorField_WhenCustomerIsCursored() {
+        CursoredCustomer cursored = CursoredCustomer.of(new Customer(1, "bob", 0));
+        byte[] cursor = cursored.getCursor().getBytes(StandardCharsets.US_ASCII);
+        byte[] bytes = encode(Flux.just(cursored));
+
+        Assertions.assertThat(bytes[0]).isEqualTo((byte) (9 + 2 + cursor.length));
+        Assertions.assertThat(bytes[10]).isEqualTo((byte) 0x22);
+        Assertions.assertThat(bytes[11]).isEqualTo((byte) cursor.length);
+        Assertions.assertThat(Arrays.copyOfRange(bytes, 12, bytes.length)).isEqualTo(cursor);
+        StepVerifier.create(decoder.decode(Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(bytes)), CUSTOMER,
+                        CustomerProtobuf.MEDIA_TYPE, Collections.emptyMap()))
+                .expectNext(cursored.getCustomer())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("decode reads back delimited customers split across buffers at every byte")
+    public void decode_ReturnsCustomers_WhenMessagesAreSplitAcrossBuffers() {
+        Customer[] customers = {new Customer(-42, "b\"o\\b é € 😀", 7), new Customer(null, null, null),
+                new Customer(Integer.MAX_VALUE, "x".repeat(200), 0)};
+        byte[] bytes = encode(Flux.just(customers));
+
+        Flux<DataBuffer> input = Flux.fromStream(IntStream.range(0, bytes.length)
+                .mapToObj(i -> DefaultDataBufferFactory.sharedInstance.wrap(new byte[]{bytes[i]})));
+
+        StepVerifier.create(decoder.decode(input, CUSTOMER, CustomerProtobuf.MEDIA_TYPE, Collections.emptyMap()))
+                .expectNext(customers)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("decodeToMono reads a single customer and skips unknown fields")
+    public void decodeToMono_ReturnsCustomer_WhenMessageHasUnknownFields() {
+        byte[] bytes = {0x08, 0x05, 0x22, 0x02, 'h', 'i', 0x12, 0x03, 'a', 'n', 'n', 0x28, 0x01};
+
+        StepVerifier.create(decoder.decodeToMono(Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(bytes)),
+                        CUSTOMER, CustomerProtobuf.MEDIA_TYPE, Collections.emptyMap()))
+                .expectNext(new Customer(5, "ann", null))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("decode fails when the stream ends in the middle of a message")
+    public void decode_ReturnsError_WhenStreamIsTruncated() {
+        byte[] bytes = {0x09, 0x08, 0x01, 0x12};
+
+        StepVerifier.create(decoder.decode(Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(bytes)), CUSTOMER,
+                        CustomerProtobuf.MEDIA_TYPE, Collections.emptyMap()))
+                .verifyError(DecodingException.class);
+    }
+
+    private byte[] encode(Publisher<?> customers) {
+        return DataBufferUtils.join(encoder.encode(customers, DefaultDataBufferFactory.sharedInstance, CUSTOMER,
+                        CustomerProtobuf.MEDIA_TYPE, Collections.emptyMap()))
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    return bytes;
+                })
+                .block();
+    }
+}
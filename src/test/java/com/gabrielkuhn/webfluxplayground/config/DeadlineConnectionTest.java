@@ -0,0 +1,120 @@
+package com.gabrielkuhn.webfluxplayground.config;
+
+import com.gabrielkuhn.webfluxplayground.deadline.RequestDeadline;
+import com.gabrielkuhn.webfluxplayground.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.Wrapped;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+class DeadlineConnectionTest {
+
+    private final PostgresqlConnection postgres = Mockito.mock(PostgresqlConnection.class);
+
+    /**
+     * Stands in for the pool's connection, which wraps the driver's.
+     */
+    private final Connection pooled =
+            Mockito.mock(Connection.class, Mockito.withSettings().extraInterfaces(Wrapped.class));
+
+    private final Statement statement = Mockito.mock(Statement.class);
+    private final StatementTimeouts statementTimeouts = new StatementTimeouts();
+    private final Counter cancelled = new SimpleMeterRegistry().counter("r2dbc.queries.cancelled");
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        Wrapped<Connection> wrapped = (Wrapped<Connection>) pooled;
+        BDDMockito.doReturn(postgres).when(wrapped).unwrap();
+        BDDMockito.doReturn(postgres).when(wrapped).unwrap(PostgresqlConnection.class);
+        BDDMockito.doReturn(statement).when(pooled).createStatement(ArgumentMatchers.anyString());
+        BDDMockito.doReturn(true).when(pooled).isAutoCommit();
+        BDDMockito.doReturn(Mono.empty()).when(pooled).setStatementTimeout(ArgumentMatchers.any());
+        BDDMockito.doReturn(Mono.empty()).when(pooled).close();
+        BDDMockito.doReturn(Mono.empty()).when(postgres).cancelRequest();
+        BDDMockito.doReturn(Flux.empty()).when(statement).execute();
+    }
+
+    @Test
+    @DisplayName("execute only changes the statement timeout when the deadline rounds to a different one")
+    public void execute_SetsStatementTimeoutOnce_WhenDeadlinesRoundToSameTimeout() {
+        execute(RequestDeadline.after(Duration.ofMillis(4_500)));
+        execute(RequestDeadline.after(Duration.ofMillis(4_700)));
+
+        BDDMockito.verify(pooled, Mockito.times(1)).setStatementTimeout(Duration.ofSeconds(5));
+
+        execute(null);
+
+        BDDMockito.verify(pooled).setStatementTimeout(Duration.ZERO);
+        Assertions.assertThat(statementTimeouts.isApplied(pooled)).isFalse();
+    }
+
+    @Test
+    @DisplayName("execute fails without querying when the deadline has already passed")
+    public void execute_FailsWithoutQuerying_WhenDeadlineHasPassed() {
+        RequestDeadline deadline = new RequestDeadline(System.nanoTime() - 1);
+        DeadlineConnection connection = new DeadlineConnection(pooled, deadline, statementTimeouts, cancelled);
+
+        StepVerifier.create(connection.createStatement("SELECT 1").execute())
+                .expectError(DeadlineExceededException.class)
+                .verify();
+
+        BDDMockito.verify(statement, Mockito.never()).execute();
+    }
+
+    @Test
+    @DisplayName("execute cancels the query on the server before releasing the connection when the deadline passes")
+    public void execute_CancelsQueryOnServer_WhenDeadlineExpires() {
+        BDDMockito.doReturn(Flux.never()).when(statement).execute();
+        DeadlineConnection connection =
+                new DeadlineConnection(pooled, RequestDeadline.after(Duration.ofMillis(20)), statementTimeouts,
+                        cancelled);
+
+        StepVerifier.create(connection.createStatement("SELECT pg_sleep(10)").execute())
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .thenCancel()
+                .verify();
+        StepVerifier.create(connection.close()).verifyComplete();
+
+        BDDMockito.verify(postgres).cancelRequest();
+        BDDMockito.verify(pooled).close();
+        Assertions.assertThat(cancelled.count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("execute leaves the query alone on the server when it is cancelled within the deadline")
+    public void execute_DoesNotCancelOnServer_WhenDeadlineIsAhead() {
+        BDDMockito.doReturn(Flux.never()).when(statement).execute();
+        DeadlineConnection connection =
+                new DeadlineConnection(pooled, RequestDeadline.after(Duration.ofSeconds(10)), statementTimeouts,
+                        cancelled);
+
+        StepVerifier.create(connection.createStatement("SELECT 1").execute())
+                .expectSubscription()
+                .thenCancel()
+                .verify();
+
+        BDDMockito.verify(postgres, Mockito.never()).cancelRequest();
+        Assertions.assertThat(cancelled.count()).isZero();
+    }
+
+    private void execute(RequestDeadline deadline) {
+        DeadlineConnection connection = new DeadlineConnection(pooled, deadline, statementTimeouts, cancelled);
+        StepVerifier.create(connection.createStatement("SELECT 1").execute()).verifyComplete();
+    }
+}
@@ -0,0 +1,71 @@
+package com.gabrielkuhn.webfluxplayground.config;
+
+import com.gabrielkuhn.webfluxplayground.exception.ServiceUnavailableException;
+import com.gabrielkuhn.webfluxplayground.timing.RequestTiming;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+class InstrumentedConnectionFactoryTest {
+
+    private final ConnectionFactory pool = Mockito.mock(ConnectionFactory.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final InstrumentedConnectionFactory connectionFactory =
+            new InstrumentedConnectionFactory(pool, () -> meterRegistry, "connectionFactory");
+
+    @Test
+    @DisplayName("create records the acquisition time when a connection is available")
+    public void create_RecordsAcquisition_WhenSuccessful() {
+        Connection connection = Mockito.mock(Connection.class);
+        BDDMockito.doReturn(Mono.just(connection)).when(pool).create();
+
+        StepVerifier.create(Mono.<Connection>from(connectionFactory.create()))
+                .expectNext(connection)
+                .verifyComplete();
+
+        Assertions.assertThat(meterRegistry.get("r2dbc.pool.acquire").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("create fails with service unavailable when the pool stays exhausted")
+    public void create_ReturnsServiceUnavailable_WhenAcquireTimesOut() {
+        BDDMockito.doReturn(Mono.error(new R2dbcTimeoutException("acquire timed out"))).when(pool).create();
+
+        StepVerifier.create(Mono.<Connection>from(connectionFactory.create()))
+                .expectError(ServiceUnavailableException.class)
+                .verify();
+
+        Assertions.assertThat(meterRegistry.get("r2dbc.pool.exhausted").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("create adds acquisition and hold time to the timing of the request")
+    public void create_RecordsRequestTiming_WhenRequestIsTimed() {
+        Connection connection = Mockito.mock(Connection.class);
+        BDDMockito.doReturn(Mono.just(connection)).when(pool).create();
+        BDDMockito.doReturn(Mono.empty()).when(connection).close();
+        RequestTiming timing = new RequestTiming(System.nanoTime());
+
+        StepVerifier.create(Mono.from(connectionFactory.create())
+                        .flatMap(acquired -> Mono.delay(Duration.ofMillis(5)).then(Mono.from(acquired.close())))
+                        .contextWrite(context -> RequestTiming.put(context, timing)))
+                .verifyComplete();
+
+        Assertions.assertThat(timing.get(RequestTiming.Phase.ACQUIRE)).isPositive();
+        Assertions.assertThat(timing.get(RequestTiming.Phase.DB))
+                .isGreaterThanOrEqualTo(Duration.ofMillis(5).toNanos());
+        BDDMockito.verify(connection).close();
+    }
+}
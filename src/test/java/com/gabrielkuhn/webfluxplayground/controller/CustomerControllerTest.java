@@ -1,8 +1,18 @@
 package com.gabrielkuhn.webfluxplayground.controller;
 
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
 import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerChange;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerCursor;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerTableStats;
+import com.gabrielkuhn.webfluxplayground.event.CustomerChangeFeed;
+import com.gabrielkuhn.webfluxplayground.exception.AmbiguousIfMatchException;
+import com.gabrielkuhn.webfluxplayground.exception.CustomerNotFoundException;
+import com.gabrielkuhn.webfluxplayground.exception.CustomerVersionMismatchException;
+import com.gabrielkuhn.webfluxplayground.exception.TooManyIdsException;
 import com.gabrielkuhn.webfluxplayground.service.CustomerService;
 import com.gabrielkuhn.webfluxplayground.util.CustomerFactory;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -11,11 +21,16 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.util.List;
+
 @ExtendWith(SpringExtension.class)
 class CustomerControllerTest {
     @InjectMocks
@@ -24,6 +39,12 @@ class CustomerControllerTest {
     @Mock
     private CustomerService customerService;
 
+    @Spy
+    private CustomerProperties customerProperties = new CustomerProperties();
+
+    @Mock
+    private CustomerChangeFeed customerChangeFeed;
+
     private final Customer customer = CustomerFactory.get();
 
     @BeforeEach
@@ -31,13 +52,19 @@ class CustomerControllerTest {
         BDDMockito.when(customerService.findAll())
                 .thenReturn(Flux.just(customer));
 
+        BDDMockito.when(customerService.findAllAfter(ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.just(customer));
+
         BDDMockito.when(customerService.findById(ArgumentMatchers.anyInt()))
                 .thenReturn(Mono.just(customer));
 
+        BDDMockito.when(customerService.findAllById(List.of(1)))
+                .thenReturn(Flux.just(customer));
+
         BDDMockito.when(customerService.save(CustomerFactory.builder().build()))
                 .thenReturn(Mono.just(customer));
 
-        BDDMockito.when(customerService.delete(ArgumentMatchers.anyInt()))
+        BDDMockito.when(customerService.delete(ArgumentMatchers.anyInt(), ArgumentMatchers.isNull()))
                 .thenReturn(Mono.empty());
 
         BDDMockito.when(customerService.update(customer))
@@ -47,7 +74,78 @@ class CustomerControllerTest {
     @Test
     @DisplayName("findAll returns a flux of customer")
     public void findAll_ReturnsFluxOfCustomers_WhenSuccessful() {
+        CustomerTableStats stats = new CustomerTableStats(1, 0, 1000003);
+        BDDMockito.when(customerService.findAllStats())
+                .thenReturn(Mono.just(stats));
+
         StepVerifier.create(customerController.findAll())
+                .expectSubscription()
+                .assertNext(response -> {
+                    Assertions.assertThat(response.getHeaders().getETag()).isEqualTo(CustomerETag.of(stats));
+                    Assertions.assertThat(response.getHeaders().getETag()).startsWith("W/");
+                    Assertions.assertThat(response.getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT);
+                    StepVerifier.create(response.getBody())
+                            .expectNext(customer)
+                            .verifyComplete();
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("streamEvents tags every customer with a resumable cursor")
+    public void streamEvents_ReturnsEventsWithCursor_WhenSuccessful() {
+        StepVerifier.create(customerController.streamEvents(null, null))
+                .expectSubscription()
+                .assertNext(event -> {
+                    Assertions.assertThat(event.data()).isEqualTo(customer);
+                    Assertions.assertThat(CustomerCursor.decode(event.id())).isEqualTo(customer.getId());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("changeEvents names every event after its change type and identifies it by sequence")
+    public void changeEvents_ReturnsEventsWithSequenceId_WhenSuccessful() {
+        BDDMockito.when(customerChangeFeed.changes(5L))
+                .thenReturn(Flux.just(new CustomerChange(6, CustomerChange.Type.DELETED, 1, null)));
+
+        StepVerifier.create(customerController.changeEvents(5L))
+                .assertNext(event -> {
+                    Assertions.assertThat(event.id()).isEqualTo("6");
+                    Assertions.assertThat(event.event()).isEqualTo("deleted");
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAllById returns a flux of the requested customers")
+    public void findAllById_ReturnsFluxOfCustomers_WhenSuccessful() {
+        StepVerifier.create(customerController.findAllById(List.of(1)))
+                .expectSubscription()
+                .expectNext(customer)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAllById rejects more ids than the configured maximum without querying")
+    public void findAllById_ReturnsBadRequest_WhenTooManyIds() {
+        customerProperties.getLookup().setMaxIds(2);
+
+        StepVerifier.create(customerController.findAllById(List.of(1, 2, 3)))
+                .expectSubscription()
+                .expectError(TooManyIdsException.class)
+                .verify();
+
+        BDDMockito.verify(customerService, Mockito.never()).findAllById(ArgumentMatchers.any());
+    }
+
+    @Test
+    @DisplayName("search caps the requested limit at the configured maximum")
+    public void search_CapsLimit_WhenLimitIsTooLarge() {
+        BDDMockito.when(customerService.search("b", 100))
+                .thenReturn(Flux.just(customer));
+
+        StepVerifier.create(customerController.search("b", 1_000))
                 .expectSubscription()
                 .expectNext(customer)
                 .verifyComplete();
@@ -58,7 +156,10 @@ class CustomerControllerTest {
     public void findById_ReturnsMonoCustomer_WhenSuccessful() {
         StepVerifier.create(customerController.findById(1))
                 .expectSubscription()
-                .expectNext(customer)
+                .assertNext(response -> {
+                    Assertions.assertThat(response.getBody()).isEqualTo(customer);
+                    Assertions.assertThat(response.getHeaders().getETag()).isEqualTo(CustomerETag.of(customer));
+                })
                 .verifyComplete();
     }
 
@@ -88,9 +189,71 @@ class CustomerControllerTest {
     @Test
     @DisplayName("delete removes the customer when successful")
     public void delete_RemovesCustomer_WhenSuccessful() {
-        StepVerifier.create(customerController.delete(1))
+        StepVerifier.create(customerController.delete(1, null))
+                .expectSubscription()
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("update passes the If-Match version on to the service")
+    public void update_UsesIfMatchVersion_WhenHeaderIsPresent() {
+        BDDMockito.when(customerService.update(customer.withVersion(3)))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(customerController.update(1, "\"3\"", customer))
+                .expectSubscription()
+                .verifyComplete();
+
+        BDDMockito.verify(customerService).update(customer.withVersion(3));
+    }
+
+    @Test
+    @DisplayName("update ignores the version in the body when there is no If-Match header")
+    public void update_ClearsBodyVersion_WhenIfMatchIsAbsent() {
+        BDDMockito.when(customerService.update(customer.withVersion(null)))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(customerController.update(1, null, customer.withVersion(7)))
+                .expectSubscription()
+                .verifyComplete();
+
+        BDDMockito.verify(customerService).update(customer.withVersion(null));
+    }
+
+    @Test
+    @DisplayName("update uses the strong version of an If-Match list and skips the weak entries")
+    public void update_UsesStrongVersion_WhenIfMatchListHasWeakEntries() {
+        BDDMockito.when(customerService.update(customer.withVersion(3)))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(customerController.update(1, "W/\"2\", \"3\"", customer))
                 .expectSubscription()
                 .verifyComplete();
+
+        BDDMockito.verify(customerService).update(customer.withVersion(3));
+    }
+
+    @Test
+    @DisplayName("delete returns bad request when If-Match lists different versions")
+    public void delete_ReturnsBadRequest_WhenIfMatchListsDifferentVersions() {
+        StepVerifier.create(customerController.delete(1, "\"2\", \"3\""))
+                .expectSubscription()
+                .expectError(AmbiguousIfMatchException.class)
+                .verify();
+
+        BDDMockito.verify(customerService, Mockito.never()).delete(ArgumentMatchers.anyInt(), ArgumentMatchers.any());
+    }
+
+    @Test
+    @DisplayName("delete returns precondition failed when If-Match is * and the customer does not exist")
+    public void delete_ReturnsPreconditionFailed_WhenIfMatchAnyAndCustomerIsMissing() {
+        BDDMockito.when(customerService.delete(1, null))
+                .thenReturn(Mono.error(new CustomerNotFoundException()));
+
+        StepVerifier.create(customerController.delete(1, "*"))
+                .expectSubscription()
+                .expectError(CustomerVersionMismatchException.class)
+                .verify();
     }
 
     @Test
@@ -99,7 +262,7 @@ class CustomerControllerTest {
         BDDMockito.when(customerService.save(customer))
                 .thenReturn(Mono.just(customer));
 
-        StepVerifier.create(customerController.update(1, customer))
+        StepVerifier.create(customerController.update(1, null, customer))
                 .expectSubscription()
                 .verifyComplete();
     }
@@ -0,0 +1,127 @@
+package com.gabrielkuhn.webfluxplayground.deadline;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+class DeadlineFilterTest {
+
+    private final CustomerProperties customerProperties = new CustomerProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicReference<RequestDeadline> deadline = new AtomicReference<>();
+
+    /**
+     * Captures the deadline the request was given and answers straight away.
+     */
+    private final WebFilterChain chain = exchange -> Mono.deferContextual(context -> {
+        deadline.set(RequestDeadline.get(context));
+        return exchange.getResponse().setComplete();
+    });
+
+    @Test
+    @DisplayName("filter rejects the request without serving it when its deadline has already passed")
+    public void filter_RejectsRequest_WhenDeadlineHasPassed() {
+        AtomicBoolean served = new AtomicBoolean();
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers/1")
+                .header(DeadlineFilter.REQUEST_HEADER, "0"));
+
+        StepVerifier.create(filter().filter(exchange, request -> Mono.fromRunnable(() -> served.set(true))))
+                .expectError(DeadlineExceededException.class)
+                .verify();
+
+        Assertions.assertThat(served).isFalse();
+        Assertions.assertThat(count("rejected")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("filter fails the request with deadline exceeded when it is still running at its deadline")
+    public void filter_FailsRequest_WhenDeadlineExpires() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers/1")
+                .header(DeadlineFilter.REQUEST_HEADER, "20"));
+
+        StepVerifier.create(filter().filter(exchange, request -> Mono.never()))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(5));
+
+        Assertions.assertThat(count("expired")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("filter gives the request the default of its route when the client sends no timeout")
+    public void filter_UsesRouteDefault_WhenHeaderIsMissing() {
+        customerProperties.getDeadline().getRoutes().put("/customers/search", Duration.ofSeconds(2));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers/search")
+                .queryParam("prefix", "al"));
+
+        filter().filter(exchange, chain).block();
+
+        Assertions.assertThat(deadline.get()).isNotNull();
+        Assertions.assertThat(deadline.get().remaining())
+                .isLessThanOrEqualTo(Duration.ofSeconds(2))
+                .isGreaterThan(Duration.ofSeconds(1));
+    }
+
+    @Test
+    @DisplayName("filter caps the timeout asked for by the client at the configured maximum")
+    public void filter_CapsTimeout_WhenHeaderExceedsMaximum() {
+        customerProperties.getDeadline().setMaxTimeout(Duration.ofSeconds(1));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers/1")
+                .header(DeadlineFilter.REQUEST_HEADER, "3600000"));
+
+        filter().filter(exchange, chain).block();
+
+        Assertions.assertThat(deadline.get().remaining()).isLessThanOrEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    @DisplayName("filter leaves streaming requests without a deadline when the client sends no timeout")
+    public void filter_AddsNoDeadline_WhenStreamingWithoutHeader() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers")
+                .accept(MediaType.APPLICATION_NDJSON));
+
+        filter().filter(exchange, chain).block();
+
+        Assertions.assertThat(deadline.get()).isNull();
+    }
+
+    @Test
+    @DisplayName("filter marks the deadline cancelled when the client goes away")
+    public void filter_CountsCancellation_WhenClientGoesAway() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers/1"));
+
+        StepVerifier.create(filter().filter(exchange, request -> Mono.deferContextual(context -> {
+                    deadline.set(RequestDeadline.get(context));
+                    return Mono.never();
+                })))
+                .expectSubscription()
+                .thenCancel()
+                .verify();
+
+        Assertions.assertThat(deadline.get().isCancelled()).isTrue();
+        Assertions.assertThat(count("cancelled")).isEqualTo(1);
+    }
+
+    private DeadlineFilter filter() {
+        DeadlineFilter filter = new DeadlineFilter(customerProperties);
+        filter.bindTo(meterRegistry);
+        return filter;
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("customers.deadline.requests").tag("outcome", outcome).functionCounter().count();
+    }
+}
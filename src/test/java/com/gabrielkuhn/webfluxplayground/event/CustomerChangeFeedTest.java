@@ -0,0 +1,129 @@
+package com.gabrielkuhn.webfluxplayground.event;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerChange;
+import com.gabrielkuhn.webfluxplayground.util.CustomerFactory;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+class CustomerChangeFeedTest {
+
+    private final CustomerProperties customerProperties = new CustomerProperties();
+
+    @Test
+    @DisplayName("changes only emits changes published after subscribing when no last event id is given")
+    public void changes_EmitsLiveChanges_WhenNoLastEventId() {
+        CustomerChangeFeed feed = new CustomerChangeFeed(customerProperties);
+        feed.publish(CustomerChange.Type.CREATED, 1, CustomerFactory.get());
+
+        StepVerifier.create(feed.changes(null).map(CustomerChange::getSequence))
+                .then(() -> feed.publish(CustomerChange.Type.DELETED, 1, null))
+                .expectNext(2L)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("changes replays the history after the last event id before emitting live changes")
+    public void changes_ResumesFromHistory_WhenLastEventIdIsGiven() {
+        customerProperties.getChanges().setHistorySize(2);
+        CustomerChangeFeed feed = new CustomerChangeFeed(customerProperties);
+        for (int id = 1; id <= 4; id++) {
+            feed.publish(CustomerChange.Type.CREATED, id, CustomerFactory.get());
+        }
+
+        StepVerifier.create(feed.changes(2L).map(CustomerChange::getSequence))
+                .expectNext(3L, 4L)
+                .then(() -> feed.publish(CustomerChange.Type.DELETED, 1, null))
+                .expectNext(5L)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("changes replays nothing and follows live changes when resuming from the latest event id")
+    public void changes_EmitsLiveChanges_WhenLastEventIdIsLatest() {
+        CustomerChangeFeed feed = new CustomerChangeFeed(customerProperties);
+        for (int id = 1; id <= 3; id++) {
+            feed.publish(CustomerChange.Type.CREATED, id, CustomerFactory.get());
+        }
+
+        StepVerifier.create(feed.changes(3L).map(CustomerChange::getSequence))
+                .expectSubscription()
+                .expectNoEvent(Duration.ZERO)
+                .then(() -> feed.publish(CustomerChange.Type.DELETED, 1, null))
+                .expectNext(4L)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("changes starts with a reset when changes after the last event id have left the history")
+    public void changes_EmitsReset_WhenLastEventIdIsOlderThanHistory() {
+        customerProperties.getChanges().setHistorySize(2);
+        CustomerChangeFeed feed = new CustomerChangeFeed(customerProperties);
+        for (int id = 1; id <= 4; id++) {
+            feed.publish(CustomerChange.Type.CREATED, id, CustomerFactory.get());
+        }
+
+        StepVerifier.create(feed.changes(1L))
+                .expectNext(new CustomerChange(2, CustomerChange.Type.RESET, 0, null))
+                .expectNextMatches(change -> change.getSequence() == 3)
+                .expectNextMatches(change -> change.getSequence() == 4)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("changes starts with a reset when the last event id was never issued by this process")
+    public void changes_EmitsReset_WhenLastEventIdIsUnknown() {
+        CustomerChangeFeed feed = new CustomerChangeFeed(customerProperties);
+        feed.publish(CustomerChange.Type.CREATED, 1, CustomerFactory.get());
+
+        StepVerifier.create(feed.changes(42L))
+                .expectNext(new CustomerChange(1, CustomerChange.Type.RESET, 0, null))
+                .then(() -> feed.publish(CustomerChange.Type.DELETED, 1, null))
+                .expectNextMatches(change -> change.getSequence() == 2)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("changes drops the oldest buffered changes of a subscriber that is not keeping up")
+    public void changes_DropsOldest_WhenBufferOverflows() {
+        customerProperties.getChanges().setBufferSize(2);
+        CustomerChangeFeed feed = new CustomerChangeFeed(customerProperties);
+
+        StepVerifier.create(feed.changes(null).map(CustomerChange::getSequence), 0)
+                .then(() -> {
+                    for (int id = 1; id <= 4; id++) {
+                        feed.publish(CustomerChange.Type.CREATED, id, CustomerFactory.get());
+                    }
+                })
+                .thenRequest(2)
+                .expectNext(3L, 4L)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("changes completes the stream of a slow subscriber when the overflow policy is disconnect")
+    public void changes_Disconnects_WhenBufferOverflowsAndPolicyIsDisconnect() {
+        customerProperties.getChanges().setBufferSize(2);
+        customerProperties.getChanges().setOverflow(CustomerProperties.Changes.Overflow.DISCONNECT);
+        CustomerChangeFeed feed = new CustomerChangeFeed(customerProperties);
+
+        StepVerifier.create(feed.changes(null).map(CustomerChange::getSequence), 0)
+                .then(() -> {
+                    for (int id = 1; id <= 4; id++) {
+                        feed.publish(CustomerChange.Type.CREATED, id, CustomerFactory.get());
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .expectNext(1L, 2L)
+                .verifyComplete();
+    }
+}
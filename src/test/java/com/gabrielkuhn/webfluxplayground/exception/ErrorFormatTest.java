@@ -0,0 +1,40 @@
+package com.gabrielkuhn.webfluxplayground.exception;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+class ErrorFormatTest {
+
+    @Test
+    @DisplayName("negotiate picks the preferred binary format and falls back to json for anything else")
+    public void negotiate_ReturnsAcceptedFormat_WhenBinaryFormatIsAccepted() {
+        Assertions.assertThat(ErrorFormat.negotiate(MediaType.parseMediaTypes("application/x-protobuf")))
+                .isEqualTo(ErrorFormat.PROTOBUF);
+        Assertions.assertThat(ErrorFormat.negotiate(
+                        MediaType.parseMediaTypes("application/json;q=0.5, application/x-jackson-smile")))
+                .isEqualTo(ErrorFormat.SMILE);
+        Assertions.assertThat(ErrorFormat.negotiate(MediaType.parseMediaTypes("application/x-ndjson")))
+                .isEqualTo(ErrorFormat.JSON);
+        Assertions.assertThat(ErrorFormat.negotiate(MediaType.parseMediaTypes("*/*")))
+                .isEqualTo(ErrorFormat.JSON);
+        Assertions.assertThat(ErrorFormat.negotiate(List.of()))
+                .isEqualTo(ErrorFormat.JSON);
+    }
+
+    @Test
+    @DisplayName("render writes the same attributes in every format")
+    public void render_WritesStatusErrorAndMessage_WhenFormatIsBinary() throws Exception {
+        byte[] smile = ErrorFormat.SMILE.render(404, "Not Found", "Customer not found");
+
+        Assertions.assertThat(new ObjectMapper(new SmileFactory()).readTree(smile).get("message").asText())
+                .isEqualTo("Customer not found");
+        Assertions.assertThat(ErrorFormat.PROTOBUF.render(404, "Not Found", null))
+                .containsExactly(0x08, 0x94, 0x03, 0x12, 0x09, 'N', 'o', 't', ' ', 'F', 'o', 'u', 'n', 'd');
+    }
+}
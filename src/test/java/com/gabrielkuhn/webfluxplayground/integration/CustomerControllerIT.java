@@ -1,19 +1,33 @@
 package com.gabrielkuhn.webfluxplayground.integration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.gabrielkuhn.webfluxplayground.codec.CustomerProtobuf;
+import com.gabrielkuhn.webfluxplayground.codec.CustomerProtobufDecoder;
 import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerBatchResult;
 import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
 import com.gabrielkuhn.webfluxplayground.util.CustomerFactory;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.reactive.function.BodyInserters;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.util.Collections;
+
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @AutoConfigureWebTestClient
 public class CustomerControllerIT {
@@ -28,10 +42,9 @@ public class CustomerControllerIT {
 
     @BeforeEach
     public void setUp() {
-        customerRepository.deleteAll().subscribe();
-
-        customerRepository.save(CustomerFactory.builder().build())
-                .subscribe(createdCustomer -> customer = createdCustomer);
+        customer = customerRepository.deleteAll()
+                .then(customerRepository.save(CustomerFactory.builder().build()))
+                .block();
     }
 
     @Test
@@ -47,6 +60,101 @@ public class CustomerControllerIT {
                 .contains(customer);
     }
 
+    @Test
+    @DisplayName("findAll streams customers as ndjson when requested")
+    public void findAll_StreamsCustomers_WhenNdjsonIsAccepted() {
+        webTestClient.get()
+                .uri("/customers")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(Customer.class)
+                .hasSize(1)
+                .contains(customer);
+    }
+
+    @Test
+    @DisplayName("findAll returns an error with bad request when the cursor is invalid")
+    public void findAll_ReturnsError_WhenCursorIsInvalid() {
+        webTestClient.get()
+                .uri("/customers?cursor=not-a-cursor")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("findAll returns only the requested customers when ids are given")
+    public void findAll_ReturnsRequestedCustomers_WhenIdsAreGiven() {
+        webTestClient.get()
+                .uri("/customers?ids=" + customer.getId() + "," + Integer.MAX_VALUE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBodyList(Customer.class)
+                .hasSize(1)
+                .contains(customer);
+    }
+
+    @Test
+    @DisplayName("search returns customers created through the api whose name starts with the prefix")
+    public void search_ReturnsMatchingCustomers_WhenPrefixMatches() {
+        Customer created = webTestClient.post()
+                .uri("/customers")
+                .body(BodyInserters.fromValue(Customer.builder().name("Searchable Sam").build()))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Customer.class)
+                .returnResult()
+                .getResponseBody();
+
+        webTestClient.get()
+                .uri("/customers/search?prefix=searchable&limit=5")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Customer.class)
+                .contains(created);
+    }
+
+    @Test
+    @DisplayName("findById returns a protobuf customer when protobuf is accepted")
+    public void findById_ReturnsProtobuf_WhenProtobufIsAccepted() {
+        byte[] body = webTestClient.get()
+                .uri("/customers/" + customer.getId())
+                .accept(CustomerProtobuf.MEDIA_TYPE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(CustomerProtobuf.MEDIA_TYPE)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        StepVerifier.create(new CustomerProtobufDecoder().decodeToMono(
+                        Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(body)),
+                        ResolvableType.forClass(Customer.class), CustomerProtobuf.MEDIA_TYPE, Collections.emptyMap()))
+                .expectNext(customer)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findById returns the not found error as smile when smile is accepted")
+    public void findById_ReturnsSmileError_WhenSmileIsAccepted() throws Exception {
+        MediaType smile = MediaType.parseMediaType("application/x-jackson-smile");
+        byte[] body = webTestClient.get()
+                .uri("/customers/" + Integer.MAX_VALUE)
+                .accept(smile)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectHeader().contentType(smile)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertThat(new ObjectMapper(new SmileFactory()).readTree(body).get("message").asText())
+                .isEqualTo("Customer not found");
+    }
+
     @Test
     @DisplayName("findById returns a customer when it exists")
     public void findById_ReturnsCustomer_WhenSuccessful() {
@@ -59,6 +167,55 @@ public class CustomerControllerIT {
                 .isEqualTo(customer);
     }
 
+    @Test
+    @DisplayName("findById returns not modified without a body when If-None-Match is current")
+    public void findById_ReturnsNotModified_WhenIfNoneMatchIsCurrent() {
+        String eTag = webTestClient.get()
+                .uri("/customers/" + customer.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Customer.class)
+                .getResponseHeaders()
+                .getETag();
+
+        webTestClient.get()
+                .uri("/customers/" + customer.getId())
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    @DisplayName("findAll returns not modified without a body when If-None-Match is current")
+    public void findAll_ReturnsNotModified_WhenIfNoneMatchIsCurrent() {
+        String eTag = webTestClient.get()
+                .uri("/customers")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Customer.class)
+                .getResponseHeaders()
+                .getETag();
+
+        webTestClient.get()
+                .uri("/customers")
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    @DisplayName("findAll sends a weak ETag that varies by Accept and changes once a customer is renamed")
+    public void findAll_ChangesETag_WhenCustomerIsRenamed() {
+        String before = findAllETag();
+
+        customerRepository.updateName(customer.getId(), "renamed").block();
+
+        Assertions.assertThat(before).startsWith("W/");
+        Assertions.assertThat(findAllETag()).isNotEqualTo(before);
+    }
+
     @Test
     @DisplayName("findById returns an error when the customer does not exists")
     public void findById_ReturnsMonoError_WhenCustomerDoesNotExists() {
@@ -102,6 +259,38 @@ public class CustomerControllerIT {
                 .jsonPath("$.status").isEqualTo(400);
     }
 
+    @Test
+    @DisplayName("saveAll inserts every streamed customer when successful")
+    public void saveAll_InsertsStreamedCustomers_WhenSuccessful() {
+        webTestClient.post()
+                .uri("/customers/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .body(Flux.just(CustomerFactory.builder().build(), CustomerFactory.builder().name("alice").build()),
+                        Customer.class)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBodyList(CustomerBatchResult.class)
+                .hasSize(1)
+                .value(results -> Assertions.assertThat(results.get(0).getIds()).hasSize(2));
+
+        StepVerifier.create(customerRepository.count())
+                .expectNext(3L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("saveAll returns an error with bad request when a streamed name is empty")
+    public void saveAll_ReturnsError_WhenNameIsEmpty() {
+        webTestClient.post()
+                .uri("/customers/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .body(Flux.just(Customer.builder().build()), Customer.class)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     @DisplayName("delete removes the customer when successful")
     public void delete_RemovesCustomer_WhenSuccessful() {
@@ -144,7 +333,49 @@ public class CustomerControllerIT {
                 .expectBody().isEmpty();
 
         StepVerifier.create(customerRepository.findById(customer.getId()))
-                .expectNext(newCustomer.withId(customer.getId()))
+                .expectNext(newCustomer.withId(customer.getId()).withVersion(customer.getVersion() + 1))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("update returns precondition failed when If-Match holds a stale version")
+    public void update_ReturnsPreconditionFailed_WhenIfMatchIsStale() {
+        webTestClient.put()
+                .uri("/customers/" + customer.getId())
+                .header(HttpHeaders.IF_MATCH, "\"" + (customer.getVersion() + 1) + "\"")
+                .body(BodyInserters.fromValue(Customer.builder().name("new name").build()))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED)
+                .expectBody()
+                .jsonPath("$.status").isEqualTo(412);
+
+        StepVerifier.create(customerRepository.findById(customer.getId()))
+                .expectNext(customer)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("update returns precondition failed when If-Match is * and the customer does not exist")
+    public void update_ReturnsPreconditionFailed_WhenIfMatchAnyAndCustomerIsMissing() {
+        webTestClient.put()
+                .uri("/customers/" + Integer.MAX_VALUE)
+                .header(HttpHeaders.IF_MATCH, "*")
+                .body(BodyInserters.fromValue(Customer.builder().name("new name").build()))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @Test
+    @DisplayName("delete removes the customer when If-Match holds the current version")
+    public void delete_RemovesCustomer_WhenIfMatchIsCurrent() {
+        webTestClient.delete()
+                .uri("/customers/" + customer.getId())
+                .header(HttpHeaders.IF_MATCH, "\"" + customer.getVersion() + "\"")
+                .exchange()
+                .expectStatus().isNoContent();
+
+        StepVerifier.create(customerRepository.count())
+                .expectNext(0L)
                 .verifyComplete();
     }
 
@@ -165,4 +396,15 @@ public class CustomerControllerIT {
                 .expectNext(customer)
                 .verifyComplete();
     }
+
+    private String findAllETag() {
+        return webTestClient.get()
+                .uri("/customers")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .returnResult(Customer.class)
+                .getResponseHeaders()
+                .getETag();
+    }
 }
@@ -0,0 +1,10 @@
+package com.gabrielkuhn.webfluxplayground.integration;
+
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs every {@link CustomerControllerIT} scenario against the JDBC backend.
+ */
+@ActiveProfiles({"test", "jdbc"})
+public class JdbcCustomerControllerIT extends CustomerControllerIT {
+}
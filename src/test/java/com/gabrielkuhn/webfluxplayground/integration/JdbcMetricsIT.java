@@ -0,0 +1,10 @@
+package com.gabrielkuhn.webfluxplayground.integration;
+
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Checks that the JDBC backend reports the same route and repository timers as {@link MetricsIT}.
+ */
+@ActiveProfiles({"test", "jdbc"})
+public class JdbcMetricsIT extends MetricsIT {
+}
@@ -0,0 +1,39 @@
+package com.gabrielkuhn.webfluxplayground.integration;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+@AutoConfigureMetrics
+public class MetricsIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    @DisplayName("prometheus exposes route and repository timers tagged by template, never by raw id")
+    public void prometheus_ExposesLatencyTimers_WhenCustomersAreRequested() {
+        webTestClient.get()
+                .uri("/customers/" + Integer.MAX_VALUE)
+                .exchange()
+                .expectStatus().isNotFound();
+
+        webTestClient.get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .value(scrape -> Assertions.assertThat(scrape)
+                        .contains("http_server_requests_seconds_count")
+                        .contains("uri=\"/customers/{id}\"")
+                        .contains("spring_data_repository_invocations_seconds_count")
+                        .doesNotContain("uri=\"/customers/" + Integer.MAX_VALUE));
+    }
+}
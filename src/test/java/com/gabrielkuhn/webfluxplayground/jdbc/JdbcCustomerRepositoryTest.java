@@ -0,0 +1,118 @@
+package com.gabrielkuhn.webfluxplayground.jdbc;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.util.CustomerFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+class JdbcCustomerRepositoryTest {
+
+    private HikariDataSource dataSource;
+    private JdbcCustomerRepository customerRepository;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:jdbc-repository-test;DB_CLOSE_DELAY=-1");
+        // A single connection, so a query that does not give its connection back stalls the next one.
+        dataSource.setMaximumPoolSize(1);
+        dataSource.setConnectionTimeout(Duration.ofSeconds(1).toMillis());
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS customer (id serial PRIMARY KEY, name varchar NOT NULL, "
+                    + "version integer DEFAULT 0 NOT NULL)");
+            statement.execute("DELETE FROM customer");
+        }
+        CustomerProperties customerProperties = new CustomerProperties();
+        customerProperties.getJdbc().setFetchSize(2);
+        customerRepository = new JdbcCustomerRepository(dataSource, Schedulers.boundedElastic(), customerProperties);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    @DisplayName("save inserts a new customer with version 0 and updates only the expected version")
+    public void save_InsertsThenUpdatesWithVersionCheck_WhenSuccessful() {
+        Customer saved = customerRepository.save(CustomerFactory.builder().build()).block();
+
+        StepVerifier.create(customerRepository.findById(saved.getId()))
+                .expectNext(saved.withVersion(0))
+                .verifyComplete();
+        StepVerifier.create(customerRepository.save(saved.withName("ann")))
+                .expectNext(saved.withName("ann").withVersion(1))
+                .verifyComplete();
+        StepVerifier.create(customerRepository.save(saved.withName("stale")))
+                .verifyError(OptimisticLockingFailureException.class);
+    }
+
+    @Test
+    @DisplayName("insertAll returns the generated ids in order and findAllById and findPageAfter read them back")
+    public void insertAll_ReturnsGeneratedIds_WhenSuccessful() {
+        List<Integer> ids = customerRepository.insertAll(List.of(
+                        CustomerFactory.builder().name("a").build(),
+                        CustomerFactory.builder().name("b").build(),
+                        CustomerFactory.builder().name("c").build()))
+                .collectList()
+                .block();
+
+        StepVerifier.create(customerRepository.findAllById(ids).map(Customer::getName).collectList())
+                .expectNext(List.of("a", "b", "c"))
+                .verifyComplete();
+        StepVerifier.create(customerRepository.findPageAfter(ids.get(0), 1).map(Customer::getId))
+                .expectNext(ids.get(1))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("updateNameIfVersion and removeByIdIfVersion only touch the row with the expected version")
+    public void conditionalWrites_ReturnAffectedRows_WhenVersionMatches() {
+        Customer saved = customerRepository.save(CustomerFactory.builder().build()).block();
+
+        StepVerifier.create(customerRepository.updateNameIfVersion(saved.getId(), "ann", 1))
+                .expectNext(0)
+                .verifyComplete();
+        StepVerifier.create(customerRepository.updateNameIfVersion(saved.getId(), "ann", 0))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(customerRepository.removeByIdIfVersion(saved.getId(), 0))
+                .expectNext(0)
+                .verifyComplete();
+        StepVerifier.create(customerRepository.removeByIdIfVersion(saved.getId(), 1)
+                        .then(customerRepository.existsById(saved.getId())))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAll streams the rows in order and gives the connection back when the subscriber cancels")
+    public void findAll_ReleasesConnection_WhenSubscriberCancels() {
+        customerRepository.insertAll(List.of(
+                        CustomerFactory.builder().name("a").build(),
+                        CustomerFactory.builder().name("b").build(),
+                        CustomerFactory.builder().name("c").build()))
+                .blockLast();
+
+        StepVerifier.create(customerRepository.findAll().map(Customer::getName), 1)
+                .expectNext("a")
+                .thenCancel()
+                .verify();
+        StepVerifier.create(customerRepository.findAll().map(Customer::getName))
+                .expectNext("a", "b", "c")
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,80 @@
+package com.gabrielkuhn.webfluxplayground.jdbc;
+
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import com.gabrielkuhn.webfluxplayground.util.CustomerFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener.RepositoryMethodInvocation;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener.RepositoryMethodInvocationResult.State;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class RepositoryInvocationTimerTest {
+
+    private final CustomerRepository target = Mockito.mock(CustomerRepository.class);
+    private final List<RepositoryMethodInvocation> invocations = new CopyOnWriteArrayList<>();
+
+    private CustomerRepository customerRepository;
+
+    @BeforeEach
+    public void setUp() {
+        RepositoryMethodInvocationListener listener = invocations::add;
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("listener", listener));
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.addInterface(CustomerRepository.class);
+        proxyFactory.addAdvice(new RepositoryInvocationTimer(CustomerRepository.class,
+                beanFactory.getBeanProvider(RepositoryMethodInvocationListener.class)));
+        customerRepository = (CustomerRepository) proxyFactory.getProxy();
+    }
+
+    @Test
+    @DisplayName("a reactive call is reported once it completes, under the repository interface and method")
+    public void invoke_ReportsSuccess_WhenResultCompletes() {
+        Customer customer = CustomerFactory.get();
+        BDDMockito.when(target.findById(1)).thenReturn(Mono.just(customer));
+
+        Mono<Customer> result = customerRepository.findById(1);
+
+        Assertions.assertThat(invocations).isEmpty();
+        StepVerifier.create(result)
+                .expectNext(customer)
+                .verifyComplete();
+        Assertions.assertThat(invocations).singleElement().satisfies(invocation -> {
+            Assertions.assertThat(invocation.getRepositoryInterface()).isEqualTo(CustomerRepository.class);
+            Assertions.assertThat(invocation.getMethod().getName()).isEqualTo("findById");
+            Assertions.assertThat(invocation.getResult().getState()).isEqualTo(State.SUCCESS);
+        });
+    }
+
+    @Test
+    @DisplayName("a failed or cancelled call is reported with its state and error")
+    public void invoke_ReportsErrorAndCancel_WhenResultFailsOrIsCancelled() {
+        IllegalStateException failure = new IllegalStateException("connection reset");
+        BDDMockito.when(target.count()).thenReturn(Mono.error(failure));
+        BDDMockito.when(target.findAll()).thenReturn(Flux.never());
+
+        StepVerifier.create(customerRepository.count())
+                .verifyErrorMatches(failure::equals);
+        StepVerifier.create(customerRepository.findAll())
+                .thenCancel()
+                .verify();
+
+        Assertions.assertThat(invocations).hasSize(2);
+        Assertions.assertThat(invocations.get(0).getResult().getState()).isEqualTo(State.ERROR);
+        Assertions.assertThat(invocations.get(0).getResult().getError()).isSameAs(failure);
+        Assertions.assertThat(invocations.get(1).getResult().getState()).isEqualTo(State.CANCELED);
+    }
+}
@@ -0,0 +1,76 @@
+package com.gabrielkuhn.webfluxplayground.limiter;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final AdaptiveConcurrencyLimit limit =
+            new AdaptiveConcurrencyLimit(new CustomerProperties.Limiter.Limit(10, 2, 100), 0.2);
+
+    @Test
+    @DisplayName("tryAcquire rejects requests once the limit is in flight until a slot is released")
+    public void tryAcquire_ReturnsFalse_WhenLimitIsReached() {
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertThat(limit.tryAcquire()).isTrue();
+        }
+
+        Assertions.assertThat(limit.tryAcquire()).isFalse();
+        limit.release(-1, false);
+        Assertions.assertThat(limit.tryAcquire()).isTrue();
+        Assertions.assertThat(limit.getRejected()).isEqualTo(1);
+        Assertions.assertThat(limit.getInFlight()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("release grows a fully used limit while latency is steady and shrinks it when latency rises")
+    public void release_AdaptsLimit_WhenLatencyChanges() {
+        saturateAndRelease(FAST, 20);
+        int grown = limit.getLimit();
+        Assertions.assertThat(grown).isGreaterThan(10);
+
+        saturateAndRelease(SLOW, 20);
+        Assertions.assertThat(limit.getLimit()).isLessThan(grown);
+    }
+
+    @Test
+    @DisplayName("release does not grow the limit while most of it is unused")
+    public void release_KeepsLimit_WhenUnderused() {
+        for (int i = 0; i < 50; i++) {
+            limit.tryAcquire();
+            limit.release(FAST, false);
+        }
+
+        Assertions.assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("release backs off multiplicatively, down to the minimum, when the request was overloaded")
+    public void release_BacksOff_WhenOverloaded() {
+        for (int i = 0; i < 50; i++) {
+            limit.tryAcquire();
+            limit.release(FAST, true);
+        }
+
+        Assertions.assertThat(limit.getLimit()).isEqualTo(2);
+    }
+
+    private void saturateAndRelease(long rttNanos, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (limit.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limit.release(rttNanos, false);
+            }
+        }
+    }
+}
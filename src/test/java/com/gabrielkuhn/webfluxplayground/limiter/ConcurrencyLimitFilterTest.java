@@ -0,0 +1,148 @@
+package com.gabrielkuhn.webfluxplayground.limiter;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.controller.CustomerController;
+import com.gabrielkuhn.webfluxplayground.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+
+class ConcurrencyLimitFilterTest {
+
+    private final CustomerProperties customerProperties = new CustomerProperties();
+    private final Sinks.Empty<Void> pending = Sinks.empty();
+    private final WebFilterChain slowChain = exchange -> pending.asMono();
+
+    @Test
+    @DisplayName("filter rejects reads over the limit with a retryable 503 while writes use their own limit")
+    public void filter_ReturnsServiceUnavailable_WhenReadLimitIsReached() {
+        customerProperties.getLimiter().setRead(new CustomerProperties.Limiter.Limit(1, 1, 1));
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(customerProperties);
+
+        filter.filter(get("/customers/1"), dispatch(filter, slowChain)).subscribe();
+
+        StepVerifier.create(filter.filter(get("/customers/2"), dispatch(filter, slowChain)))
+                .expectErrorSatisfies(error -> Assertions.assertThat(error)
+                        .isInstanceOfSatisfying(ServiceUnavailableException.class, unavailable -> Assertions
+                                .assertThat(unavailable.getRetryAfter()).isEqualTo(Duration.ofSeconds(1))))
+                .verify();
+        StepVerifier.create(filter.filter(exchange(MockServerHttpRequest.delete("/customers/2")),
+                        dispatch(filter, exchange -> Mono.empty())))
+                .verifyComplete();
+
+        pending.tryEmitEmpty();
+        StepVerifier.create(filter.filter(get("/customers/2"),
+                        dispatch(filter, exchange -> Mono.empty())))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("filter lets change feeds and other paths through without taking a slot")
+    public void filter_SkipsLimit_WhenHandlerIsUnlimitedOrOutsideCustomers() {
+        customerProperties.getLimiter().setRead(new CustomerProperties.Limiter.Limit(1, 1, 1));
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(customerProperties);
+
+        filter.filter(get("/customers/1"), dispatch(filter, slowChain)).subscribe();
+
+        StepVerifier.create(filter.filter(mapped(MockServerHttpRequest.get("/customers/changes")
+                        .accept(MediaType.TEXT_EVENT_STREAM), "changeEvents"),
+                        dispatch(filter, exchange -> Mono.empty())))
+                .verifyComplete();
+        StepVerifier.create(filter.filter(get("/actuator/health"),
+                        dispatch(filter, exchange -> Mono.empty())))
+                .verifyComplete();
+        StepVerifier.create(filter.filter(get("/customersX"),
+                        dispatch(filter, exchange -> Mono.empty())))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("filter limits requests whose streaming headers do not match a long-lived handler")
+    public void filter_ReturnsServiceUnavailable_WhenOnlyHeadersAskForStreaming() {
+        customerProperties.getLimiter().setRead(new CustomerProperties.Limiter.Limit(1, 1, 1));
+        customerProperties.getLimiter().setWrite(new CustomerProperties.Limiter.Limit(1, 1, 1));
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(customerProperties);
+
+        filter.filter(get("/customers/1"), dispatch(filter, slowChain)).subscribe();
+        filter.filter(mapped(MockServerHttpRequest.post("/customers/batch")
+                .contentType(MediaType.APPLICATION_NDJSON), "saveAll"),
+                dispatch(filter, slowChain)).subscribe();
+
+        StepVerifier.create(filter.filter(mapped(MockServerHttpRequest.get("/customers/2")
+                        .accept(MediaType.APPLICATION_NDJSON), "findById"),
+                        dispatch(filter, exchange -> Mono.empty())))
+                .expectError(ServiceUnavailableException.class)
+                .verify();
+        StepVerifier.create(filter.filter(mapped(MockServerHttpRequest.post("/customers/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON), "saveAll"),
+                        dispatch(filter, exchange -> Mono.empty())))
+                .expectError(ServiceUnavailableException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("filter backs off when the database pool is exhausted behind the data access layer")
+    public void filter_LowersLimit_WhenRepositoryFailsWithExhaustedPool() {
+        customerProperties.getLimiter().setRead(new CustomerProperties.Limiter.Limit(10, 1, 10));
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(customerProperties);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        filter.bindTo(meterRegistry);
+
+        DataAccessResourceFailureException failure = new DataAccessResourceFailureException("Failed to obtain R2DBC "
+                + "Connection", new ServiceUnavailableException("Database connection pool exhausted",
+                Duration.ofSeconds(1)));
+
+        StepVerifier.create(filter.filter(get("/customers/1"), dispatch(filter, exchange -> Mono.error(failure))))
+                .expectError(DataAccessResourceFailureException.class)
+                .verify();
+
+        Assertions.assertThat(meterRegistry.get("customers.limiter.limit").tag("kind", "read").gauge().value())
+                .isEqualTo(9);
+    }
+
+    /**
+     * Stands in for the dispatcher: takes the slot for the controller method named in the exchange's {@code handler}
+     * attribute, {@code findById} if there is none, before handing the request on.
+     */
+    private static WebFilterChain dispatch(ConcurrencyLimitFilter filter, WebFilterChain handler) {
+        return exchange -> filter.acquire(exchange, handler(exchange.getAttributeOrDefault("handler", "findById")))
+                .then(Mono.defer(() -> handler.filter(exchange)));
+    }
+
+    private static MockServerWebExchange get(String path) {
+        return exchange(MockServerHttpRequest.get(path));
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request);
+    }
+
+    private static MockServerWebExchange mapped(MockServerHttpRequest.BaseBuilder<?> request, String handler) {
+        MockServerWebExchange exchange = exchange(request);
+        exchange.getAttributes().put("handler", handler);
+        return exchange;
+    }
+
+    static HandlerMethod handler(String name) {
+        Method method = Arrays.stream(CustomerController.class.getMethods())
+                .filter(candidate -> candidate.getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+        return new HandlerMethod(Mockito.mock(CustomerController.class), method);
+    }
+}
@@ -0,0 +1,68 @@
+package com.gabrielkuhn.webfluxplayground.limiter;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.exception.ServiceUnavailableException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerAdapter;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+class ConcurrencyLimitHandlerAdapterTest {
+
+    private final CustomerProperties customerProperties = new CustomerProperties();
+    private final RequestMappingHandlerAdapter requestMappingHandlerAdapter =
+            Mockito.mock(RequestMappingHandlerAdapter.class);
+
+    @Test
+    @DisplayName("handle rejects the matched handler over the limit without invoking it")
+    public void handle_ReturnsServiceUnavailable_WhenLimitIsReached() {
+        customerProperties.getLimiter().setRead(new CustomerProperties.Limiter.Limit(1, 1, 1));
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(customerProperties);
+        ConcurrencyLimitHandlerAdapter adapter = new ConcurrencyLimitHandlerAdapter(filter,
+                requestMappingHandlerAdapter);
+        HandlerMethod findById = ConcurrencyLimitFilterTest.handler("findById");
+        Sinks.Empty<Void> pending = Sinks.empty();
+        BDDMockito.given(requestMappingHandlerAdapter.handle(ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .willReturn(Mono.empty());
+
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/customers/1")),
+                exchange -> adapter.handle(exchange, findById).then(pending.asMono())).subscribe();
+
+        StepVerifier.create(filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/customers/2")),
+                        exchange -> adapter.handle(exchange, findById).then()))
+                .expectError(ServiceUnavailableException.class)
+                .verify();
+        BDDMockito.then(requestMappingHandlerAdapter).should()
+                .handle(ArgumentMatchers.any(), ArgumentMatchers.eq(findById));
+    }
+
+    @Test
+    @DisplayName("handle passes unlimited long-lived handlers straight to the request mapping adapter")
+    public void handle_Delegates_WhenHandlerIsUnlimited() {
+        customerProperties.getLimiter().setRead(new CustomerProperties.Limiter.Limit(1, 1, 1));
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(customerProperties);
+        ConcurrencyLimitHandlerAdapter adapter = new ConcurrencyLimitHandlerAdapter(filter,
+                requestMappingHandlerAdapter);
+        HandlerMethod changeEvents = ConcurrencyLimitFilterTest.handler("changeEvents");
+        BDDMockito.given(requestMappingHandlerAdapter.handle(ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .willReturn(Mono.empty());
+
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/customers/1")),
+                exchange -> adapter.handle(exchange, ConcurrencyLimitFilterTest.handler("findById"))
+                        .then(Mono.never())).subscribe();
+
+        StepVerifier.create(filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/customers/changes")),
+                        exchange -> adapter.handle(exchange, changeEvents).then()))
+                .verifyComplete();
+        BDDMockito.then(requestMappingHandlerAdapter).should()
+                .handle(ArgumentMatchers.any(), ArgumentMatchers.eq(changeEvents));
+    }
+}
@@ -0,0 +1,133 @@
+package com.gabrielkuhn.webfluxplayground.loadtest;
+
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Open model load generator: requests are started on a fixed schedule whether or not earlier ones have completed,
+ * and every latency is measured from the intended start time, so a stalled server cannot hide its queueing delay
+ * (no coordinated omission).
+ */
+public class CustomerLoadGenerator {
+
+    private final WebClient webClient;
+    private final LoadProfile profile;
+    private final List<Integer> seedIds;
+    private final Operation[] schedule;
+
+    private final Queue<Integer> createdIds = new ConcurrentLinkedQueue<>();
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+
+    public CustomerLoadGenerator(WebClient webClient, LoadProfile profile, List<Integer> seedIds) {
+        this.webClient = webClient;
+        this.profile = profile;
+        this.seedIds = seedIds;
+        this.schedule = profile.getMix().entrySet().stream()
+                .flatMap(weight -> Stream.generate(weight::getKey).limit(weight.getValue()))
+                .toArray(Operation[]::new);
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3));
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    public LoadReport run() {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / profile.getRatePerSecond();
+        long warmupRequests = (long) profile.getRatePerSecond() * profile.getWarmupSeconds();
+        long totalRequests = warmupRequests + (long) profile.getRatePerSecond() * profile.getDurationSeconds();
+        long start = System.nanoTime();
+        AtomicLong lastCompletion = new AtomicLong(start);
+
+        Flux.interval(Duration.ofNanos(periodNanos))
+                .take(totalRequests)
+                .flatMap(tick -> {
+                    long intendedStart = start + (tick + 1) * periodNanos;
+                    boolean measured = tick >= warmupRequests;
+                    Operation operation = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+                    return execute(operation)
+                            .onErrorResume(error -> Mono.just(new Outcome(operation, false)))
+                            .doOnNext(outcome -> {
+                                long now = System.nanoTime();
+                                lastCompletion.accumulateAndGet(now, Math::max);
+                                if (measured) {
+                                    record(outcome, now - intendedStart);
+                                }
+                            });
+                }, Integer.MAX_VALUE)
+                .blockLast(Duration.ofSeconds(profile.getWarmupSeconds() + profile.getDurationSeconds() + 60L));
+
+        long measurementStart = start + warmupRequests * periodNanos;
+        double seconds = (lastCompletion.get() - measurementStart) / 1e9;
+        return new LoadReport(profile, latencies, errors, seconds);
+    }
+
+    private void record(Outcome outcome, long latencyNanos) {
+        Histogram histogram = latencies.get(outcome.operation);
+        histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), histogram.getHighestTrackableValue()));
+        if (!outcome.successful) {
+            errors.get(outcome.operation).incrementAndGet();
+        }
+    }
+
+    private Mono<Outcome> execute(Operation operation) {
+        switch (operation) {
+            case FIND_BY_ID:
+                return status(operation, webClient.get().uri("/customers/{id}", randomSeedId()));
+            case FIND_ALL:
+                return status(operation, webClient.get().uri("/customers"));
+            case SAVE:
+                return webClient.post().uri("/customers")
+                        .bodyValue(Customer.builder().name("load " + System.nanoTime()).build())
+                        .retrieve()
+                        .bodyToMono(Customer.class)
+                        .doOnNext(customer -> createdIds.add(customer.getId()))
+                        .map(customer -> new Outcome(operation, true));
+            case UPDATE:
+                return status(operation, webClient.put().uri("/customers/{id}", randomSeedId())
+                        .bodyValue(Customer.builder().name("updated " + System.nanoTime()).build()));
+            case DELETE:
+                Integer id = createdIds.poll();
+                return id != null
+                        ? status(operation, webClient.delete().uri("/customers/{id}", id))
+                        : execute(Operation.FIND_BY_ID);
+            default:
+                throw new IllegalArgumentException(operation.name());
+        }
+    }
+
+    private Mono<Outcome> status(Operation operation, WebClient.RequestHeadersSpec<?> request) {
+        return request.exchangeToMono(response -> response.releaseBody()
+                .thenReturn(new Outcome(operation, response.statusCode().is2xxSuccessful())));
+    }
+
+    private int randomSeedId() {
+        return seedIds.get(ThreadLocalRandom.current().nextInt(seedIds.size()));
+    }
+
+    private static final class Outcome {
+
+        private final Operation operation;
+        private final boolean successful;
+
+        private Outcome(Operation operation, boolean successful) {
+            this.operation = operation;
+            this.successful = successful;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.gabrielkuhn.webfluxplayground.loadtest;
+
+import com.gabrielkuhn.webfluxplayground.codec.CustomerJsonDecoder;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Runs the customer operation mix against the app on the in-memory test database and fails when latency or
+ * throughput regresses past the thresholds in {@code loadtest/customers.json}. Run with {@code ./mvnw -Ploadtest verify}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class CustomerLoadIT {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Test
+    @DisplayName("the customer operation mix meets the stored latency and throughput thresholds")
+    public void customerMix_MeetsThresholds_WhenDrivenAtFixedRate() throws Exception {
+        LoadProfile profile = LoadProfile.load("loadtest/customers.json");
+
+        List<Integer> seedIds = customerRepository.deleteAll()
+                .thenMany(Flux.range(0, profile.getSeedCustomers())
+                        .map(i -> Customer.builder().name("seed " + i).build())
+                        .concatMap(customerRepository::save))
+                .map(Customer::getId)
+                .collectList()
+                .block();
+
+        // Customers have no default constructor, so created ones are read with the application's own decoder.
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + port)
+                .codecs(configurer -> configurer.customCodecs().registerWithDefaultConfig(new CustomerJsonDecoder()))
+                .build();
+
+        LoadReport report = new CustomerLoadGenerator(webClient, profile, seedIds).run();
+        report.write(Path.of("target", "loadtest", backend()));
+
+        Assertions.assertThat(report.violations()).isEmpty();
+    }
+
+    /**
+     * Names the report directory, so the reports of each persistence backend can be compared side by side.
+     */
+    protected String backend() {
+        return "r2dbc";
+    }
+}
@@ -0,0 +1,15 @@
+package com.gabrielkuhn.webfluxplayground.loadtest;
+
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * The same operation mix and thresholds as {@link CustomerLoadIT}, served by the JDBC backend.
+ */
+@ActiveProfiles({"test", "jdbc"})
+public class JdbcCustomerLoadIT extends CustomerLoadIT {
+
+    @Override
+    protected String backend() {
+        return "jdbc";
+    }
+}
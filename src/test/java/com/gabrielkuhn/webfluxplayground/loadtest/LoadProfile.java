@@ -0,0 +1,43 @@
+package com.gabrielkuhn.webfluxplayground.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Offered load and regression thresholds, read from a JSON file on the test classpath. Rate and duration can be
+ * overridden with {@code -Dloadtest.rate} and {@code -Dloadtest.duration} without touching the stored thresholds.
+ */
+@Data
+public class LoadProfile {
+
+    private int ratePerSecond;
+    private int warmupSeconds;
+    private int durationSeconds;
+    private int seedCustomers;
+    private Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+    private Thresholds thresholds = new Thresholds();
+
+    @Data
+    public static class Thresholds {
+        private double minThroughput;
+        private double maxErrorRatio;
+        private Map<Operation, Long> p99Millis = new EnumMap<>(Operation.class);
+    }
+
+    public static LoadProfile load(String resource) throws IOException {
+        try (InputStream json = LoadProfile.class.getClassLoader().getResourceAsStream(resource)) {
+            if (json == null) {
+                throw new IOException("Load profile not found: " + resource);
+            }
+            LoadProfile profile = new ObjectMapper().readValue(json, LoadProfile.class);
+            profile.setRatePerSecond(Integer.getInteger("loadtest.rate", profile.getRatePerSecond()));
+            profile.setDurationSeconds(Integer.getInteger("loadtest.duration", profile.getDurationSeconds()));
+            return profile;
+        }
+    }
+}
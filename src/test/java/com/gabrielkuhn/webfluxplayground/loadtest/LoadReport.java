@@ -0,0 +1,126 @@
+package com.gabrielkuhn.webfluxplayground.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Summarizes a run and checks it against the thresholds of its {@link LoadProfile}.
+ */
+public class LoadReport {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final LoadProfile profile;
+    private final Map<Operation, Histogram> latencies;
+    private final Map<Operation, AtomicLong> errors;
+    private final double seconds;
+
+    public LoadReport(LoadProfile profile, Map<Operation, Histogram> latencies, Map<Operation, AtomicLong> errors,
+                      double seconds) {
+        this.profile = profile;
+        this.latencies = latencies;
+        this.errors = errors;
+        this.seconds = seconds;
+    }
+
+    public long requests() {
+        return latencies.values().stream().mapToLong(Histogram::getTotalCount).sum();
+    }
+
+    public double throughput() {
+        return requests() / seconds;
+    }
+
+    public double errorRatio() {
+        long requests = requests();
+        return requests == 0 ? 0 : errors.values().stream().mapToLong(AtomicLong::get).sum() / (double) requests;
+    }
+
+    public double p99Millis(Operation operation) {
+        return latencies.get(operation).getValueAtPercentile(99) / 1000.0;
+    }
+
+    public List<String> violations() {
+        LoadProfile.Thresholds thresholds = profile.getThresholds();
+        List<String> violations = new ArrayList<>();
+        if (throughput() < thresholds.getMinThroughput()) {
+            violations.add(String.format("throughput %.1f/s is below %.1f/s", throughput(), thresholds.getMinThroughput()));
+        }
+        if (errorRatio() > thresholds.getMaxErrorRatio()) {
+            violations.add(String.format("error ratio %.4f is above %.4f", errorRatio(), thresholds.getMaxErrorRatio()));
+        }
+        thresholds.getP99Millis().forEach((operation, maxMillis) -> {
+            if (latencies.get(operation).getTotalCount() > 0 && p99Millis(operation) > maxMillis) {
+                violations.add(String.format("%s p99 %.1fms is above %dms", operation, p99Millis(operation), maxMillis));
+            }
+        });
+        return violations;
+    }
+
+    public Map<String, Object> summary() {
+        Map<String, Object> operations = new LinkedHashMap<>();
+        latencies.forEach((operation, histogram) -> {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", histogram.getTotalCount());
+            stats.put("errors", errors.get(operation).get());
+            for (double percentile : PERCENTILES) {
+                stats.put("p" + formatPercentile(percentile) + "Millis", histogram.getValueAtPercentile(percentile) / 1000.0);
+            }
+            stats.put("maxMillis", histogram.getMaxValue() / 1000.0);
+            operations.put(operation.name(), stats);
+        });
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("offeredRatePerSecond", profile.getRatePerSecond());
+        summary.put("durationSeconds", profile.getDurationSeconds());
+        summary.put("requests", requests());
+        summary.put("throughputPerSecond", throughput());
+        summary.put("errorRatio", errorRatio());
+        summary.put("operations", operations);
+        summary.put("violations", violations());
+        return summary;
+    }
+
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Map<String, Object> summary = summary();
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(directory.resolve("report.json").toFile(), summary);
+        Files.writeString(directory.resolve("report.html"), html(summary));
+    }
+
+    @SuppressWarnings("unchecked")
+    private String html(Map<String, Object> summary) {
+        StringBuilder html = new StringBuilder()
+                .append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Customer load test</title></head><body>")
+                .append("<h1>Customer load test</h1>")
+                .append(String.format("<p>Offered %d req/s for %ds, achieved %.1f req/s, error ratio %.4f</p>",
+                        profile.getRatePerSecond(), profile.getDurationSeconds(), throughput(), errorRatio()))
+                .append("<table border=\"1\"><tr><th>operation</th>");
+
+        Map<String, Map<String, Object>> operations = (Map<String, Map<String, Object>>) summary.get("operations");
+        operations.values().stream().findFirst().ifPresent(stats ->
+                stats.keySet().forEach(column -> html.append("<th>").append(column).append("</th>")));
+        html.append("</tr>");
+        operations.forEach((operation, stats) -> {
+            html.append("<tr><td>").append(operation).append("</td>");
+            stats.values().forEach(value -> html.append("<td>").append(value).append("</td>"));
+            html.append("</tr>");
+        });
+        html.append("</table><h2>Violations</h2><ul>");
+        violations().forEach(violation -> html.append("<li>").append(violation).append("</li>"));
+        return html.append("</ul></body></html>").toString();
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile).replace(".", "");
+    }
+}
@@ -0,0 +1,9 @@
+package com.gabrielkuhn.webfluxplayground.loadtest;
+
+public enum Operation {
+    FIND_BY_ID,
+    FIND_ALL,
+    SAVE,
+    UPDATE,
+    DELETE
+}
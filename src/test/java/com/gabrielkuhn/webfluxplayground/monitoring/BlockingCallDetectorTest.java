@@ -0,0 +1,95 @@
+package com.gabrielkuhn.webfluxplayground.monitoring;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.blockhound.BlockingOperationError;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class BlockingCallDetectorTest {
+
+    private final List<BlockingCall> calls = new CopyOnWriteArrayList<>();
+
+    private Disposable listener;
+
+    @BeforeEach
+    public void setUp() {
+        // Usually installed by BlockingCallTestListener already.
+        BlockingCallDetector.install(CustomerProperties.Blocking.Action.FAIL, List.of("ch.qos.logback.", "org.h2."));
+        listener = BlockingCallDetector.addListener(calls::add);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        listener.dispose();
+    }
+
+    @Test
+    @DisplayName("a blocking call on a non-blocking thread fails and is reported with its stack")
+    public void install_ReportsBlockingCall_WhenNonBlockingThreadSleeps() {
+        StepVerifier.create(Mono.fromRunnable(BlockingCallDetectorTest::sleep).subscribeOn(Schedulers.parallel()))
+                .verifyError(BlockingOperationError.class);
+
+        Assertions.assertThat(calls).singleElement().satisfies(call -> {
+            Assertions.assertThat(call.getMethod()).startsWith("java.lang.Thread.sleep");
+            Assertions.assertThat(call.getThread()).startsWith("parallel-");
+            Assertions.assertThat(call.getRoute()).isNull();
+            Assertions.assertThat(call.getError().getStackTrace())
+                    .anyMatch(frame -> frame.getClassName().equals(BlockingCallDetectorTest.class.getName()));
+        });
+    }
+
+    @Test
+    @DisplayName("a blocking call is attributed to the route of the exchange in the subscriber context")
+    public void install_ReportsRoute_WhenRequestIsTracked() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers/7"));
+        exchange.getAttributes().put(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE,
+                PathPatternParser.defaultInstance.parse("/customers/{id}"));
+
+        RouteTracking.install();
+        try {
+            StepVerifier.create(Mono.delay(Duration.ofMillis(1))
+                            .doOnNext(tick -> sleep())
+                            .contextWrite(context -> RouteTracking.withExchange(context, exchange)))
+                    .verifyError(BlockingOperationError.class);
+        } finally {
+            RouteTracking.uninstall();
+        }
+
+        Assertions.assertThat(calls).singleElement().satisfies(call -> {
+            Assertions.assertThat(call.getRoute()).isEqualTo("GET /customers/{id}");
+            Assertions.assertThat(call.getPath()).isEqualTo("/customers/7");
+        });
+    }
+
+    @Test
+    @DisplayName("blocking calls from the calling thread of a test are not reported")
+    public void install_IgnoresBlockingCall_WhenThreadMayBlock() {
+        StepVerifier.create(Mono.fromRunnable(BlockingCallDetectorTest::sleep))
+                .verifyComplete();
+
+        Assertions.assertThat(calls).isEmpty();
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
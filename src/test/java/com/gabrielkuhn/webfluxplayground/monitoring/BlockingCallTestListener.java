@@ -0,0 +1,27 @@
+package com.gabrielkuhn.webfluxplayground.monitoring;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestPlan;
+
+import java.util.List;
+
+/**
+ * Fails every test that blocks on a non-blocking thread. H2, which the tests use in place of Postgres, does its
+ * work on the subscribing thread and is tolerated.
+ */
+@Slf4j
+public class BlockingCallTestListener implements TestExecutionListener {
+
+    @Override
+    public void testPlanExecutionStarted(TestPlan testPlan) {
+        try {
+            BlockingCallDetector.install(CustomerProperties.Blocking.Action.FAIL,
+                    List.of("ch.qos.logback.", "org.h2."));
+        } catch (RuntimeException ex) {
+            log.warn("Blocking-call detection is off for this run; start the JVM with "
+                    + "-XX:+AllowRedefinitionToAddDeleteMethods to enable it", ex);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.gabrielkuhn.webfluxplayground.monitoring;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.util.concurrent.EventExecutor;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.client.reactive.ReactorResourceFactory;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+class EventLoopLagMonitorTest {
+
+    private static final Duration PROBE_INTERVAL = Duration.ofMillis(5);
+
+    /**
+     * How long a check waits for a probe to run; generous, as the first ones also wait for the loop threads to start.
+     */
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final MockClock clock = new MockClock();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+    private final LoopResources loopResources = LoopResources.create("lag-test", 2, true);
+    private final ReactorResourceFactory resourceFactory = new ReactorResourceFactory();
+
+    private EventLoopLagMonitor monitor;
+
+    @BeforeEach
+    public void setUp() {
+        resourceFactory.setUseGlobalResources(false);
+        resourceFactory.setLoopResources(loopResources);
+        resourceFactory.afterPropertiesSet();
+
+        CustomerProperties properties = new CustomerProperties();
+        properties.getEventLoop().setProbeInterval(PROBE_INTERVAL);
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(
+                Map.of("resourceFactory", resourceFactory, "meterRegistry", meterRegistry));
+        monitor = new EventLoopLagMonitor(properties, beanFactory.getBeanProvider(ReactorResourceFactory.class),
+                beanFactory.getBeanProvider(MeterRegistry.class));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        monitor.stop();
+        resourceFactory.destroy();
+        loopResources.disposeLater().block();
+    }
+
+    @Test
+    @DisplayName("start probes every server event loop")
+    public void start_RecordsLagPerLoop_WhenStarted() throws InterruptedException {
+        monitor.start();
+
+        awaitTimer("0", timer -> timer.count() > 0);
+        awaitTimer("1", timer -> timer.count() > 0);
+    }
+
+    @Test
+    @DisplayName("a loop stuck in a long task reports how much later than scheduled its probe ran")
+    public void start_RecordsLongLag_WhenLoopIsBusy() throws InterruptedException {
+        // The monitor numbers the loops in the order the group iterates them.
+        EventExecutor loop = loopResources.onServer(true).iterator().next();
+        CountDownLatch busy = new CountDownLatch(1);
+        AtomicBoolean released = new AtomicBoolean();
+        // Spins on the flag alone: parking, and even Thread.onSpinWait, count as blocking calls on the loop.
+        loop.execute(() -> {
+            busy.countDown();
+            while (!released.get()) {
+                // busy
+            }
+        });
+        busy.await();
+
+        monitor.start();
+        clock.add(PROBE_INTERVAL.multipliedBy(10));
+        released.set(true);
+
+        awaitTimer("0", timer -> timer.count() > 0);
+        // Later probes run on time by the clock, so the stall is the only lag recorded.
+        Assertions.assertThat(meterRegistry.get("netty.eventloop.lag").tag("loop", "0").timer()
+                .totalTime(TimeUnit.NANOSECONDS)).isEqualTo(PROBE_INTERVAL.multipliedBy(9).toNanos());
+    }
+
+    private void awaitTimer(String loop, Predicate<Timer> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (meterRegistry.find("netty.eventloop.lag").tag("loop", loop).timers().stream().anyMatch(condition)) {
+                return;
+            }
+            Thread.sleep(PROBE_INTERVAL.toMillis());
+        }
+        Assertions.fail("No netty.eventloop.lag timer for loop %s met the condition", loop);
+    }
+}
@@ -0,0 +1,67 @@
+package com.gabrielkuhn.webfluxplayground.routing;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+class ReadYourWritesFilterTest {
+
+    private final CustomerProperties customerProperties = new CustomerProperties();
+    private final Sinks.Many<Boolean> routes = Sinks.many().replay().all();
+
+    /**
+     * Records whether a replica read issued while handling the request would be sent to a replica.
+     */
+    private final WebFilterChain readChain = exchange -> ReadRouting.fromReplica(
+                    Flux.deferContextual(context -> Flux.just(ReadRouting.routesToReplica(context))))
+            .doOnNext(routes::tryEmitNext)
+            .then();
+
+    @Test
+    @DisplayName("filter pins reads of a client to the primary within the stickiness window after its write")
+    public void filter_PinsReadsToPrimary_WhenClientWroteRecently() {
+        ReadYourWritesFilter filter = new ReadYourWritesFilter(customerProperties);
+
+        filter.filter(read("writer"), readChain).block();
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.put("/customers/1")
+                .header(ReadYourWritesFilter.CLIENT_ID, "writer")), exchange -> Mono.empty()).block();
+        filter.filter(read("writer"), readChain).block();
+        filter.filter(read("reader"), readChain).block();
+        routes.tryEmitComplete();
+
+        StepVerifier.create(routes.asFlux())
+                .expectNext(true, false, true)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("filter lets reads go back to the replicas once the stickiness window is over")
+    public void filter_RoutesToReplica_WhenStickinessExpired() {
+        customerProperties.getReplicas().setStickiness(Duration.ofMillis(1));
+        ReadYourWritesFilter filter = new ReadYourWritesFilter(customerProperties);
+
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.delete("/customers/1")
+                .header(ReadYourWritesFilter.CLIENT_ID, "writer")), exchange -> Mono.empty()).block();
+        Mono.delay(Duration.ofMillis(10)).block();
+        filter.filter(read("writer"), readChain).block();
+        routes.tryEmitComplete();
+
+        StepVerifier.create(routes.asFlux())
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    private static MockServerWebExchange read(String client) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/customers")
+                .header(ReadYourWritesFilter.CLIENT_ID, client));
+    }
+}
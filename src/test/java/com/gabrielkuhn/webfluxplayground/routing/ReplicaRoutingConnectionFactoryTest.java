@@ -0,0 +1,110 @@
+package com.gabrielkuhn.webfluxplayground.routing;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Each H2 database stands in for one server and only knows its own name, so a query shows where it was routed.
+ */
+class ReplicaRoutingConnectionFactoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<ConnectionPool> pools = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        pools.forEach(ConnectionPool::dispose);
+    }
+
+    @Test
+    @DisplayName("connections go to the replica only for replica reads outside of transactions")
+    public void create_RoutesToReplica_WhenReadIsMarked() {
+        ReplicaRoutingConnectionFactory connectionFactory = routing(CustomerProperties.Replicas.Selection.ROUND_ROBIN,
+                "replica");
+        DatabaseClient databaseClient = DatabaseClient.create(connectionFactory);
+        TransactionalOperator transactionalOperator =
+                TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+
+        StepVerifier.create(origin(databaseClient))
+                .expectNext("primary")
+                .verifyComplete();
+        StepVerifier.create(ReadRouting.fromReplica(origin(databaseClient)))
+                .expectNext("replica")
+                .verifyComplete();
+        StepVerifier.create(ReadRouting.fromReplica(origin(databaseClient)).contextWrite(ReadRouting::pinToPrimary))
+                .expectNext("primary")
+                .verifyComplete();
+        StepVerifier.create(ReadRouting.fromReplica(origin(databaseClient)).as(transactionalOperator::transactional))
+                .expectNext("primary")
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("replica reads take turns across the replicas with round-robin selection")
+    public void create_AlternatesReplicas_WhenRoundRobin() {
+        DatabaseClient databaseClient = DatabaseClient.create(
+                routing(CustomerProperties.Replicas.Selection.ROUND_ROBIN, "first", "second"));
+
+        StepVerifier.create(ReadRouting.fromReplica(origin(databaseClient).repeat(3)))
+                .expectNext("first", "second", "first", "second")
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("replica reads go to the replica with fewer connections in use with least-pending selection")
+    public void create_PrefersIdleReplica_WhenLeastPending() {
+        ReplicaRoutingConnectionFactory connectionFactory = routing(CustomerProperties.Replicas.Selection.LEAST_PENDING,
+                "busy", "idle");
+        pools.get(0).create().block();
+        DatabaseClient databaseClient = DatabaseClient.create(connectionFactory);
+
+        StepVerifier.create(ReadRouting.fromReplica(origin(databaseClient).repeat(1)))
+                .expectNext("idle", "idle")
+                .verifyComplete();
+    }
+
+    private ReplicaRoutingConnectionFactory routing(CustomerProperties.Replicas.Selection selection,
+                                                    String... replicas) {
+        List<ConnectionPool> replicaPools = new ArrayList<>();
+        for (String replica : replicas) {
+            replicaPools.add(pool(replica));
+        }
+        ReplicaRoutingConnectionFactory connectionFactory = new ReplicaRoutingConnectionFactory(pool("primary"),
+                replicaPools, selection, () -> meterRegistry);
+        connectionFactory.afterPropertiesSet();
+        return connectionFactory;
+    }
+
+    private ConnectionPool pool(String server) {
+        ConnectionPool pool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(
+                        "r2dbc:h2:mem:///routing-" + server + "?options=DB_CLOSE_DELAY=-1"))
+                .build());
+        pools.add(pool);
+        DatabaseClient databaseClient = DatabaseClient.create(pool);
+        databaseClient.sql("CREATE TABLE IF NOT EXISTS origin (name varchar NOT NULL)").then()
+                .then(databaseClient.sql("DELETE FROM origin").then())
+                .then(databaseClient.sql("INSERT INTO origin (name) VALUES ('" + server + "')").then())
+                .block();
+        return pool;
+    }
+
+    private static Flux<String> origin(DatabaseClient databaseClient) {
+        return databaseClient.sql("SELECT name FROM origin")
+                .map(row -> row.get("name", String.class))
+                .all();
+    }
+}
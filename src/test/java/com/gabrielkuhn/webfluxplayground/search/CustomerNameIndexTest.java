@@ -0,0 +1,55 @@
+package com.gabrielkuhn.webfluxplayground.search;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+class CustomerNameIndexTest {
+
+    private final CustomerNameIndex index = new CustomerNameIndex();
+
+    @Test
+    @DisplayName("findIdsByPrefix returns ids ordered by name, ignoring case")
+    public void findIdsByPrefix_ReturnsIdsInNameOrder_WhenNamesMatch() {
+        index.put(3, "Bobby");
+        index.put(1, "bob");
+        index.put(2, "alice");
+        index.put(4, "bob");
+
+        StepVerifier.create(index.findIdsByPrefix("BO"))
+                .expectNext(1, 4, 3)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("put moves a customer to its new name and remove drops it")
+    public void put_ReplacesOldName_WhenCustomerIsRenamed() {
+        index.put(1, "bob");
+        index.put(1, "carol");
+        index.put(2, "dave");
+        index.remove(2);
+
+        StepVerifier.create(index.findIdsByPrefix("bob")).verifyComplete();
+        StepVerifier.create(index.findIdsByPrefix("")).expectNext(1).verifyComplete();
+        Assertions.assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("putIfAbsent never overrides a name written while the index was being built")
+    public void putIfAbsent_KeepsCurrentName_WhenIdIsIndexed() {
+        index.put(1, "carol");
+        index.putIfAbsent(1, "bob");
+
+        StepVerifier.create(index.findIdsByPrefix("carol")).expectNext(1).verifyComplete();
+    }
+
+    @Test
+    @DisplayName("estimatedBytes grows with every indexed customer")
+    public void estimatedBytes_Grows_WhenCustomersAreIndexed() {
+        long empty = index.estimatedBytes();
+        index.put(1, "bob");
+
+        Assertions.assertThat(index.estimatedBytes()).isGreaterThan(empty);
+    }
+}
@@ -0,0 +1,97 @@
+package com.gabrielkuhn.webfluxplayground.service;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class CustomerIdAllocatorTest {
+
+    private final CustomerRepository customerRepository = Mockito.mock(CustomerRepository.class);
+    private final CustomerProperties customerProperties = new CustomerProperties();
+
+    /**
+     * The sequence advances by 10, so its calls reserve consecutive blocks of 10 ids, starting at 1.
+     */
+    private final AtomicInteger sequence = new AtomicInteger(1);
+
+    private CustomerIdAllocator allocator;
+
+    @BeforeEach
+    public void setUp() {
+        BDDMockito.when(customerRepository.findIdBlockSize()).thenReturn(Mono.just(10));
+        BDDMockito.when(customerRepository.reserveIdBlock())
+                .thenAnswer(invocation -> Mono.fromSupplier(() -> sequence.getAndAdd(10)));
+        allocator = new CustomerIdAllocator(() -> customerRepository, customerProperties);
+    }
+
+    @Test
+    @DisplayName("allocate hands out consecutive ids from memory until the reserved block is used up")
+    public void allocate_ReturnsIdsFromBlock_WhenBlockHasRoom() {
+        StepVerifier.create(allocator.allocate(3).concatWith(allocator.allocate(2)))
+                .expectNext(1, 2, 3, 4, 5)
+                .verifyComplete();
+
+        BDDMockito.verify(customerRepository, Mockito.times(1)).findIdBlockSize();
+        BDDMockito.verify(customerRepository, Mockito.times(1)).reserveIdBlock();
+    }
+
+    @Test
+    @DisplayName("allocate continues in a newly reserved block when the current one runs out")
+    public void allocate_ReservesNextBlock_WhenBlockIsUsedUp() {
+        StepVerifier.create(allocator.allocate(8).concatWith(allocator.allocate(4)))
+                .expectNext(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12)
+                .verifyComplete();
+
+        BDDMockito.verify(customerRepository, Mockito.times(1)).findIdBlockSize();
+        BDDMockito.verify(customerRepository, Mockito.times(2)).reserveIdBlock();
+    }
+
+    @Test
+    @DisplayName("allocate never hands out an id twice to concurrent callers")
+    public void allocate_ReturnsUniqueIds_WhenCalledConcurrently() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        allocator.bindTo(meterRegistry);
+
+        List<Integer> ids = Flux.range(0, 1_000)
+                .flatMap(i -> allocator.allocate(1 + i % 3).subscribeOn(Schedulers.parallel()))
+                .collectList()
+                .block();
+
+        Assertions.assertThat(ids).hasSize(1_999);
+        Assertions.assertThat(new HashSet<>(ids)).hasSize(ids.size());
+        Assertions.assertThat(meterRegistry.get("customers.ids.allocated").functionCounter().count())
+                .isEqualTo(1_999);
+        Assertions.assertThat(meterRegistry.get("customers.ids.refills").functionCounter().count())
+                .isGreaterThanOrEqualTo(200);
+    }
+
+    @Test
+    @DisplayName("allocate looks the block size up again when the first lookup failed")
+    public void allocate_RetriesBlockSize_WhenLookupFails() {
+        BDDMockito.when(customerRepository.findIdBlockSize())
+                .thenReturn(Mono.error(new IllegalStateException("connection reset")), Mono.just(10));
+
+        StepVerifier.create(allocator.allocate(2))
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(allocator.allocate(2))
+                .expectNext(1, 2)
+                .verifyComplete();
+
+        BDDMockito.verify(customerRepository, Mockito.times(1)).reserveIdBlock();
+    }
+}
@@ -1,8 +1,18 @@
 package com.gabrielkuhn.webfluxplayground.service;
 
+import com.gabrielkuhn.webfluxplayground.cache.CustomerCache;
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.deadline.RequestDeadline;
 import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerBatchResult;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerChange;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerTableStats;
+import com.gabrielkuhn.webfluxplayground.event.CustomerChangeFeed;
+import com.gabrielkuhn.webfluxplayground.exception.CustomerNotFoundException;
 import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import com.gabrielkuhn.webfluxplayground.search.CustomerNameIndex;
 import com.gabrielkuhn.webfluxplayground.util.CustomerFactory;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -11,12 +21,20 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 @ExtendWith(SpringExtension.class)
 class CustomerServiceTest {
 
@@ -26,6 +44,24 @@ class CustomerServiceTest {
     @Mock
     private CustomerRepository customerRepository;
 
+    @Spy
+    private CustomerProperties customerProperties = new CustomerProperties();
+
+    @Spy
+    private CustomerCache customerCache = new CustomerCache(customerProperties);
+
+    @Spy
+    private CustomerNameIndex customerNameIndex = new CustomerNameIndex();
+
+    @Spy
+    private CustomerChangeFeed customerChangeFeed = new CustomerChangeFeed(customerProperties);
+
+    @Mock
+    private CustomerWriteBuffer customerWriteBuffer;
+
+    @Mock
+    private CustomerIdAllocator customerIdAllocator;
+
     private final Customer customer = CustomerFactory.get();
 
     @BeforeEach
@@ -36,11 +72,20 @@ class CustomerServiceTest {
         BDDMockito.when(customerRepository.findById(ArgumentMatchers.anyInt()))
                 .thenReturn(Mono.just(customer));
 
+        BDDMockito.when(customerRepository.findAllById(ArgumentMatchers.<Integer>anyIterable()))
+                .thenReturn(Flux.just(customer));
+
         BDDMockito.when(customerRepository.save(CustomerFactory.builder().build()))
                 .thenReturn(Mono.just(customer));
 
-        BDDMockito.when(customerRepository.delete(customer))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(customerRepository.removeById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(customerRepository.updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(customerRepository.existsById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(false));
     }
 
     @Test
@@ -52,6 +97,24 @@ class CustomerServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("findAllAfter streams every keyset page until a short page is returned")
+    public void findAllAfter_StreamsAllPages_WhenSuccessful() {
+        customerProperties.getStream().setPageSize(2);
+        Customer second = customer.withId(2);
+        Customer third = customer.withId(3);
+
+        BDDMockito.when(customerRepository.findPageAfter(0, 2))
+                .thenReturn(Flux.just(customer, second));
+        BDDMockito.when(customerRepository.findPageAfter(2, 2))
+                .thenReturn(Flux.just(third));
+
+        StepVerifier.create(customerService.findAllAfter(0))
+                .expectSubscription()
+                .expectNext(customer, second, third)
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("findById returns a mono with a customer when it exists")
     public void findById_ReturnsMonoCustomer_WhenSuccessful() {
@@ -61,11 +124,22 @@ class CustomerServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("findById serves repeated lookups of the same id from the cache")
+    public void findById_QueriesRepositoryOnce_WhenCalledTwice() {
+        StepVerifier.create(customerService.findById(1).then(customerService.findById(1)))
+                .expectSubscription()
+                .expectNext(customer)
+                .verifyComplete();
+
+        BDDMockito.verify(customerRepository, Mockito.times(1)).findAllById(List.of(1));
+    }
+
     @Test
     @DisplayName("findById returns a mono error when the customer does not exists")
     public void findById_ReturnsMonoError_WhenEmptyMonoIsReturned() {
-        BDDMockito.when(customerRepository.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(customerRepository.findAllById(ArgumentMatchers.<Integer>anyIterable()))
+                .thenReturn(Flux.empty());
 
         StepVerifier.create(customerService.findById(1))
                 .expectSubscription()
@@ -73,6 +147,114 @@ class CustomerServiceTest {
                 .verify();
     }
 
+    @Test
+    @DisplayName("findById fails with a new stackless not found exception for every miss")
+    public void findById_ReturnsStacklessNotFound_WhenCustomerDoesNotExist() {
+        BDDMockito.when(customerRepository.findAllById(ArgumentMatchers.<Integer>anyIterable()))
+                .thenReturn(Flux.empty());
+
+        Throwable first = customerService.findById(1).<Throwable>then(Mono.empty()).onErrorResume(Mono::just).block();
+        Throwable second = customerService.findById(2).<Throwable>then(Mono.empty()).onErrorResume(Mono::just).block();
+
+        Assertions.assertThat(first).isInstanceOf(CustomerNotFoundException.class);
+        Assertions.assertThat(second).isInstanceOf(CustomerNotFoundException.class).isNotSameAs(first);
+        Assertions.assertThat(first.getStackTrace()).isEmpty();
+        Assertions.assertThat(second.getStackTrace()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("findById serves concurrent lookups with a single IN query")
+    public void findById_BatchesConcurrentLookups_WhenCalledWithinWindow() {
+        Customer second = customer.withId(2);
+        BDDMockito.when(customerRepository.findAllById(List.of(1, 2)))
+                .thenReturn(Flux.just(customer, second));
+
+        StepVerifier.withVirtualTime(() -> Mono.zip(customerService.findById(1), customerService.findById(2)))
+                .expectSubscription()
+                .expectNoEvent(customerProperties.getLookup().getWindow().minusNanos(1))
+                .thenAwait(Duration.ofNanos(1))
+                .assertNext(customers -> {
+                    Assertions.assertThat(customers.getT1()).isEqualTo(customer);
+                    Assertions.assertThat(customers.getT2()).isEqualTo(second);
+                })
+                .verifyComplete();
+
+        BDDMockito.verify(customerRepository, Mockito.times(1)).findAllById(List.of(1, 2));
+    }
+
+    @Test
+    @DisplayName("findById runs the batch query with the latest deadline of the callers in the batch")
+    public void findById_PassesLatestDeadlineToBatchQuery_WhenCallersHaveDeadlines() {
+        RequestDeadline first = RequestDeadline.after(Duration.ofSeconds(1));
+        RequestDeadline second = RequestDeadline.after(Duration.ofSeconds(5));
+        AtomicReference<RequestDeadline> queried = new AtomicReference<>();
+        BDDMockito.when(customerRepository.findAllById(List.of(1, 2)))
+                .thenReturn(Flux.deferContextual(context -> {
+                    queried.set(RequestDeadline.get(context));
+                    return Flux.just(customer, customer.withId(2));
+                }));
+
+        StepVerifier.withVirtualTime(() -> Mono.zip(
+                        customerService.findById(1).contextWrite(context -> RequestDeadline.put(context, first)),
+                        customerService.findById(2).contextWrite(context -> RequestDeadline.put(context, second))))
+                .expectSubscription()
+                .thenAwait(customerProperties.getLookup().getWindow())
+                .expectNextCount(1)
+                .verifyComplete();
+
+        Assertions.assertThat(queried.get().getExpiresAtNanos()).isEqualTo(second.getExpiresAtNanos());
+    }
+
+    @Test
+    @DisplayName("findById cancels the batch query once every caller in the batch has gone away")
+    public void findById_CancelsBatchQuery_WhenAllCallersCancel() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        BDDMockito.when(customerRepository.findAllById(List.of(1)))
+                .thenReturn(Flux.<Customer>never().doOnCancel(() -> cancelled.set(true)));
+
+        StepVerifier.withVirtualTime(() -> customerService.findById(1))
+                .expectSubscription()
+                .thenAwait(customerProperties.getLookup().getWindow())
+                .thenCancel()
+                .verify();
+
+        Assertions.assertThat(cancelled).isTrue();
+    }
+
+    @Test
+    @DisplayName("findAllStats folds renames still in the write-behind buffer into the checksum")
+    public void findAllStats_ChangesChecksum_WhenRenamesArePending() {
+        BDDMockito.when(customerRepository.findTableStats())
+                .thenReturn(Mono.just(new CustomerTableStats(1, 0, 7)));
+        BDDMockito.when(customerWriteBuffer.isEnabled()).thenReturn(true);
+        BDDMockito.when(customerWriteBuffer.pendingRevision()).thenReturn(3L);
+
+        StepVerifier.create(customerService.findAllStats())
+                .expectNext(new CustomerTableStats(1, 0, 10))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAllById returns every requested customer")
+    public void findAllById_ReturnsFluxOfCustomers_WhenSuccessful() {
+        StepVerifier.create(customerService.findAllById(List.of(1)))
+                .expectSubscription()
+                .expectNext(customer)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("search returns indexed customers whose name starts with the prefix")
+    public void search_ReturnsMatchingCustomers_WhenIndexed() {
+        customerNameIndex.put(customer.getId(), customer.getName());
+        customerNameIndex.put(2, "alice");
+
+        StepVerifier.create(customerService.search("BO", 10))
+                .expectSubscription()
+                .expectNext(customer)
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("save creates an customer when successful")
     public void save_CreatesCustomer_WhenSuccessful() {
@@ -84,6 +266,59 @@ class CustomerServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("saveAll inserts customers in batches and reports the generated ids per batch")
+    public void saveAll_InsertsCustomersInBatches_WhenSuccessful() {
+        customerProperties.getBatch().setSize(2);
+        Customer first = CustomerFactory.builder().build();
+        Customer second = CustomerFactory.builder().name("alice").build();
+        Customer third = CustomerFactory.builder().name("carol").build();
+
+        BDDMockito.when(customerRepository.insertAll(List.of(first, second)))
+                .thenReturn(Flux.just(1, 2));
+        BDDMockito.when(customerRepository.insertAll(List.of(third)))
+                .thenReturn(Flux.just(3));
+
+        StepVerifier.create(customerService.saveAll(Flux.just(first, second, third)))
+                .expectSubscription()
+                .expectNext(new CustomerBatchResult(0, 2, List.of(1, 2)))
+                .expectNext(new CustomerBatchResult(1, 1, List.of(3)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("saveAll inserts batches with allocated ids without reading generated keys when ids are allocated")
+    public void saveAll_InsertsWithAllocatedIds_WhenAllocatorIsEnabled() {
+        Customer first = CustomerFactory.builder().build();
+        Customer second = CustomerFactory.builder().name("alice").build();
+
+        BDDMockito.when(customerIdAllocator.isEnabled()).thenReturn(true);
+        BDDMockito.when(customerIdAllocator.allocate(2)).thenReturn(Flux.just(101, 102));
+        BDDMockito.when(customerRepository.insertAllWithIds(List.of(first.withId(101), second.withId(102))))
+                .thenReturn(Mono.just(2));
+
+        StepVerifier.create(customerService.saveAll(Flux.just(first, second)))
+                .expectNext(new CustomerBatchResult(0, 2, List.of(101, 102)))
+                .verifyComplete();
+
+        BDDMockito.verify(customerRepository, Mockito.never()).insertAll(ArgumentMatchers.anyList());
+        Assertions.assertThat(customerNameIndex.findIdsByPrefix("alice").collectList().block()).containsExactly(102);
+    }
+
+    @Test
+    @DisplayName("delete writes a buffered update of the same customer before deleting it")
+    public void delete_FlushesBufferedUpdate_WhenPending() {
+        BDDMockito.when(customerWriteBuffer.isEnabled()).thenReturn(true);
+        BDDMockito.when(customerWriteBuffer.hasPending(1)).thenReturn(true);
+        BDDMockito.when(customerWriteBuffer.flush()).thenReturn(Mono.empty());
+
+        StepVerifier.create(customerService.delete(1))
+                .verifyComplete();
+
+        BDDMockito.verify(customerWriteBuffer, Mockito.times(1)).flush();
+        BDDMockito.verify(customerRepository, Mockito.times(1)).removeById(1);
+    }
+
     @Test
     @DisplayName("delete removes the customer when successful")
     public void delete_RemovesCustomer_WhenSuccessful() {
@@ -92,38 +327,117 @@ class CustomerServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("delete publishes a deleted change only when a row was removed")
+    public void delete_PublishesDeletedChange_WhenSuccessful() {
+        StepVerifier.create(customerService.delete(1))
+                .verifyComplete();
+
+        BDDMockito.when(customerRepository.removeById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(0));
+        StepVerifier.create(customerService.delete(2))
+                .verifyError(ResponseStatusException.class);
+
+        Mockito.verify(customerChangeFeed).publish(CustomerChange.Type.DELETED, 1, null);
+        Mockito.verify(customerChangeFeed, Mockito.never())
+                .publish(ArgumentMatchers.any(), ArgumentMatchers.eq(2), ArgumentMatchers.any());
+    }
+
     @Test
     @DisplayName("delete returns a mono error when the customer does not exists")
-    public void delete_ReturnsMonoError_WhenEmptyMonoIsReturned() {
-        BDDMockito.when(customerRepository.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.empty());
+    public void delete_ReturnsMonoError_WhenNoRowIsDeleted() {
+        BDDMockito.when(customerRepository.removeById(ArgumentMatchers.anyInt()))
+                .thenReturn(Mono.just(0));
 
         StepVerifier.create(customerService.delete(1))
                 .expectSubscription()
-                .expectError(ResponseStatusException.class)
+                .expectErrorMatches(error -> isStatus(error, HttpStatus.NOT_FOUND))
+                .verify();
+    }
+
+    @Test
+    @DisplayName("delete returns a precondition failed error when the version is stale")
+    public void delete_ReturnsMonoError_WhenVersionIsStale() {
+        BDDMockito.when(customerRepository.removeByIdIfVersion(1, 0))
+                .thenReturn(Mono.just(0));
+        BDDMockito.when(customerRepository.existsById(1))
+                .thenReturn(Mono.just(true));
+
+        StepVerifier.create(customerService.delete(1, 0))
+                .expectSubscription()
+                .expectErrorMatches(error -> isStatus(error, HttpStatus.PRECONDITION_FAILED))
                 .verify();
     }
 
     @Test
     @DisplayName("update saves the updated customer and returns an empty mono when successful")
     public void update_SaveUpdatedCustomer_WhenSuccessful() {
-        BDDMockito.when(customerRepository.save(customer))
-                .thenReturn(Mono.just(customer));
-
         StepVerifier.create(customerService.update(customer))
                 .expectSubscription()
                 .verifyComplete();
+
+        BDDMockito.verify(customerRepository).updateName(customer.getId(), customer.getName());
+    }
+
+    @Test
+    @DisplayName("update only applies to the expected version when the customer carries one")
+    public void update_UsesConditionalUpdate_WhenVersionIsGiven() {
+        BDDMockito.when(customerRepository.updateNameIfVersion(1, customer.getName(), 3))
+                .thenReturn(Mono.just(1));
+
+        StepVerifier.create(customerService.update(customer.withVersion(3)))
+                .expectSubscription()
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("update buffers an unconditional update and reads it back when write-behind is enabled")
+    public void update_BuffersUpdate_WhenWriteBehindIsEnabled() {
+        BDDMockito.when(customerWriteBuffer.isEnabled()).thenReturn(true);
+        BDDMockito.when(customerWriteBuffer.put(1, "ann")).thenReturn(Mono.empty());
+        BDDMockito.when(customerWriteBuffer.overlay(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.<Customer>getArgument(0).withName("ann"));
+
+        StepVerifier.create(customerService.update(customer.withName("ann")))
+                .verifyComplete();
+        StepVerifier.create(customerService.findById(1).map(Customer::getName))
+                .expectNext("ann")
+                .verifyComplete();
+
+        BDDMockito.verify(customerRepository, Mockito.never())
+                .updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString());
+        BDDMockito.verify(customerChangeFeed, Mockito.never())
+                .publish(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.any());
     }
 
     @Test
     @DisplayName("update returns a mono error when the customer does not exists")
-    public void update_ReturnsMonoError_WhenEmptyMonoIsReturned() {
-        BDDMockito.when(customerRepository.findById(ArgumentMatchers.anyInt()))
-                .thenReturn(Mono.empty());
+    public void update_ReturnsMonoError_WhenNoRowIsUpdated() {
+        BDDMockito.when(customerRepository.updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString()))
+                .thenReturn(Mono.just(0));
 
         StepVerifier.create(customerService.update(customer))
                 .expectSubscription()
-                .expectError(ResponseStatusException.class)
+                .expectErrorMatches(error -> isStatus(error, HttpStatus.NOT_FOUND))
                 .verify();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("update returns a precondition failed error when the version is stale")
+    public void update_ReturnsMonoError_WhenVersionIsStale() {
+        BDDMockito.when(customerRepository.updateNameIfVersion(1, customer.getName(), 3))
+                .thenReturn(Mono.just(0));
+        BDDMockito.when(customerRepository.existsById(1))
+                .thenReturn(Mono.just(true));
+
+        StepVerifier.create(customerService.update(customer.withVersion(3)))
+                .expectSubscription()
+                .expectErrorMatches(error -> isStatus(error, HttpStatus.PRECONDITION_FAILED))
+                .verify();
+    }
+
+    private static boolean isStatus(Throwable error, HttpStatus status) {
+        return error instanceof ResponseStatusException
+                && ((ResponseStatusException) error).getStatus() == status;
+    }
+}
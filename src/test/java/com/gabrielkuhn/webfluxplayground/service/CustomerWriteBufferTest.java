@@ -0,0 +1,152 @@
+package com.gabrielkuhn.webfluxplayground.service;
+
+import com.gabrielkuhn.webfluxplayground.cache.CustomerCache;
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import com.gabrielkuhn.webfluxplayground.controller.CustomerETag;
+import com.gabrielkuhn.webfluxplayground.domain.Customer;
+import com.gabrielkuhn.webfluxplayground.domain.CustomerChange;
+import com.gabrielkuhn.webfluxplayground.event.CustomerChangeFeed;
+import com.gabrielkuhn.webfluxplayground.repository.CustomerRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+class CustomerWriteBufferTest {
+
+    private final CustomerRepository customerRepository = Mockito.mock(CustomerRepository.class);
+    private final CustomerProperties customerProperties = new CustomerProperties();
+    private final CustomerChangeFeed customerChangeFeed = Mockito.spy(new CustomerChangeFeed(customerProperties));
+
+    private CustomerWriteBuffer buffer;
+
+    @BeforeEach
+    public void setUp() {
+        customerProperties.getWriteBehind().setEnabled(true);
+        customerProperties.getWriteBehind().setWindow(Duration.ofHours(1));
+        BDDMockito.when(customerRepository.updateNames(ArgumentMatchers.anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<Customer>>getArgument(0)).map(customer -> 1));
+        buffer = new CustomerWriteBuffer(() -> customerRepository, new CustomerCache(customerProperties),
+                customerChangeFeed, customerProperties);
+    }
+
+    @Test
+    @DisplayName("flush writes only the last of several buffered updates of the same customer")
+    public void flush_CoalescesUpdates_WhenSameCustomerIsUpdatedRepeatedly() {
+        StepVerifier.create(buffer.put(1, "a").then(buffer.put(1, "b")).then(buffer.put(2, "c")))
+                .verifyComplete();
+
+        StepVerifier.create(buffer.flush())
+                .verifyComplete();
+
+        BDDMockito.verify(customerRepository, Mockito.times(1)).updateNames(ArgumentMatchers.argThat(customers ->
+                customers.size() == 2 && customers.contains(Customer.builder().id(1).name("b").version(2).build())));
+        Assertions.assertThat(buffer.hasPending(1)).isFalse();
+    }
+
+    @Test
+    @DisplayName("overlay returns the buffered name and next version until the update is written")
+    public void overlay_AppliesBufferedUpdate_WhenPending() {
+        Customer stored = Customer.builder().id(1).name("old").version(3).build();
+        buffer.put(1, "new").block();
+
+        Assertions.assertThat(buffer.overlay(stored)).isEqualTo(stored.withName("new").withVersion(4));
+
+        buffer.flush().block();
+
+        Assertions.assertThat(buffer.overlay(stored)).isSameAs(stored);
+    }
+
+    @Test
+    @DisplayName("overlay gives every buffered rename of a customer its own ETag")
+    public void overlay_ChangesETag_WhenRenamedAgainWhileBuffered() {
+        Customer stored = Customer.builder().id(1).name("old").version(3).build();
+
+        buffer.put(1, "a").block();
+        String first = CustomerETag.of(buffer.overlay(stored));
+        buffer.put(1, "b").block();
+        String second = CustomerETag.of(buffer.overlay(stored));
+
+        Assertions.assertThat(first).isEqualTo("\"4\"");
+        Assertions.assertThat(second).isEqualTo("\"5\"");
+
+        buffer.flush().block();
+
+        BDDMockito.verify(customerRepository)
+                .updateNames(List.of(Customer.builder().id(1).name("b").version(2).build()));
+    }
+
+    @Test
+    @DisplayName("flush keeps an update buffered while the previous one was being written")
+    public void flush_KeepsNewerUpdate_WhenBufferedDuringWrite() {
+        Sinks.Empty<Void> written = Sinks.empty();
+        BDDMockito.when(customerRepository.updateNames(ArgumentMatchers.anyList()))
+                .thenReturn(written.asMono().thenMany(Flux.just(1)));
+        buffer.put(1, "a").block();
+
+        StepVerifier.create(buffer.flush())
+                .then(() -> buffer.put(1, "b").block())
+                .then(written::tryEmitEmpty)
+                .verifyComplete();
+
+        Assertions.assertThat(buffer.hasPending(1)).isTrue();
+        Assertions.assertThat(buffer.overlay(Customer.builder().id(1).name("a").version(4).build()))
+                .isEqualTo(Customer.builder().id(1).name("b").version(5).build());
+    }
+
+    @Test
+    @DisplayName("flush publishes a buffered update to the change feed only once it has been written")
+    public void flush_PublishesUpdate_WhenWritten() {
+        Sinks.Empty<Void> written = Sinks.empty();
+        BDDMockito.when(customerRepository.updateNames(ArgumentMatchers.anyList()))
+                .thenReturn(written.asMono().thenMany(Flux.just(1, 0)));
+        buffer.put(1, "a").then(buffer.put(2, "b")).block();
+
+        StepVerifier.create(buffer.flush())
+                .then(() -> BDDMockito.verify(customerChangeFeed, Mockito.never())
+                        .publish(ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.any()))
+                .then(written::tryEmitEmpty)
+                .verifyComplete();
+
+        BDDMockito.verify(customerChangeFeed, Mockito.times(1))
+                .publish(CustomerChange.Type.UPDATED, 1, Customer.builder().id(1).name("a").build());
+        BDDMockito.verify(customerChangeFeed, Mockito.never())
+                .publish(ArgumentMatchers.any(), ArgumentMatchers.eq(2), ArgumentMatchers.any());
+    }
+
+    @Test
+    @DisplayName("put waits for a flush when the buffer is full")
+    public void put_FlushesFirst_WhenBufferIsFull() {
+        customerProperties.getWriteBehind().setMaxPending(1);
+        buffer.put(1, "a").block();
+
+        StepVerifier.create(buffer.put(2, "b"))
+                .verifyComplete();
+
+        BDDMockito.verify(customerRepository, Mockito.times(1)).updateNames(List.of(Customer.builder().id(1).name("a").version(1).build()));
+        Assertions.assertThat(buffer.hasPending(1)).isFalse();
+        Assertions.assertThat(buffer.hasPending(2)).isTrue();
+    }
+
+    @Test
+    @DisplayName("stop writes the buffered updates before shutting down")
+    public void stop_FlushesPendingUpdates_WhenRunning() {
+        buffer.start();
+        buffer.put(1, "a").block();
+
+        buffer.stop();
+
+        Assertions.assertThat(buffer.isRunning()).isFalse();
+        Assertions.assertThat(buffer.hasPending(1)).isFalse();
+        BDDMockito.verify(customerRepository, Mockito.times(1)).updateNames(ArgumentMatchers.anyList());
+    }
+}
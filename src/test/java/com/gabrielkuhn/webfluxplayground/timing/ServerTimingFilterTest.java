@@ -0,0 +1,79 @@
+package com.gabrielkuhn.webfluxplayground.timing;
+
+import com.gabrielkuhn.webfluxplayground.config.CustomerProperties;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class ServerTimingFilterTest {
+
+    private static final Pattern SERVICE = Pattern.compile("service;dur=(\\d+)\\.\\d{3}");
+
+    private final CustomerProperties customerProperties = new CustomerProperties();
+
+    /**
+     * A service pipeline taking 20ms, then the response.
+     */
+    private final WebFilterChain chain = exchange -> RequestTiming.service(Mono.delay(Duration.ofMillis(20)))
+            .then(Mono.defer(() -> exchange.getResponse().setComplete()));
+
+    @Test
+    @DisplayName("filter adds the phase breakdown as Server-Timing when the request asks for it")
+    public void filter_AddsServerTiming_WhenRequested() {
+        customerProperties.getTiming().setSampleRate(0);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers/1")
+                .header(ServerTimingFilter.REQUEST_HEADER, "1"));
+
+        new ServerTimingFilter(customerProperties).filter(exchange, chain).block();
+
+        String header = exchange.getResponse().getHeaders().getFirst(ServerTimingFilter.SERVER_TIMING);
+        Assertions.assertThat(header)
+                .matches("decode;dur=\\d+\\.\\d{3}, service;dur=\\d+\\.\\d{3}, encode;dur=\\d+\\.\\d{3}, "
+                        + "total;dur=\\d+\\.\\d{3}");
+        Matcher service = SERVICE.matcher(header);
+        Assertions.assertThat(service.find()).isTrue();
+        Assertions.assertThat(Integer.parseInt(service.group(1))).isGreaterThanOrEqualTo(20);
+    }
+
+    @Test
+    @DisplayName("filter adds Server-Timing to sampled responses")
+    public void filter_AddsServerTiming_WhenSampled() {
+        customerProperties.getTiming().setSampleRate(1);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers/1"));
+
+        new ServerTimingFilter(customerProperties).filter(exchange, chain).block();
+
+        Assertions.assertThat(exchange.getResponse().getHeaders().getFirst(ServerTimingFilter.SERVER_TIMING))
+                .contains("service;dur=");
+    }
+
+    @Test
+    @DisplayName("filter leaves out Server-Timing when the response is neither sampled nor asked for")
+    public void filter_OmitsServerTiming_WhenNotSampled() {
+        customerProperties.getTiming().setSampleRate(0);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers/1"));
+
+        new ServerTimingFilter(customerProperties).filter(exchange, chain).block();
+
+        Assertions.assertThat(exchange.getResponse().getHeaders()).doesNotContainKey(ServerTimingFilter.SERVER_TIMING);
+    }
+
+    @Test
+    @DisplayName("filter does not time requests outside /customers")
+    public void filter_DoesNotTime_WhenPathIsNotCustomers() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/actuator/health")
+                .header(ServerTimingFilter.REQUEST_HEADER, "1"));
+
+        new ServerTimingFilter(customerProperties).filter(exchange, chain).block();
+
+        Assertions.assertThat(exchange.getResponse().getHeaders()).doesNotContainKey(ServerTimingFilter.SERVER_TIMING);
+    }
+}
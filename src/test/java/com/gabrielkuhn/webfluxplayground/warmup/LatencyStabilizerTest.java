@@ -0,0 +1,53 @@
+package com.gabrielkuhn.webfluxplayground.warmup;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+class LatencyStabilizerTest {
+
+    @Test
+    @DisplayName("record reports stable once consecutive rounds keep their p99 within the tolerance")
+    public void record_ReturnsTrue_WhenP99Stabilizes() {
+        LatencyStabilizer stabilizer = new LatencyStabilizer(3, 2, 0.1);
+
+        Assertions.assertThat(stabilizer.record(round(5_000))).isFalse();
+        Assertions.assertThat(stabilizer.record(round(1_000))).isFalse();
+        Assertions.assertThat(stabilizer.record(round(950))).isFalse();
+        Assertions.assertThat(stabilizer.record(round(1_000))).isTrue();
+        Assertions.assertThat(stabilizer.getRounds()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("record starts counting stable rounds again after a latency jump")
+    public void record_ResetsStableRounds_WhenP99Jumps() {
+        LatencyStabilizer stabilizer = new LatencyStabilizer(1, 2, 0.1);
+
+        stabilizer.record(round(1_000));
+        Assertions.assertThat(stabilizer.record(round(1_000))).isFalse();
+        Assertions.assertThat(stabilizer.record(round(3_000))).isFalse();
+        Assertions.assertThat(stabilizer.record(round(3_000))).isFalse();
+        Assertions.assertThat(stabilizer.record(round(3_000))).isTrue();
+    }
+
+    @Test
+    @DisplayName("p99 returns the latency that 99 percent of the requests did not exceed")
+    public void p99_ReturnsNinetyNinthPercentile_WhenRoundIsComplete() {
+        long[] latencies = LongStream.rangeClosed(1, 200).toArray();
+
+        Assertions.assertThat(LatencyStabilizer.p99(latencies)).isEqualTo(198);
+        Assertions.assertThat(LatencyStabilizer.p99(new long[0])).isZero();
+    }
+
+    /**
+     * A round of 100 requests whose two slowest took {@code p99} nanoseconds.
+     */
+    private static long[] round(long p99) {
+        long[] latencies = LongStream.range(0, 100).map(i -> p99 / 2).toArray();
+        latencies[98] = p99;
+        latencies[99] = p99;
+        return latencies;
+    }
+}